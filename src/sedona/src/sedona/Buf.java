@@ -16,6 +16,7 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.util.zip.CRC32;
 
 import sedona.util.Base64;
@@ -971,6 +972,19 @@ public class Buf extends Value
     pos += n;
   }
 
+  /**
+   * Read exactly {@code n} bytes from the given ByteBuffer's position and
+   * write them to this Buf starting at the current position.
+   */
+  public void readFrom(ByteBuffer src, int n) throws IOException
+  {
+    if (src.remaining() < n)
+      throw new EOFException("Unexpected end of ByteBuffer. remaining=" + src.remaining() + " n=" + n);
+    grow(pos, n);
+    src.get(bytes, pos, n);
+    pos += n;
+  }
+
   /**
    * Write the internal buffer in its entirety to the given file. This method
    * does not change the read/write position.
@@ -1004,6 +1018,21 @@ public class Buf extends Value
     pos += n;
   }
 
+  /**
+   * Write {@code n} bytes starting at the current position in the Buf to the
+   * given ByteBuffer's position. There must be {@code n} available bytes in
+   * the Buf.
+   *
+   * @see #available()
+   */
+  public void writeTo(ByteBuffer dst, int n) throws IOException
+  {
+    if (pos+n > size)
+      throw new IOException("Unexpected end of buf. pos=" + pos + " size=" + size + " n="+n);
+    dst.put(bytes, pos, n);
+    pos += n;
+  }
+
 ////////////////////////////////////////////////////////////////
 // Debugging
 ////////////////////////////////////////////////////////////////
@@ -8,6 +8,7 @@
 
 package sedona;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -134,21 +135,32 @@ public abstract class Component
   }
 
   /**
-   * Get a property.
+   * Get a property.  With compact storage a primitive
+   * is boxed into a new Value on every call, so prefer
+   * the typed getters.
    */
   public Value get(Slot slot)
   {
-    return slots[slot.id];
+    Value v = slots[slot.id];
+    if (v != null || prims == null) return v;
+    return fromBits(slot, prims[slot.id]);
   }
 
   ////// by slot //////
 
   /** Get a bool property. */
-  public boolean getBool(Slot slot) { return ((Bool)get(slot)).val; }
+  public boolean getBool(Slot slot)
+  {
+    if (isCompact(slot, Type.boolId)) return prims[slot.id] != 0;
+    return ((Bool)get(slot)).val;
+  }
 
   /** Get an integer (byte, short, or int) property. */
   public int getInt(Slot slot)
   {
+    int t = slot.type.id;
+    if ((t == Type.byteId || t == Type.shortId || t == Type.intId) && isCompact(slot, t))
+      return (int)prims[slot.id];
     switch (slot.type.id)
     {
       case Type.byteId:  return ((Byte)get(slot)).val;
@@ -158,13 +170,25 @@ public abstract class Component
   }
 
   /** Get a long property. */
-  public long getLong(Slot slot) { return ((Long)get(slot)).val; }
+  public long getLong(Slot slot)
+  {
+    if (isCompact(slot, Type.longId)) return prims[slot.id];
+    return ((Long)get(slot)).val;
+  }
 
   /** Get a float property. */
-  public float getFloat(Slot slot) { return ((Float)get(slot)).val; }
+  public float getFloat(Slot slot)
+  {
+    if (isCompact(slot, Type.floatId)) return java.lang.Float.intBitsToFloat((int)prims[slot.id]);
+    return ((Float)get(slot)).val;
+  }
 
   /** Get a double property. */
-  public double getDouble(Slot slot) { return ((Double)get(slot)).val; }
+  public double getDouble(Slot slot)
+  {
+    if (isCompact(slot, Type.doubleId)) return java.lang.Double.longBitsToDouble(prims[slot.id]);
+    return ((Double)get(slot)).val;
+  }
 
   /** Get a Buf property. */
   public Buf getBuf(Slot slot) { return (Buf)get(slot); }
@@ -208,7 +232,15 @@ public abstract class Component
   public void set(Slot slot, Value value)
   {
     if (!testMode) slot.assertValue(value);
-    slots[slot.id] = value;
+    if (prims != null && isPrimitive(slot) && value.typeId() == slot.type.id)
+    {
+      prims[slot.id] = toBits(value);
+      slots[slot.id] = null;
+    }
+    else
+    {
+      slots[slot.id] = value;
+    }
   }
   
   /**
@@ -219,11 +251,25 @@ public abstract class Component
   ////// by slot //////
 
   /** Set a bool property. */
-  public void setBool(Slot slot, boolean x) { set(slot, Bool.make(x)); }
+  public void setBool(Slot slot, boolean x)
+  {
+    if (isCompact(slot, Type.boolId)) { prims[slot.id] = x ? 1 : 0; return; }
+    set(slot, Bool.make(x));
+  }
 
   /** Set an integer (byte, short, or int) property. */
   public void setInt(Slot slot, int x)
   {
+    int t = slot.type.id;
+    if ((t == Type.byteId || t == Type.shortId || t == Type.intId) && isCompact(slot, t))
+    {
+      if (t == Type.byteId && (x < 0 || x > Byte.MAX.val))
+        throw new IllegalArgumentException("Valid Byte range [0-"+Byte.MAX.val+"]: val = " + x);
+      if (t == Type.shortId && (x < 0 || x > Short.MAX.val))
+        throw new IllegalArgumentException("Valid Short range [0-"+Short.MAX.val+"]: val = " + x);
+      prims[slot.id] = x;
+      return;
+    }
     switch (slot.type.id)
     {
       case Type.byteId:  set(slot, Byte.make(x)); break;
@@ -233,13 +279,25 @@ public abstract class Component
   }
 
   /** Set a long property. */
-  public void setLong(Slot slot, long x) { set(slot, Long.make(x)); }
+  public void setLong(Slot slot, long x)
+  {
+    if (isCompact(slot, Type.longId)) { prims[slot.id] = x; return; }
+    set(slot, Long.make(x));
+  }
 
   /** Set a float property. */
-  public void setFloat(Slot slot, float x) { set(slot, Float.make(x)); }
+  public void setFloat(Slot slot, float x)
+  {
+    if (isCompact(slot, Type.floatId)) { prims[slot.id] = java.lang.Float.floatToIntBits(x); return; }
+    set(slot, Float.make(x));
+  }
 
   /** Set a double property. */
-  public void setDouble(Slot slot, double x) { set(slot, Double.make(x)); }
+  public void setDouble(Slot slot, double x)
+  {
+    if (isCompact(slot, Type.doubleId)) { prims[slot.id] = java.lang.Double.doubleToLongBits(x); return; }
+    set(slot, Double.make(x));
+  }
 
   /** Set a Buf property. */
   public void setBuf(Slot slot, Buf x) { set(slot, x); }
@@ -270,6 +328,113 @@ public abstract class Component
   /** Set a Buf asStr property by name. */
   public void setStr(String name, String x) { setStr(slot(name, true), x); }
 
+////////////////////////////////////////////////////////////////
+// Compact Storage
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Switch to compact storage, where primitive properties live
+   * as raw bits in one long[] indexed by slot id instead of as
+   * Value objects.  The typed getters and decodeBinary then read
+   * and write them without allocating, which matters for caches
+   * of thousands of components fed by events.  Buf properties
+   * are still stored as Values.
+   */
+  public void compactStorage()
+  {
+    if (prims != null) return;
+    Slot[] defs = type.slots;
+    long[] bits = new long[slots.length];
+    for (int i=0; i<slots.length; ++i)
+    {
+      if (!isPrimitive(defs[i]) || slots[i] == null || slots[i].typeId() != defs[i].type.id) continue;
+      bits[i] = toBits(slots[i]);
+      slots[i] = null;
+    }
+    prims = bits;
+  }
+
+  /**
+   * Is this component using compact storage.
+   */
+  public boolean isCompactStorage()
+  {
+    return prims != null;
+  }
+
+  /**
+   * Decode a property from its binary encoding, straight
+   * into its slot when using compact storage.
+   */
+  public void decodeBinary(Slot slot, Buf in)
+    throws IOException
+  {
+    if (prims == null || !isPrimitive(slot))
+    {
+      set(slot, get(slot).decodeBinary(in));
+      return;
+    }
+
+    long bits;
+    switch (slot.type.id)
+    {
+      case Type.boolId:  int b = in.u1(); bits = b == 0 || b == 2 ? b : 1; break;
+      case Type.byteId:  bits = in.u1(); break;
+      case Type.shortId: bits = in.u2(); break;
+      case Type.intId:   bits = in.i4(); break;
+      case Type.floatId: bits = in.i4(); break;
+      default:           bits = in.i8(); break;
+    }
+    prims[slot.id] = bits;
+    slots[slot.id] = null;
+  }
+
+  /**
+   * Is the slot's value held in prims as the given type.
+   */
+  private boolean isCompact(Slot slot, int typeId)
+  {
+    return prims != null && slot.type.id == typeId && slots[slot.id] == null && isPrimitive(slot);
+  }
+
+  private static boolean isPrimitive(Slot slot)
+  {
+    int id = slot.type.id;
+    return slot.isProp() && Type.boolId <= id && id <= Type.doubleId;
+  }
+
+  /**
+   * Raw bits of a primitive value: bools are 0, 1, or 2 for
+   * null like their encoding, floats and doubles are IEEE bits.
+   */
+  private static long toBits(Value v)
+  {
+    switch (v.typeId())
+    {
+      case Type.boolId:   return v.isNull() ? 2 : ((Bool)v).val ? 1 : 0;
+      case Type.byteId:   return ((Byte)v).val;
+      case Type.shortId:  return ((Short)v).val;
+      case Type.intId:    return ((Int)v).val;
+      case Type.longId:   return ((Long)v).val;
+      case Type.floatId:  return java.lang.Float.floatToIntBits(((Float)v).val);
+      default:            return java.lang.Double.doubleToLongBits(((Double)v).val);
+    }
+  }
+
+  private static Value fromBits(Slot slot, long bits)
+  {
+    switch (slot.type.id)
+    {
+      case Type.boolId:   return bits == 2 ? Bool.NULL : Bool.make(bits != 0);
+      case Type.byteId:   return Byte.make((int)bits);
+      case Type.shortId:  return Short.make((int)bits);
+      case Type.intId:    return Int.make((int)bits);
+      case Type.longId:   return Long.make(bits);
+      case Type.floatId:  return Float.make(java.lang.Float.intBitsToFloat((int)bits));
+      default:            return Double.make(java.lang.Double.longBitsToDouble(bits));
+    }
+  }
+
 ////////////////////////////////////////////////////////////////
 // Utils
 ////////////////////////////////////////////////////////////////
@@ -322,6 +487,7 @@ public abstract class Component
 
   public final Type type;
   Value[] slots;
+  long[] prims;     // raw primitive bits by slot id if compact storage
 
 }
 
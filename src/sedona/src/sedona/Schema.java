@@ -15,6 +15,7 @@ import java.util.HashMap;
 
 import sedona.manifest.KitManifest;
 import sedona.manifest.ManifestDb;
+import sedona.util.Cache;
 import sedona.util.Log;
 import sedona.util.TextUtil;
 import sedona.xml.XElem;
@@ -35,13 +36,22 @@ public class Schema
 //////////////////////////////////////////////////////////////////////////
 
   public static final Log log = new Log("schema");
-  private static HashMap cache = new HashMap();
+  private static final Cache cache = new Cache("schema",
+    Env.getProperty("schema.cacheSize", 64));
+
+  /**
+   * Get the cache of loaded schemas keyed by schema key.  It holds
+   * at most the "schema.cacheSize" most recently used schemas.
+   */
+  public static Cache cache() { return cache; }
 
   /**
    * Create a schema for the specified list of kits
-   * identified by a kit name and a kit checksum.
+   * identified by a kit name and a kit checksum.  Concurrent
+   * loads of the same schema share one load, loads of different
+   * schemas run in parallel.
    */
-  public static Schema load(KitPart[] parts)
+  public static Schema load(final KitPart[] parts)
     throws Exception
   {
     // first sort the parts according to standard schema
@@ -54,13 +64,21 @@ public class Schema
       s.append(parts[i]).append(';');
     String key = s.substring(0, s.length()-1);
 
-    // check cache for this schema
-    Schema schema = (Schema)cache.get(key);
-    if (schema != null) return schema;
+    // check cache for this schema, or load it
+    return (Schema)cache.get(key, new Cache.Loader()
+    {
+      public Object load(Object key) throws Exception
+      {
+        return doLoad((String)key, parts);
+      }
+    });
+  }
 
-    // try to load it
+  private static Schema doLoad(String key, KitPart[] parts)
+    throws Exception
+  {
     log.debug("Loading... [" + key + "]");
-    schema = new Schema(key, new Kit[parts.length]);
+    Schema schema = new Schema(key, new Kit[parts.length]);
     ArrayList missingParts = new ArrayList();
     for (int i=0; i<parts.length; ++i)
     {
@@ -88,9 +106,6 @@ public class Schema
 
     // now resolve it
     schema.resolve();
-
-    // stash away in cache and return
-    cache.put(key, schema);
     return schema;
   }
 
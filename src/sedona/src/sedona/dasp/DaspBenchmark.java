@@ -0,0 +1,332 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.dasp;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import sedona.util.UserUtil;
+
+/**
+ * DaspBenchmark measures DASP throughput between two DaspSockets in
+ * this VM over LoopbackDaspSocketInterfaces, so it runs the same on any
+ * box without devices or network.  A client opens a number of sessions
+ * to an echo server, then each session pipelines datagrams stamped with
+ * their send time and collects the echoes to measure round trip latency.
+ * Latency is taken from the application's send call, so it includes time
+ * spent blocked on a full send window:
+ *
+ * <pre>
+ *   java sedona.dasp.DaspBenchmark -sessions 8 -msgs 2000 -loss 0.01 -latency 5
+ * </pre>
+ */
+public class DaspBenchmark
+{
+
+////////////////////////////////////////////////////////////////
+// Main
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    DaspBenchmark b = new DaspBenchmark();
+    for (int i=0; i<args.length; ++i)
+    {
+      String a = args[i];
+      if (a.equals("-?") || a.equals("-help")) { usage(); return; }
+      if (i+1 >= args.length) { usage(); return; }
+      String v = args[++i];
+      if      (a.equals("-sessions"))  b.sessions  = Integer.parseInt(v);
+      else if (a.equals("-msgs"))      b.msgs      = Integer.parseInt(v);
+      else if (a.equals("-size"))      b.size      = Integer.parseInt(v);
+      else if (a.equals("-loss"))      b.loss      = Double.parseDouble(v);
+      else if (a.equals("-reorder"))   b.reorder   = Double.parseDouble(v);
+      else if (a.equals("-duplicate")) b.duplicate = Double.parseDouble(v);
+      else if (a.equals("-latency"))   b.latency   = Long.parseLong(v);
+      else if (a.equals("-bandwidth")) b.bandwidth = Long.parseLong(v);
+      else if (a.equals("-seed"))      b.seed      = Long.parseLong(v);
+      else { usage(); return; }
+    }
+    b.run();
+    b.report(System.out);
+  }
+
+  static void usage()
+  {
+    System.out.println("usage: DaspBenchmark [options]");
+    System.out.println("  -sessions <n>     client sessions (default 4)");
+    System.out.println("  -msgs <n>         datagrams per session (default 1000)");
+    System.out.println("  -size <bytes>     datagram payload size (default 64)");
+    System.out.println("  -loss <p>         probability a packet is lost");
+    System.out.println("  -reorder <p>      probability a packet is reordered");
+    System.out.println("  -duplicate <p>    probability a packet is duplicated");
+    System.out.println("  -latency <ms>     one way latency");
+    System.out.println("  -bandwidth <B/s>  link bandwidth, 0 for unlimited");
+    System.out.println("  -seed <n>         impairment random seed");
+  }
+
+////////////////////////////////////////////////////////////////
+// Run
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Run the benchmark with the current settings.
+   */
+  public DaspBenchmark run()
+    throws Exception
+  {
+    LoopbackDaspSocketInterface serverIface = impair(new LoopbackDaspSocketInterface(-1, seed));
+    LoopbackDaspSocketInterface clientIface = impair(new LoopbackDaspSocketInterface(-1, seed+1));
+    DaspSocket server = DaspSocket.open(serverIface, new DaspAcceptor()
+    {
+      public byte[] credentials(String u) { return UserUtil.credentials(USER, PASS); }
+      public Hashtable options() { return new Hashtable(); }
+    }, DaspSocket.SOCKET_QUEUING);
+    DaspSocket client = DaspSocket.open(clientIface, null, DaspSocket.SESSION_QUEUING);
+
+    Thread echo = new Echo(server);
+    echo.start();
+    try
+    {
+      // handshakes
+      DaspSession[] s = new DaspSession[sessions];
+      long t0 = System.nanoTime();
+      for (int i=0; i<sessions; ++i)
+        s[i] = client.connect(LoopbackDaspSocketInterface.address(), serverIface.localPort(), USER, PASS, new Hashtable());
+      connectNanos = System.nanoTime() - t0;
+
+      // pipelined echoes on every session at once
+      Sender[] senders = new Sender[sessions];
+      Collector[] collectors = new Collector[sessions];
+      t0 = System.nanoTime();
+      for (int i=0; i<sessions; ++i)
+      {
+        senders[i] = new Sender(s[i]);
+        collectors[i] = new Collector(s[i]);
+        collectors[i].start();
+        senders[i].start();
+      }
+      for (int i=0; i<sessions; ++i) { senders[i].join(); collectors[i].join(); }
+      transferNanos = System.nanoTime() - t0;
+
+      // merge latencies
+      received = 0;
+      for (int i=0; i<sessions; ++i) received += collectors[i].count;
+      latencies = new long[received];
+      int n = 0;
+      for (int i=0; i<sessions; ++i)
+      {
+        System.arraycopy(collectors[i].rtts, 0, latencies, n, collectors[i].count);
+        n += collectors[i].count;
+      }
+      Arrays.sort(latencies);
+
+      for (int i=0; i<sessions; ++i) s[i].close();
+      lost       = serverIface.numLost()       + clientIface.numLost();
+      reordered  = serverIface.numReordered()  + clientIface.numReordered();
+      duplicated = serverIface.numDuplicated() + clientIface.numDuplicated();
+    }
+    finally
+    {
+      client.close();
+      server.close();
+      echo.join();
+    }
+    return this;
+  }
+
+  private LoopbackDaspSocketInterface impair(LoopbackDaspSocketInterface iface)
+  {
+    return iface.setLoss(loss).setReorder(reorder).setDuplicate(duplicate)
+                .setLatency(latency).setBandwidth(bandwidth);
+  }
+
+////////////////////////////////////////////////////////////////
+// Results
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Sessions connected per second.
+   */
+  public double sessionsPerSec()
+  {
+    return connectNanos <= 0 ? 0 : sessions * 1e9 / connectNanos;
+  }
+
+  /**
+   * Echoed datagrams per second across all sessions.
+   */
+  public double msgsPerSec()
+  {
+    return transferNanos <= 0 ? 0 : received * 1e9 / transferNanos;
+  }
+
+  /**
+   * Round trip latency in ms at the given
+   * percentile from 0.0 to 1.0.
+   */
+  public double latency(double percentile)
+  {
+    if (latencies == null || latencies.length == 0) return 0;
+    int i = (int)Math.ceil(percentile * latencies.length) - 1;
+    i = Math.max(0, Math.min(latencies.length-1, i));
+    return latencies[i] / 1e6;
+  }
+
+  /**
+   * Number of echoes received, which equals sessions*msgs
+   * unless a session closed before it was done.
+   */
+  public int received()
+  {
+    return received;
+  }
+
+  public void report(PrintStream out)
+  {
+    out.println("DaspBenchmark sessions=" + sessions + " msgs=" + msgs + " size=" + size +
+                " loss=" + loss + " reorder=" + reorder + " duplicate=" + duplicate +
+                " latency=" + latency + "ms bandwidth=" + bandwidth + " seed=" + seed);
+    out.println("  sessions/sec: " + fmt(sessionsPerSec()));
+    out.println("  msgs/sec:     " + fmt(msgsPerSec()) + " (" + received + " of " + (sessions*msgs) + " echoed)");
+    out.println("  rtt ms:       p50=" + fmt(latency(0.5)) + " p90=" + fmt(latency(0.9)) +
+                " p99=" + fmt(latency(0.99)) + " p99.9=" + fmt(latency(0.999)) + " max=" + fmt(latency(1.0)));
+    out.println("  impairments:  lost=" + lost + " reordered=" + reordered + " duplicated=" + duplicated);
+  }
+
+  private static String fmt(double d)
+  {
+    return String.valueOf(Math.round(d * 100) / 100.0);
+  }
+
+////////////////////////////////////////////////////////////////
+// Threads
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Server side: echo every datagram back to its session.
+   */
+  static class Echo extends Thread
+  {
+    Echo(DaspSocket socket) { super("DaspBenchmark.Echo"); this.socket = socket; }
+
+    public void run()
+    {
+      while (!socket.isClosed())
+      {
+        try
+        {
+          DaspMessage msg = socket.receive(100);
+          if (msg == null) continue;
+          DaspSession s = msg.session();
+          if (!s.isClosed()) s.send(msg.payloadBuf(), msg.payloadOff(), msg.payloadLen());
+          msg.release();
+        }
+        catch (Exception e)
+        {
+        }
+      }
+    }
+
+    final DaspSocket socket;
+  }
+
+  /**
+   * Client side: send msgs datagrams stamped with nanoTime.
+   */
+  class Sender extends Thread
+  {
+    Sender(DaspSession s) { super("DaspBenchmark.Sender"); this.session = s; }
+
+    public void run()
+    {
+      byte[] buf = new byte[Math.max(size, 8)];
+      try
+      {
+        for (int i=0; i<msgs; ++i)
+        {
+          long now = System.nanoTime();
+          for (int j=0; j<8; ++j) buf[j] = (byte)(now >>> (56 - j*8));
+          session.send(buf);
+        }
+      }
+      catch (Exception e)
+      {
+        if (!session.isClosed()) e.printStackTrace();
+      }
+    }
+
+    final DaspSession session;
+  }
+
+  /**
+   * Client side: collect echoes and record round trip times.
+   */
+  class Collector extends Thread
+  {
+    Collector(DaspSession s) { super("DaspBenchmark.Collector"); this.session = s; }
+
+    public void run()
+    {
+      rtts = new long[msgs];
+      try
+      {
+        while (count < msgs)
+        {
+          DaspMessage msg = session.receive(RECEIVE_TIMEOUT);
+          if (msg == null) break;
+          byte[] buf = msg.payloadBuf();
+          int off = msg.payloadOff();
+          long sent = 0;
+          for (int j=0; j<8; ++j) sent = (sent << 8) | (buf[off+j] & 0xff);
+          msg.release();
+          rtts[count++] = System.nanoTime() - sent;
+        }
+      }
+      catch (Exception e)
+      {
+        if (!session.isClosed()) e.printStackTrace();
+      }
+    }
+
+    final DaspSession session;
+    long[] rtts;   // ns
+    int count;
+  }
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  static final String USER = "bench";
+  static final String PASS = "bench";
+  static final long RECEIVE_TIMEOUT = 30000;  // ms
+
+  // settings
+  public int sessions = 4;
+  public int msgs = 1000;
+  public int size = 64;
+  public double loss;
+  public double reorder;
+  public double duplicate;
+  public long latency;
+  public long bandwidth;
+  public long seed;
+
+  // results
+  long connectNanos;
+  long transferNanos;
+  long[] latencies;
+  int received;
+  int lost;
+  int reordered;
+  int duplicated;
+}
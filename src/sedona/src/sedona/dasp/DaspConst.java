@@ -27,8 +27,14 @@ public interface DaspConst
   public static final int  MAX_SESSIONS_VAL    = 10000;  // sessions
 
   static final int SESSION_QUEUE_MAX = 2000;
-  static final int SOCKET_QUEUE_MAX  = 10000;                     
-  static final long SEND_RETRY_VAL = 1000;  // ms
+  static final int SOCKET_QUEUE_MAX  = 10000;
+  static final int MESSAGE_POOL_MAX  = 256;                     
+  static final long SEND_RETRY_VAL     = 1000;  // ms
+  static final long MIN_SEND_RETRY_VAL = 100;   // ms
+  static final long MAX_SEND_RETRY_VAL = 8000;  // ms
+  static final long ACK_DELAY_VAL      = 100;   // ms
+  static final int  ACK_EVERY_VAL      = 2;     // msgs
+  static final int  INITIAL_CWND_VAL   = 4;     // msgs
 
 ////////////////////////////////////////////////////////////////
 // Specification Defaults
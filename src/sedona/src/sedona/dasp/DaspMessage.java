@@ -19,12 +19,90 @@ public class DaspMessage extends DaspMsg
   DaspMessage() 
   {
     super();
+    this.pool = null;
+    this.buf  = null;
   }
   
   DaspMessage(byte[] buf, int length)
     throws UnsupportedEncodingException
   {
     super(buf, length);
+    this.pool = null;
+    this.buf  = null;
+  }
+
+  /**
+   * Construct a pooled message which owns its receive buffer.
+   */
+  DaspMessage(DaspMessagePool pool)
+  {
+    super();
+    this.pool = pool;
+    this.buf  = new byte[ABS_MAX_VAL];
+  }
+
+////////////////////////////////////////////////////////////////
+// Flyweight
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Decode the first len bytes of our own buffer.  The headers are
+   * parsed in place and the payload is left in the buffer until
+   * someone asks for it as a byte[].
+   */
+  void decodeView(int len)
+    throws UnsupportedEncodingException
+  {
+    reset();
+    payloadOff = decodeHeaders(buf, 0, len);
+    payloadLen = len - payloadOff;
+    payload    = null;
+  }
+
+  /**
+   * Copy the payload out of the receive buffer on first access.
+   */
+  byte[] lazyPayload()
+  {
+    if (pooled) throw new IllegalStateException("DaspMessage already released");
+    return copy(buf, payloadOff, payloadLen);
+  }
+
+  /**
+   * Get the buffer holding the payload; use with payloadOff and
+   * payloadLen to read the payload without copying it.  The buffer
+   * is only valid until this message is released.
+   */
+  public final byte[] payloadBuf()
+  {
+    return buf == null || payload != null ? payload() : buf;
+  }
+
+  /**
+   * Get the offset of the payload within payloadBuf.
+   */
+  public final int payloadOff()
+  {
+    return buf == null || payload != null ? 0 : payloadOff;
+  }
+
+  /**
+   * Get the number of payload bytes.
+   */
+  public final int payloadLen()
+  {
+    return buf == null || payload != null ? payload().length : payloadLen;
+  }
+
+  /**
+   * Return this message and its buffer to the socket's pool once
+   * the application is done with it.  The payload must have been
+   * accessed via payload() first if it is needed after this call.
+   * Messages which are never released are simply garbage collected.
+   */
+  public void release()
+  {
+    if (pool != null) pool.release(this);
   }
 
   /**
@@ -37,16 +115,20 @@ public class DaspMessage extends DaspMsg
    */
   public String toString()
   {
-    return "DaspSessionMessage @ " + session + " (" + payload.length + " bytes)";
+    return "DaspSessionMessage @ " + session + " (" + payloadLen() + " bytes)";
   }
 
 ////////////////////////////////////////////////////////////////
 // Fields
 ////////////////////////////////////////////////////////////////
 
-  // next in Queue linked list
-  DaspMessage next;
-
   // DaspSession
   DaspSession session;
+
+  // pooled receive buffer and payload location within it
+  final DaspMessagePool pool;   // null if not pooled
+  final byte[] buf;             // null if not pooled
+  int payloadOff;
+  int payloadLen;
+  boolean pooled;               // sitting in the pool
 }
@@ -0,0 +1,173 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.dasp;
+
+/**
+ * DaspMessagePool is a bounded free list of DaspMessages which each
+ * own an ABS_MAX_VAL receive buffer.  Receivers read datagrams straight
+ * into a pooled message's buffer and decode the headers in place, so
+ * the steady state receive path allocates nothing.  Messages which are
+ * queued to the application come back when it calls release; if it
+ * never does they are garbage collected and the pool makes new ones.
+ */
+final class DaspMessagePool
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  DaspMessagePool(int max)
+  {
+    this.free = new DaspMessage[Math.max(max, 0)];
+  }
+
+////////////////////////////////////////////////////////////////
+// Methods
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Get a message from the pool or allocate a new one.
+   */
+  synchronized DaspMessage acquire()
+  {
+    DaspMessage m;
+    if (size > 0)
+    {
+      m = free[--size];
+      free[size] = null;
+    }
+    else
+    {
+      m = new DaspMessage(this);
+      misses++;
+    }
+    m.pooled   = false;
+    return m;
+  }
+
+  /**
+   * Return a message to the pool; extra messages
+   * beyond our max are left for the garbage collector.
+   */
+  synchronized void release(DaspMessage m)
+  {
+    if (m.pooled) return;
+    m.pooled  = true;
+    m.session = null;
+    if (size < free.length) free[size++] = m;
+  }
+
+  /**
+   * Number of messages currently free in the pool.
+   */
+  synchronized int size()
+  {
+    return size;
+  }
+
+  /**
+   * Number of times acquire had to allocate.
+   */
+  synchronized int misses()
+  {
+    return misses;
+  }
+
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    new DaspMessagePool(2).test();
+    long t2 = System.currentTimeMillis();
+    System.out.println("  DaspMessagePool Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private void test()
+    throws Exception
+  {
+    // empty pool allocates
+    DaspMessage a = acquire();
+    DaspMessage b = acquire();
+    DaspMessage c = acquire();
+    verify(misses() == 3);
+    verify(a.buf.length == DaspConst.ABS_MAX_VAL);
+
+    // release is bounded and idempotent
+    a.release();
+    a.release();
+    verify(size() == 1);
+    b.release();
+    c.release();
+    verify(size() == 2);
+    verify(acquire() == b);
+    verify(acquire() == a);
+    verify(misses() == 3);
+    verify(acquire() != c);
+    verify(misses() == 4);
+
+    // decode in place
+    DaspMsg src = new DaspMsg();
+    src.msgType   = DaspConst.DATAGRAM;
+    src.sessionId = 0x1234;
+    src.seqNum    = 0xabcd;
+    src.ack       = 0x0102;
+    src.ackMore   = new byte[] { 0x5, (byte)0x81 };
+    src.payload   = new byte[] { 'h', 'i', '!' };
+    byte[] enc = new byte[DaspConst.ABS_MAX_VAL];
+    int len = src.encode(enc);
+    DaspMessage m = acquire();
+    System.arraycopy(enc, 0, m.buf, 0, len);
+    m.decodeView(len);
+    verify(m.sessionId == 0x1234 && m.seqNum == 0xabcd && m.ack == 0x0102);
+    verify(m.ackMore == null);
+    verify(m.ackMore().length == 2 && m.ackMore()[0] == 0x5 && m.ackMore()[1] == (byte)0x81);
+    verify(m.isAckMore(0) && m.isAckMore(7) && m.isAckMore(8) && m.isAckMore(10));
+    verify(!m.isAckMore(1) && !m.isAckMore(9) && !m.isAckMore(16) && !m.isAckMore(-1));
+    verify(m.payloadBuf() == m.buf && m.payloadLen() == 3);
+    verify(m.buf[m.payloadOff()] == 'h' && m.buf[m.payloadOff()+2] == '!');
+
+    // re-encoding a decoded message keeps the ackMore bits
+    byte[] enc2 = new byte[DaspConst.ABS_MAX_VAL];
+    verify(m.encode(enc2) == len);
+    for (int i=0; i<len; ++i) verify(enc2[i] == enc[i]);
+
+    // payload materializes a copy, after release it is still valid
+    byte[] p = m.payload();
+    verify(p != m.buf && p.length == 3 && p[1] == 'i');
+    m.release();
+    verify(m.payload() == p);
+
+    // released without materializing is an error
+    m = acquire();
+    m.decodeView(len);
+    m.release();
+    try { m.payload(); verify(false); } catch (IllegalStateException e) { verify(true); }
+  }
+
+  private void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  private final DaspMessage[] free;  // free stack
+  private int size;                  // num free in stack
+  private int misses;                // num allocations
+}
@@ -10,6 +10,7 @@ package sedona.dasp;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
 
 import sedona.dasp.DaspConst;
 import sedona.util.TextUtil;
@@ -63,6 +64,25 @@ public class DaspMsg implements DaspConst
     
     return new DaspMsg(buf, length);
   }
+
+  /**
+   * Decodes the remaining bytes of the given buffer into a DaspMessage.
+   * The buffer's position is advanced to its limit.
+   *
+   * @param buf
+   *          the buffer containing the message to decode, it may be direct.
+   *
+   * @return the decoded message.
+   * @throws UnsupportedEncodingException
+   *           if a Str header in the message is not properly encoded.
+   */
+  public static DaspMsg decode(ByteBuffer buf)
+    throws UnsupportedEncodingException
+  {
+    DaspMsg msg = new DaspMsg();
+    msg.doDecode(buf);
+    return msg;
+  }
   
 ////////////////////////////////////////////////////////////////
 // Constructors
@@ -97,14 +117,52 @@ public class DaspMsg implements DaspConst
 ////////////////////////////////////////////////////////////////
 
   protected void doDecode(byte[] buf, final int length) throws UnsupportedEncodingException
+  {
+    int pos = decodeHeaders(buf, 0, length);
+    payload = copy(buf, pos, length - pos);
+  }
+
+  /**
+   * Decode the bytes between the buffer's position and limit.
+   * On return the buffer's position is set to its limit.
+   */
+  protected void doDecode(ByteBuffer buf) throws UnsupportedEncodingException
+  {
+    byte[] bytes;
+    int off, end;
+    if (buf.hasArray())
+    {
+      bytes = buf.array();
+      off = buf.arrayOffset() + buf.position();
+      end = buf.arrayOffset() + buf.limit();
+    }
+    else
+    {
+      bytes = new byte[buf.remaining()];
+      buf.duplicate().get(bytes);
+      off = 0;
+      end = bytes.length;
+    }
+    int pos = decodeHeaders(bytes, off, end);
+    payload = copy(bytes, pos, end - pos);
+    buf.position(buf.limit());
+  }
+
+  /**
+   * Parse the fixed header and header fields in place between
+   * off and end, and return the index where the payload starts.
+   * Only Str and byte[] headers (which are only used during the
+   * handshake) allocate; the ackMore header is kept as a bitmask.
+   */
+  protected int decodeHeaders(byte[] buf, final int off, final int end) throws UnsupportedEncodingException
   {
     // header
-    sessionId = ((buf[0] & 0xff) << 8) | (buf[1] & 0xff);
-    seqNum    = ((buf[2] & 0xff) << 8) | (buf[3] & 0xff);
-    msgType   = (buf[4] & 0xff) >> 4;
-    final int numFields = (buf[4] & 0xf);
+    sessionId = ((buf[off+0] & 0xff) << 8) | (buf[off+1] & 0xff);
+    seqNum    = ((buf[off+2] & 0xff) << 8) | (buf[off+3] & 0xff);
+    msgType   = (buf[off+4] & 0xff) >> 4;
+    final int numFields = (buf[off+4] & 0xf);
     
-    int pos = 5;
+    int pos = off + 5;
     for (int i=0; i<numFields; ++i)
     {
       int id = buf[pos++];
@@ -126,8 +184,16 @@ public class DaspMsg implements DaspConst
           break;
         case 3:
           int blen = buf[pos++] & 0xff;
-          bytes = blen == 0 ? noBytes : new byte[blen];
-          System.arraycopy(buf, pos, bytes, 0, blen);
+          if (id == ACK_MORE && blen <= 4)
+          {
+            ackMoreBits = 0;
+            for (int j=0; j<blen; ++j) ackMoreBits = (ackMoreBits << 8) | (buf[pos+j] & 0xff);
+            ackMoreLen = blen;
+          }
+          else
+          {
+            bytes = copy(buf, pos, blen);
+          }
           pos += blen;
           break;
         default:
@@ -155,9 +221,43 @@ public class DaspMsg implements DaspConst
     }
     
     // payload is whatever is left
-    int len = length - pos;
-    payload = (len == 0) ? noBytes : new byte[len];
-    System.arraycopy(buf, pos, payload, 0, len);
+    return pos;
+  }
+
+  static byte[] copy(byte[] buf, int off, int len)
+  {
+    if (len == 0) return noBytes;
+    byte[] bytes = new byte[len];
+    System.arraycopy(buf, off, bytes, 0, len);
+    return bytes;
+  }
+
+  /**
+   * Clear all the fields back to their defaults so
+   * that this instance may be reused.
+   */
+  protected void reset()
+  {
+    sessionId       = -1;
+    msgType         = -1;
+    seqNum          = -1;
+    version         = -1;
+    remoteId        = -1;
+    digestAlgorithm = null;
+    nonce           = null;
+    username        = null;
+    digest          = null;
+    idealMax        = -1;
+    absMax          = -1;
+    ack             = -1;
+    ackMore         = null;
+    ackMoreBits     = 0;
+    ackMoreLen      = 0;
+    receiveMax      = -1;
+    receiveTimeout  = -1;
+    errorCode       = -1;
+    platformId      = null;
+    payload         = noBytes;
   }
   
 ////////////////////////////////////////////////////////////////
@@ -197,6 +297,7 @@ public class DaspMsg implements DaspConst
     if (hasAbsMax)               { num++; buf[pos++] = (byte)ABS_MAX;          pos = u2(pos, buf, absMax); }
     if (ack > -1)                { num++; buf[pos++] = (byte)ACK;              pos = u2(pos, buf, ack); }
     if (ackMore != null)         { num++; buf[pos++] = (byte)ACK_MORE;         pos = bytes(pos, buf, ackMore); }
+    else if (ackMoreLen > 0)     { num++; buf[pos++] = (byte)ACK_MORE;         pos = bits(pos, buf, ackMoreBits, ackMoreLen); }
     if (hasReceiveMax)           { num++; buf[pos++] = (byte)RECEIVE_MAX;      pos = u2(pos, buf, receiveMax); }
     if (hasReceiveTimeout)       { num++; buf[pos++] = (byte)RECEIVE_TIMEOUT;  pos = u2(pos, buf, (int)(receiveTimeout/1000L)); }
     if (errorCode > -1)          { num++; buf[pos++] = (byte)ERROR_CODE;       pos = u2(pos, buf, errorCode); }
@@ -205,6 +306,7 @@ public class DaspMsg implements DaspConst
     // backpatch msgType and numFields
     buf[4] = (byte)((msgType << 4) | num);
 
+    byte[] payload = payload();
     if (payload != null)
     {
       System.arraycopy(payload, 0, buf, pos, payload.length);
@@ -228,6 +330,14 @@ public class DaspMsg implements DaspConst
     return pos+val.length;
   }
 
+  private int bits(int pos, byte[] buf, int bits, int len)
+  {
+    buf[pos++] = (byte)len;
+    for (int i=len-1; i>=0; --i)
+      buf[pos++] = (byte)(bits >>> (i*8));
+    return pos;
+  }
+
   private int str(int pos, byte[] buf, String val)
   {
     for (int i=0; i<val.length(); ++i)
@@ -308,8 +418,18 @@ public class DaspMsg implements DaspConst
    */
   public final byte[] payload()
   {
+    if (payload == null) payload = lazyPayload();
     return payload;
   }
+
+  /**
+   * Hook for messages which are views over a buffer
+   * to copy out their payload on demand.
+   */
+  byte[] lazyPayload()
+  {
+    return noBytes;
+  }
   
   /**
    * Set the payload.
@@ -582,8 +702,40 @@ public class DaspMsg implements DaspConst
    */
   public final byte[] ackMore()
   {
+    if (ackMore == null && ackMoreLen > 0)
+    {
+      byte[] bytes = new byte[ackMoreLen];
+      for (int i=0; i<ackMoreLen; ++i)
+        bytes[i] = (byte)(ackMoreBits >>> ((ackMoreLen-i-1)*8));
+      return bytes;
+    }
     return ackMore;
   }
+
+  /**
+   * Return if the ackMore header has the bit set for the
+   * sequence number diff past the ack header.  Bit 0 of the
+   * last byte is the ack itself.
+   */
+  final boolean isAckMore(int diff)
+  {
+    if (ackMore != null)
+    {
+      int index = ackMore.length - (diff>>3) - 1;
+      if (index < 0 || index >= ackMore.length) return false;
+      return ((ackMore[index] & 0xff) & (1 << (diff & 0x7))) != 0;
+    }
+    if (diff < 0 || diff >= ackMoreLen*8) return false;
+    return ((ackMoreBits >>> diff) & 0x1) != 0;
+  }
+
+  /**
+   * Return if this message has an ackMore header.
+   */
+  final boolean hasAckMore()
+  {
+    return ackMore != null || ackMoreLen > 0;
+  }
   
   /**
    * Set the ackMore header field.
@@ -593,6 +745,7 @@ public class DaspMsg implements DaspConst
    */
   public final void setAckMore(byte[] ackMore)
   {
+    this.ackMoreLen = 0;
     if (ackMore == null)
       this.ackMore = null;
     else
@@ -664,7 +817,7 @@ public class DaspMsg implements DaspConst
    if (idealMax > -1)           out.println("  idealMax        = " + idealMax);
    if (absMax > -1)             out.println("  absMax          = " + absMax);
    if (ack > -1)                out.println("  ack             = " + ack);
-   if (ackMore != null)         out.println("  ackMore         = " + toString(ackMore));
+   if (hasAckMore())            out.println("  ackMore         = " + toString(ackMore()));
    if (receiveMax > -1)         out.println("  receiveMax      = " + receiveMax);
    if (receiveTimeout > -1)     out.println("  receiveTimeout  = " + receiveTimeout);
    if (errorCode > -1)          out.println("  errorCode       = " + errorCode);
@@ -704,6 +857,8 @@ public class DaspMsg implements DaspConst
   protected int     absMax = -1;
   protected int     ack = -1;
   protected byte[]  ackMore;
+  int               ackMoreBits;  // ackMore when decoded or set by ReceiveWindow
+  int               ackMoreLen;   // num bytes in ackMoreBits or 0
   protected int     receiveMax = -1;
   protected long    receiveTimeout = -1;
   protected int     errorCode = -1;
@@ -38,7 +38,8 @@ public class DaspSession
     this.port            = port;
     this.isClient        = isClient;
     this.isServer        = !isClient;
-    this.receiveQueue    = new ReceiveQueue(option(options, "dasp.sessionQueueMax", SESSION_QUEUE_MAX));
+    this.receiveQueue    = new ReceiveQueue(option(options, "dasp.sessionQueueMax", SESSION_QUEUE_MAX),
+                                        ReceiveQueue.policy((String)options.get("dasp.sessionQueuePolicy")));
     this.receiveWindow   = new ReceiveWindow(this);
     this.sendWindow      = new SendWindow(this);
     this.idealMax        = option(options, "dasp.idealMax",       IDEAL_MAX_DEF);
@@ -46,9 +47,17 @@ public class DaspSession
     this.receiveTimeout  = option(options, "dasp.receiveTimeout", RECEIVE_TIMEOUT_DEF);
     this.connectTimeout  = option(options, "dasp.connectTimeout", CONNECT_TIMEOUT_VAL);
     sendWindow.sendRetry = option(options, "dasp.sendRetry",      SEND_RETRY_VAL);
+    sendWindow.minRetry  = option(options, "dasp.minSendRetry",   MIN_SEND_RETRY_VAL);
+    sendWindow.maxRetry  = option(options, "dasp.maxSendRetry",   MAX_SEND_RETRY_VAL);
+    sendWindow.adaptiveRetry = option(options, "dasp.adaptiveRetry", true);
+    sendWindow.congestionControl = option(options, "dasp.congestionControl", true);
+    sendWindow.cwnd      = option(options, "dasp.initialCwnd",    INITIAL_CWND_VAL);
     sendWindow.maxSend   = option(options, "dasp.maxSend",        MAX_SEND);
+    receiveWindow.ackDelay = option(options, "dasp.ackDelay",     ACK_DELAY_VAL);
+    receiveWindow.ackEvery = option(options, "dasp.ackEvery",     ACK_EVERY_VAL);
     this.lastReceive     = ticks();
     this.connectTime     = ticks();
+    this.houseKeepingTask = new TimerWheel.Task() { void expired() { houseKeeping(); } };
 
     test = (DaspTestHooks)options.get("dasp.test");
     if (test != null) test.session = this;
@@ -164,6 +173,19 @@ public class DaspSession
     sendWindow.send(payload);
   }
 
+  /**
+   * Send the datagram if the sending window has room right
+   * now, otherwise return false without blocking.
+   */
+  public boolean trySend(byte[] buf, int off, int len)
+    throws Exception
+  {
+    if (isClosed) throw new DaspException("DaspSession is closed: " + closeCause);
+    byte[] payload = new byte[len];
+    System.arraycopy(buf, off, payload, 0, len);
+    return sendWindow.trySend(payload);
+  }
+
   /**
    * Receive a datagram from the remote endpoint.  This
    * method blocks until a datagram has been received or
@@ -179,7 +201,18 @@ public class DaspSession
     if (socket.qMode != DaspSocket.SESSION_QUEUING)
       throw new IllegalStateException("not using session queuing mode");
 
+    long deadline = ticks() + timeout;
     DaspMessage msg = receiveQueue.dequeue(timeout);
+
+    // skip a duplicate handshake response which raced the welcome,
+    // waiting only for what is left of the timeout
+    while (msg != null && (msg.msgType == CHALLENGE || msg.msgType == WELCOME))
+    {
+      msg.release();
+      long left = timeout < 0 ? -1 : Math.max(0, deadline - ticks());
+      msg = receiveQueue.dequeue(left);
+    }
+
     if (isClosed) throw new DaspException("DaspSession is closed: " + closeCause);
     if (msg == null) return null;
     if (msg.msgType != DATAGRAM) throw new DaspException("Invalid message received: " + msg.msgType);
@@ -279,8 +312,9 @@ public class DaspSession
       try { if (listener != null) listener.daspSessionClosed(this); }
       catch (Exception e) { e.printStackTrace(); }
 
-      // remove from socket table
+      // remove from socket table and house keeping
       socket.free(this);
+      socket.timer.cancel(houseKeepingTask);
 
       // kill send and receive queues
       sendWindow.kill();
@@ -496,6 +530,7 @@ public class DaspSession
     this.receiveTimeout   = Math.max(x.receiveTimeout(), this.receiveTimeout);
     sendWindow.sendSize   = this.remoteReceiveMax;
     receiveWindow.init(x.seqNum);
+    this.tuned            = true;
   }
 
 ////////////////////////////////////////////////////////////////
@@ -504,12 +539,14 @@ public class DaspSession
 
   /**
    * Dispatch a message for this session - this callback
-   * occurs on the DaspSocket Receiver thread.
+   * occurs on the DaspSocket Receiver thread.  Return true if
+   * the message was handed off to a queue, in which case the
+   * caller must not touch it again.
    */
-  void dispatch(DaspMessage msg)
+  boolean dispatch(DaspMessage msg)
   {
     // test hooks to drop received packets
-    if (test != null && !test.receive(msg.msgType, msg.seqNum, msg.payload)) return;
+    if (test != null && !test.receive(msg.msgType, msg.seqNum, msg.payload())) return false;
 
     // increment counter
     numReceived++;
@@ -519,50 +556,59 @@ public class DaspSession
 
     // authenticate is always immediately
     // processed on the receiver thread
-    if (msg.msgType == AUTHENTICATE) { welcome(msg); return; }
+    if (msg.msgType == AUTHENTICATE) { welcome(msg); return false; }
 
     // let send window check for acks
     sendWindow.checkAckHeaders(msg);
 
-    // if not within the receiving window then toss it
-    if (msg.msgType == DATAGRAM && !receiveWindow.receive(msg.seqNum))
-      return;
+    // if not within the receiving window then toss it,
+    // otherwise make sure we get around to acking it
+    if (msg.msgType == DATAGRAM)
+    {
+      boolean accepted = receiveWindow.receive(msg.seqNum);
+      if (receiveWindow.ackNow())
+        scheduleHouseKeeping(lastReceive);
+      else if (accepted)
+        scheduleHouseKeeping(lastReceive + receiveWindow.ackDelay);
+      if (!accepted) return false;
+    }
 
     // these message types just get stuck onto the queue
     switch (msg.msgType)
     {
       // these get stuck on the queue during handshake
-      // so the connecting thread can do the processing
+      // so the connecting thread can do the processing;
+      // duplicates arriving after the handshake are tossed
       case CHALLENGE:
       case WELCOME:
-        enqueue(msg);
-        return;
+        return !tuned && enqueue(msg);
 
       // close gets stuck on the queue during handshake
       // so the connecting thread can do the processing,
       // but we also shutdown the session (we don't use
       // close b/c we don't need to send the close msg)
       case CLOSE:
-        enqueue(msg);
-        shutdown("remote endpoint sent close (" + msg.errorCode + ")");
-        return;
+        String cause = "remote endpoint sent close (" + msg.errorCode + ")";
+        boolean queued = enqueue(msg);
+        shutdown(cause);
+        return queued;
 
       // datagrams always stuck on the queue to
       // be dequeued in the receive method
       case DATAGRAM:
         if (socket.qMode == DaspSocket.SOCKET_QUEUING)
-          socket.enqueue(msg);
+          return socket.enqueue(msg);
         else
-          enqueue(msg);
-        return;
+          return enqueue(msg);
 
       // keep alives don't need further processing
       case KEEPALIVE:
-        return;
+        return false;
 
       // huh?
       default:
         System.out.println("DaspSession unexpected msgType=" + msg.msgType);
+        return false;
     }
   }
 
@@ -570,18 +616,21 @@ public class DaspSession
    * Enqueue a message for the session - if the queue is full then
    * we assume something bad has happened to the application processing
    * this queue, so we kill the session (we never want to block the
-   * socket receiver thread).
+   * socket receiver thread).  The dasp.sessionQueuePolicy option may
+   * choose to drop messages or block instead.  Return true if the
+   * queue took the message, from then on it belongs to the consumer.
    */
-  void enqueue(DaspMessage msg)
+  boolean enqueue(DaspMessage msg)
   {
     try
     {
-      receiveQueue.enqueue(msg);
+      return receiveQueue.enqueue(msg);
     }
     catch (ReceiveQueue.FullException e)
     {
       System.out.println("ERROR: DaspSession queue full!");
       close(TIMEOUT, "receive queue full");
+      return false;
     }
   }
 
@@ -590,12 +639,14 @@ public class DaspSession
 ////////////////////////////////////////////////////////////////
 
   /**
-   * House keeping is called every 100ms on a background thread
-   * shared by all sessions on a given socket.  House keeping is
-   * used to check for retries, acks, keep-alives, and timeouts.
+   * House keeping is called by the socket's timer wheel whenever
+   * the earliest of this session's deadlines comes due.  House keeping
+   * is used to check for retries, acks, keep-alives, and timeouts.
    */
   void houseKeeping()
   {
+    if (isClosed) return;
+
     // if we haven't heard from the remote endpoint in a
     // while, then its curtains for this session
     if (ticks() - lastReceive > receiveTimeout)
@@ -618,6 +669,30 @@ public class DaspSession
     // just haven't sent anything in a while
     if (receiveWindow.unacked() || ticks() - lastSend > receiveTimeout/3)
       keepAlive();
+
+    scheduleHouseKeeping();
+  }
+
+  /**
+   * Schedule house keeping for the earliest of our deadlines:
+   * receive timeout, keep-alive, next retry, or pending ack.
+   */
+  void scheduleHouseKeeping()
+  {
+    long deadline = lastReceive + receiveTimeout + 1;
+    deadline = Math.min(deadline, lastSend + receiveTimeout/3 + 1);
+    long retry = sendWindow.nextRetry();
+    if (retry >= 0) deadline = Math.min(deadline, retry);
+    if (receiveWindow.unacked()) deadline = Math.min(deadline, ticks() + receiveWindow.ackDelay);
+    if (!isClosed) socket.timer.schedule(houseKeepingTask, deadline);
+  }
+
+  /**
+   * Make sure house keeping runs no later than the given deadline.
+   */
+  void scheduleHouseKeeping(long deadline)
+  {
+    if (!isClosed) socket.timer.scheduleEarlier(houseKeepingTask, deadline);
   }
 
   /**
@@ -625,7 +700,7 @@ public class DaspSession
    */
   void keepAlive()
   {
-    DaspMsg keepAlive = new DaspMsg();
+    DaspMsg keepAlive = scratch();
     keepAlive.msgType    = KEEPALIVE;
     keepAlive.sessionId  = remoteId;
     keepAlive.seqNum     = 0xffff;
@@ -646,19 +721,46 @@ public class DaspSession
 
   static long ticks() { return sedona.Env.ticks(); }
 
+  /**
+   * Get this thread's reusable message for building outgoing
+   * datagrams and keep alives.  Sends encode synchronously, so
+   * the message is free again once send returns.
+   */
+  static DaspMsg scratch()
+  {
+    DaspMsg msg = (DaspMsg)scratch.get();
+    msg.reset();
+    return msg;
+  }
+
+  private static final ThreadLocal scratch = new ThreadLocal()
+  {
+    protected Object initialValue() { return new DaspMsg(); }
+  };
+
 ////////////////////////////////////////////////////////////////
 // Debug
 ////////////////////////////////////////////////////////////////
 
-  public long uptime()          { return ticks() - connectTime; }
-  public long lastSend()        { return lastSend; }
-  public long lastReceive()     { return lastReceive; }
-  public int numSent()          { return numSent; }
-  public int numReceived()      { return numReceived; }
-  public int numRetries()       { return numRetries; }
-  public int sendWindowSize()   { return sendWindow.sendSize; }
-  public long sendWindowRetry() { return sendWindow.sendRetry; }
-  public int[] ackTimes()       { return (int[])sendWindow.ackTimes.clone(); }
+  public long uptime()            { return ticks() - connectTime; }
+  public long lastSend()          { return lastSend; }
+  public long lastReceive()       { return lastReceive; }
+  public int numSent()            { return numSent; }
+  public int numReceived()        { return numReceived; }
+  public int numRetries()         { return numRetries; }
+  public int sendWindowSize()     { return sendWindow.sendSize; }
+  public long sendWindowRetry()   { return sendWindow.sendRetry; }
+  public long smoothedRtt()       { return sendWindow.srtt(); }
+  public long rttVariance()       { return sendWindow.rttvar(); }
+  public long retransmitTimeout() { return sendWindow.rto(); }
+  public int[] ackTimes()         { return (int[])sendWindow.ackTimes.clone(); }
+  public int congestionWindow()   { return sendWindow.cwnd(); }
+  public int slowStartThreshold() { return sendWindow.ssthresh(); }
+  public int numCwndLosses()      { return sendWindow.numCwndLosses; }
+  public int[] cwndHistory()      { return (int[])sendWindow.cwndHistory.clone(); }
+  public int receiveQueueSize()   { return receiveQueue.size(); }
+  public int receiveQueuePeak()   { return receiveQueue.peak(); }
+  public int receiveQueueDrops()  { return receiveQueue.drops(); }
 
 ////////////////////////////////////////////////////////////////
 // Listeners
@@ -669,6 +771,84 @@ public class DaspSession
     public void daspSessionClosed(DaspSession session);
   }
 
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    DaspSocket sock = DaspSocket.open(-1, null, DaspSocket.SESSION_QUEUING);
+    try
+    {
+      java.util.Hashtable options = new java.util.Hashtable();
+      options.put("dasp.test", new DaspTestHooks()
+        {
+          public boolean send(int msgType, int num, byte[] msg) { return false; }
+        }
+      );
+      new DaspSession(sock.interfaces[0], 0, null, 0, true, options).test();
+    }
+    finally
+    {
+      sock.close();
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.println("  DaspSession Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private void test()
+    throws Exception
+  {
+    // skipped handshake duplicates go back to the pool
+    DaspMessagePool pool = socket.pool;
+    handshake(pool, CHALLENGE);
+    handshake(pool, WELCOME);
+    DaspMessage c = handshake(pool, DATAGRAM);
+    int size = pool.size();
+    verify(receive(0) == c);
+    verify(pool.size() == size + 2);
+    c.release();
+    verify(receiveQueue.isEmpty());
+
+    // duplicates arriving while waiting don't restart the timeout
+    final long start = ticks();
+    Thread dups = new Thread("DaspSession.test")
+    {
+      public void run()
+      {
+        try
+        {
+          while (ticks() - start < 600) { handshake(socket.pool, CHALLENGE); Thread.sleep(20); }
+        }
+        catch (Exception e) {}
+      }
+    };
+    dups.start();
+    verify(receive(200) == null);
+    long elapsed = ticks() - start;
+    verify(elapsed >= 190 && elapsed < 450);
+    dups.join();
+  }
+
+  private DaspMessage handshake(DaspMessagePool pool, int msgType)
+    throws Exception
+  {
+    DaspMessage m = pool.acquire();
+    m.msgType = msgType;
+    receiveQueue.enqueue(m);
+    return m;
+  }
+
+  private static void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
 ////////////////////////////////////////////////////////////////
 // Fields
 ////////////////////////////////////////////////////////////////
@@ -690,6 +870,7 @@ public class DaspSession
   public boolean traceReceive;     // trace messages for session
   int remoteId;                    // remote session id
   volatile boolean isClosed;       // has the session been closed
+  volatile boolean tuned;          // handshake parameters applied
   int numSent;                     // number packets sent
   int numReceived;                 // number packets sent
   int numRetries;                  // number of retries
@@ -700,6 +881,7 @@ public class DaspSession
   ReceiveQueue receiveQueue;       // receiving queue
   ReceiveWindow receiveWindow;     // receiving window
   SendWindow sendWindow;           // sending window
+  TimerWheel.Task houseKeepingTask; // scheduled on socket.timer
   long connectTimeout;             // ms
   int remoteReceiveMax;            // session tuned
   int idealMax;                    // session tuned
@@ -12,7 +12,9 @@ package sedona.dasp;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -53,8 +55,24 @@ public class DaspSocket
     if (queuingMode != SOCKET_QUEUING && queuingMode != SESSION_QUEUING)
       throw new IllegalArgumentException("invalid queueingMode");
       
+    return open(new DefaultDaspSocketInterface(port), acceptor, queuingMode);
+  }                
+
+  /**
+   * Open a socket bound to the specified interface as its 
+   * primary interface.  This is how to use an alternate 
+   * implementation such as NioDaspSocketInterface.  See
+   * open(int, DaspAcceptor, int) for the acceptor and
+   * queuingMode parameters.
+   */
+  public static DaspSocket open(DaspSocketInterface iface, DaspAcceptor acceptor, int queuingMode)
+    throws Exception                           
+  {                                                              
+    if (queuingMode != SOCKET_QUEUING && queuingMode != SESSION_QUEUING)
+      throw new IllegalArgumentException("invalid queueingMode");
+      
     DaspSocket s = new DaspSocket(acceptor, queuingMode);
-    s.addInterface(new DefaultDaspSocketInterface(port));
+    s.addInterface(iface);
     return s;                                                                        
   }                
   
@@ -65,14 +83,18 @@ public class DaspSocket
     
     this.acceptor       = a;  
     this.isAlive        = true;
-    this.sessions       = new HashMap(300);      
+    this.sessions       = new SessionTable();      
     this.rand           = new Random();     
     this.interfacesLock = new Object();  
     this.interfaces     = new DaspSocketInterface[0]; 
     this.qMode          = qMode;      
-    this.queue          = new ReceiveQueue(DaspSession.option(options, "dasp.socketQueueMax", SOCKET_QUEUE_MAX));   
+    this.queue          = new ReceiveQueue(DaspSession.option(options, "dasp.socketQueueMax", SOCKET_QUEUE_MAX),
+                                           ReceiveQueue.policy((String)options.get("dasp.socketQueuePolicy")));
     this.traceSend      = DaspSession.option(options, "dasp.traceSend", false);   
     this.traceReceive   = DaspSession.option(options, "dasp.traceReceive", false);   
+    this.pool           = new DaspMessagePool(DaspSession.option(options, "dasp.messagePoolMax", MESSAGE_POOL_MAX));
+    this.timer          = new TimerWheel("DaspSocket.HouseKeeping");
+    timer.start();
   }
     
 ////////////////////////////////////////////////////////////////
@@ -87,6 +109,23 @@ public class DaspSocket
   {         
     return qMode;
   }
+
+  /**
+   * Get the peak depth the socket queue has reached.
+   */
+  public int queuePeak()
+  {
+    return queue.peak();
+  }
+
+  /**
+   * Get the number of messages the socket queue has dropped
+   * under the dasp.socketQueuePolicy overflow policy.
+   */
+  public int queueDrops()
+  {
+    return queue.drops();
+  }
   
   /**
    * Get the acceptor configured to authenticate server sessions.
@@ -179,10 +218,7 @@ public class DaspSocket
    */
   public DaspSession[] sessions()
   {                    
-    synchronized (sessions)
-    {
-      return (DaspSession[])sessions.values().toArray(new DaspSession[sessions.size()]); 
-    }
+    return sessions.toArray(); 
   }
 
   /**
@@ -190,10 +226,7 @@ public class DaspSocket
    */
   public DaspSession session(int id)
   {
-    synchronized (sessions)
-    {
-      return (DaspSession)sessions.get(new Integer(id)); 
-    }
+    return sessions.get(id); 
   }     
 
   /**
@@ -201,7 +234,7 @@ public class DaspSocket
    */
   public int port()                             
   {
-    return ((DefaultDaspSocketInterface)interfaces[0]).sock.getLocalPort();
+    return interfaces()[0].localPort();
   }
   
   /**
@@ -231,8 +264,9 @@ public class DaspSocket
       }     
     } 
         
-    // close down interfaces
+    // close down house keeping and interfaces
     this.isAlive = false;
+    timer.stop();
     DaspSocketInterface[] interfaces = interfaces();
     for (int i=0; i<interfaces.length; ++i)
     {
@@ -303,16 +337,18 @@ public class DaspSocket
   /**
    * Enqueue a message for the socket - if the 
    * queue is full then we have big problems.
+   * Return true if the queue took the message.
    */
-  void enqueue(DaspMessage msg)
+  boolean enqueue(DaspMessage msg)
   {
     try
     {                    
-      queue.enqueue(msg);
+      return queue.enqueue(msg);
     }
     catch (ReceiveQueue.FullException e)
     { 
       System.out.println("ERROR: DaspSocket queue full!");
+      return false;
     }
   }
     
@@ -327,15 +363,54 @@ public class DaspSocket
   void dispatch(DaspSocketInterface iface, DatagramPacket packet)
     throws Exception
   {                                  
-    // extract packet info                          
-    InetAddress host = packet.getAddress();
-    int port         = packet.getPort();
-    byte[] buf       = packet.getData();
-    int len          = packet.getLength();  
-
-    // parse into Msg
-    DaspMessage msg = new DaspMessage(buf, len);
-    
+    DaspMessage msg = pool.acquire();
+    int len = packet.getLength();
+    System.arraycopy(packet.getData(), packet.getOffset(), msg.buf, 0, len);
+    dispatch(iface, packet.getAddress(), packet.getPort(), msg, len);
+  }
+
+  /**
+   * Dispatch a packet read into a (typically direct) buffer.  The
+   * bytes between its position and limit are bulk copied into a
+   * pooled message, so the buffer may be reused as soon as we return.
+   */
+  void dispatch(DaspSocketInterface iface, InetSocketAddress addr, ByteBuffer buf)
+    throws Exception
+  {                                  
+    DaspMessage msg = pool.acquire();
+    int len = buf.remaining();
+    buf.get(msg.buf, 0, len);
+    dispatch(iface, addr.getAddress(), addr.getPort(), msg, len);
+  }
+
+  /**
+   * Dispatch a pooled message whose first len buffer bytes have
+   * been received.  The headers are decoded in place and unless the
+   * message was queued for the application it goes back to the pool.
+   * Once queued the consumer may already have released it and another
+   * receiver reused it, so ownership is tracked here and not on msg.
+   */
+  void dispatch(DaspSocketInterface iface, InetAddress host, int port, DaspMessage msg, int len)
+    throws Exception
+  {
+    boolean queued = false;
+    try
+    {
+      msg.decodeView(len);
+      queued = dispatch(iface, host, port, msg);
+    }
+    finally
+    {
+      if (!queued) msg.release();
+    }
+  }
+
+  /**
+   * Return true if msg was handed off to a queue.
+   */
+  private boolean dispatch(DaspSocketInterface iface, InetAddress host, int port, DaspMessage msg)
+    throws Exception
+  {
     // lookup session
     DaspSession session = session(msg.sessionId);
     
@@ -352,7 +427,7 @@ public class DaspSocket
       // allocate a new server session
       DaspSession s = alloc(iface, host, port, DaspSession.SERVER, acceptor.options());
       s.challenge(msg);
-      return;
+      return false;
     }
     else if (msg.msgType == DISCOVER) 
     {
@@ -366,11 +441,11 @@ public class DaspSocket
     // otherwise ensure host/port are valid
     if (session == null || 
         !session.host.equals(host) || 
-        session.port != port) return;
+        session.port != port) return false;
     
     // dispatch to session for handling  
     msg.session = session;
-    session.dispatch(msg);    
+    return session.dispatch(msg);
   }                           
     
 ////////////////////////////////////////////////////////////////
@@ -389,21 +464,33 @@ public class DaspSocket
       if (sessions.size() >= MAX_SESSIONS_VAL)
         throw new Exception("busy - too many sessions");
       
-      // pick random key until we find free one
-      Integer id = null;
+      // pick random key until we reserve a free one
+      int id;
       while (true)
       {
-        int r = rand.nextInt() & 0xffff;
-        if (r == 0xffff) continue;
-        if (sessions.get(id = new Integer(r)) == null) break;
+        id = rand.nextInt() & 0xffff;
+        if (id == 0xffff) continue;
+        if (sessions.reserve(id)) break;
       }       
       
       // create new session
-      DaspSession s = createDaspSession(iface, id.intValue(), host, port, isClient, options);
-      if (s.id != id.intValue()) throw new IllegalStateException("session not created with required id: " + id);
+      DaspSession s;
+      try
+      {
+        s = createDaspSession(iface, id, host, port, isClient, options);
+        if (s.id != id) throw new IllegalStateException("session not created with required id: " + id);
+      }
+      catch (RuntimeException e)
+      {
+        sessions.release(id);
+        throw e;
+      }
       
       // put into tables
-      sessions.put(id, s);
+      sessions.put(s);
+      
+      // start house keeping to check for connect timeouts
+      s.scheduleHouseKeeping();
       
       return s;
     }
@@ -419,10 +506,7 @@ public class DaspSocket
    */
   void free(DaspSession s)
   {
-    synchronized (sessions)
-    {                     
-      sessions.remove(new Integer(s.id)); 
-    }
+    sessions.remove(s); 
   }
 
 
@@ -547,22 +631,23 @@ public class DaspSocket
     if (msg.ack >= 0)                  
     {
       sb.append(" ack=").append(Integer.toHexString(msg.ack));
-      if (msg.ackMore != null)
-        sb.append(" ackMore=").append(new Buf(msg.ackMore));
+      if (msg.hasAckMore())
+        sb.append(" ackMore=").append(new Buf(msg.ackMore()));
     }
     
     if (msg.msgType == DaspConst.DATAGRAM)
     {          
-      final String r = (msg.payload[1] == -1) ? "ff" : Integer.toHexString(msg.payload[1]);
-      sb.append(" c=").append((char)msg.payload[0])
+      final byte[] payload = msg.payload();
+      final String r = (payload[1] == -1) ? "ff" : Integer.toHexString(payload[1]);
+      sb.append(" c=").append((char)payload[0])
         .append(" r=").append(r)
-        .append(' ').append(new Buf(msg.payload));
+        .append(' ').append(new Buf(payload));
     }                          
     else if (msg.msgType == DaspConst.CLOSE)
     {                  
       sb.append(" err=").append(Integer.toHexString(msg.errorCode))
         .append(" msgType=").append(msg.msgType).append(' ')
-        .append(new Buf(msg.payload));
+        .append(new Buf(msg.payload()));
     }                          
     else
     {
@@ -587,10 +672,12 @@ public class DaspSocket
   volatile boolean isAlive;         // to keep receiver alive
   DaspSocketInterface[] interfaces; // network interfaces
   Object interfacesLock;            // lock for accessing interfaces
-  HashMap sessions;                 // Integer -> DaspSession  
+  SessionTable sessions;            // id -> DaspSession  
   Random rand;                      // randomizer
   int qMode;                        // session or socket queueing mode
   ReceiveQueue queue;               // used for socket queuing
+  TimerWheel timer;                 // schedules session house keeping
+  DaspMessagePool pool;             // receive buffers
 
   ArrayList discovered;   // collects responses to discover msg
 }
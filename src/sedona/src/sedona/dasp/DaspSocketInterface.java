@@ -26,7 +26,6 @@ public abstract class DaspSocketInterface
 
   public DaspSocketInterface()
   {
-    this.sendPacket = new DatagramPacket(new byte[DaspConst.ABS_MAX_VAL], DaspConst.ABS_MAX_VAL);
   }
 
 ////////////////////////////////////////////////////////////////
@@ -60,6 +59,15 @@ public abstract class DaspSocketInterface
   protected abstract void receive(DatagramPacket p)
     throws IOException;
 
+  /**
+   * Get the local port this interface is bound to or
+   * -1 if not applicable.
+   */
+  public int localPort()
+  {
+    return -1;
+  }
+
   /**
    * Close down this socket interface.
    */
@@ -79,9 +87,6 @@ public abstract class DaspSocketInterface
 
     receiver = new Receiver();
     receiver.start();
-
-    houseKeeping = new HouseKeeping();
-    houseKeeping.start();
   }
 
   /**
@@ -89,9 +94,8 @@ public abstract class DaspSocketInterface
    */
   public void stop()
   {
-    // kill background threads
+    // kill background thread
     try { receiver.interrupt(); receiver = null; } catch (Exception e) {}
-    try { houseKeeping.interrupt(); houseKeeping = null; } catch (Exception e) {}
 
     // give subclass chance to cleanup
     try { close(); } catch (Exception e) {}
@@ -110,31 +114,42 @@ public abstract class DaspSocketInterface
 ////////////////////////////////////////////////////////////////
 
   /**
-   * DaspSessions route here to send a packet.
+   * DaspSessions route here to send a packet.  Each sending thread
+   * encodes into its own reusable packet, so sessions on different
+   * threads encode and send concurrently without sharing a lock.
    */
   void send(DaspSession session, DaspMsg msg)
   {
-    synchronized (sendPacket)
+    DatagramPacket packet = (DatagramPacket)sendPacket.get();
+    try
     {
-      try
+      packet.setAddress(session.host);
+      packet.setPort(session.port);
+      packet.setLength(msg.encode(packet.getData()));
+      send(packet);
+    }
+    catch (IOException e)
+    {
+      if (daspSocket.traceSend)
       {
-        sendPacket.setAddress(session.host);
-        sendPacket.setPort(session.port);
-        sendPacket.setLength(msg.encode(sendPacket.getData()));
-        send(sendPacket);
-      }
-      catch (IOException e)
-      {
-        if (daspSocket.traceSend)
-        {
-          System.out.println("ERROR: DaspSocket error on send - " + e.getMessage());
-          e.printStackTrace();
-        }
-        session.shutdown(e.getMessage());
+        System.out.println("ERROR: DaspSocket error on send - " + e.getMessage());
+        e.printStackTrace();
       }
+      session.shutdown(e.getMessage());
     }
   }
 
+  /**
+   * Reusable packet for sends, one per sending thread.
+   */
+  private static final ThreadLocal sendPacket = new ThreadLocal()
+  {
+    protected Object initialValue()
+    {
+      return new DatagramPacket(new byte[DaspConst.ABS_MAX_VAL], DaspConst.ABS_MAX_VAL);
+    }
+  };
+
 ////////////////////////////////////////////////////////////////
 // Receiver
 ////////////////////////////////////////////////////////////////
@@ -149,9 +164,10 @@ public abstract class DaspSocketInterface
 
     public void run()
     {
-      // reusable datagram
-      byte[] buf = new byte[DaspConst.ABS_MAX_VAL];
-      DatagramPacket packet = new DatagramPacket(buf, buf.length);
+      // reusable datagram, which receives straight
+      // into the buffer of a pooled message
+      DatagramPacket packet = new DatagramPacket(new byte[0], 0);
+      DaspMessage msg = null;
 
       // loop forever receiving messages
       while (daspSocket.isAlive)
@@ -159,11 +175,14 @@ public abstract class DaspSocketInterface
         try
         {
           // receive packet
-          packet.setLength(buf.length);
+          if (msg == null) msg = daspSocket.pool.acquire();
+          packet.setData(msg.buf);
           receive(packet);
 
-          // dispatch
-          daspSocket.dispatch(DaspSocketInterface.this, packet);
+          // dispatch, which takes ownership of msg
+          DaspMessage m = msg;
+          msg = null;
+          daspSocket.dispatch(DaspSocketInterface.this, packet.getAddress(), packet.getPort(), m, packet.getLength());
         }
         catch (SocketTimeoutException e)
         {
@@ -173,58 +192,7 @@ public abstract class DaspSocketInterface
           if (daspSocket.isAlive) e.printStackTrace();
         }
       }
-    }
-  }
-
-////////////////////////////////////////////////////////////////
-// HouseKeeping
-////////////////////////////////////////////////////////////////
-
-  /**
-   * This is a background thread which periodically walks all
-   * the sessions and gives them a chance to do house keeping
-   * chores such as retries, keep-alives, and timeouts.  We
-   * try to run housekeeping every 100ms.
-   */
-  class HouseKeeping extends Thread
-  {
-    HouseKeeping() { super("DaspSocket.HouseKeeping"); }
-
-    public void run()
-    {
-      // loop forever receiving messages
-      while (daspSocket.isAlive)
-      {
-        try
-        {
-          long t1 = System.currentTimeMillis();
-
-          // call house keeping callback on each session
-          DaspSession[] sessions = daspSocket.sessions();
-          for (int i=0; i<sessions.length; ++i)
-          {
-            try
-            {
-              DaspSession session = sessions[i];
-              if (session.iface == DaspSocketInterface.this)
-                sessions[i].houseKeeping();
-            }
-            catch (Throwable e)
-            {
-              if (daspSocket.isAlive) e.printStackTrace();
-            }
-          }
-
-          // attempt to run every 100ms
-          long t2 = System.currentTimeMillis();
-          long snooze = 100 - (t2-t1);
-          if (snooze > 5) Thread.sleep(snooze);
-        }
-        catch (Throwable e)
-        {
-          if (daspSocket.isAlive) e.printStackTrace();
-        }
-      }
+      if (msg != null) msg.release();
     }
   }
 
@@ -233,9 +201,7 @@ public abstract class DaspSocketInterface
 ///////////////////////////////////////////////////////////////
 
   Receiver receiver;            // receiver thread
-  HouseKeeping houseKeeping;    // house keeping thread
   DaspSocket daspSocket;        // set by DaspSocket
-  DatagramPacket sendPacket;    // reusable packet for sends
   int numSent;
   int numReceived;
   int numRetries;
@@ -49,6 +49,11 @@ public class DaspTestHooks
   {                                                   
     SendWindow.main(null);
     ReceiveWindow.main(null);
+    TimerWheel.main(null);
+    SessionTable.main(null);
+    DaspMessagePool.main(null);
+    ReceiveQueue.main(null);
+    DaspSession.main(null);
   }    
 
 ////////////////////////////////////////////////////////////////
@@ -0,0 +1,286 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.dasp;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoopbackDaspSocketInterface connects DaspSockets in the same VM
+ * through memory queues instead of UDP.  Each interface is bound to a
+ * virtual port on 127.0.0.1 and packets sent to that port are handed
+ * straight to its queue.  Impairments are applied to packets as they
+ * are sent, so they model the sender's outbound link:
+ *
+ * <pre>
+ *   LoopbackDaspSocketInterface server = new LoopbackDaspSocketInterface(-1);
+ *   LoopbackDaspSocketInterface client = new LoopbackDaspSocketInterface(-1);
+ *   client.setLoss(0.05).setLatency(20).setBandwidth(100000);
+ *   DaspSocket s = DaspSocket.open(server, acceptor, qMode);
+ *   DaspSocket c = DaspSocket.open(client, null, qMode);
+ *   c.connect(LoopbackDaspSocketInterface.address(), server.localPort(), user, pass);
+ * </pre>
+ *
+ * Random impairments are drawn from a seeded generator so runs with
+ * the same seed and traffic make the same decisions.
+ */
+public class LoopbackDaspSocketInterface extends DaspSocketInterface
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Bind to the specified virtual port (or the next
+   * free one if -1) with a random seed of zero.
+   */
+  public LoopbackDaspSocketInterface(int port)
+    throws IOException
+  {
+    this(port, 0L);
+  }
+
+  /**
+   * Bind to the specified virtual port (or the next free
+   * one if -1) seeding impairments with the given seed.
+   */
+  public LoopbackDaspSocketInterface(int port, long seed)
+    throws IOException
+  {
+    this.rand  = new Random(seed);
+    this.queue = new DelayQueue();
+    synchronized (ports)
+    {
+      if (port < 0)
+      {
+        while (ports.get(new Integer(nextPort)) != null) nextPort++;
+        port = nextPort++;
+      }
+      Integer key = new Integer(port);
+      if (ports.get(key) != null) throw new IOException("Loopback port in use: " + port);
+      ports.put(key, this);
+      this.port = port;
+    }
+  }
+
+  /**
+   * Get the address used by all loopback interfaces.
+   */
+  public static InetAddress address()
+  {
+    return addr;
+  }
+
+////////////////////////////////////////////////////////////////
+// Impairments
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Probability from 0.0 to 1.0 that a sent packet is lost.
+   */
+  public LoopbackDaspSocketInterface setLoss(double p) { loss = p; return this; }
+
+  /**
+   * Probability from 0.0 to 1.0 that a sent packet
+   * is held back by the reorder delay.
+   */
+  public LoopbackDaspSocketInterface setReorder(double p) { reorder = p; return this; }
+
+  /**
+   * Extra ms a reordered packet is held back,
+   * default is 10ms.
+   */
+  public LoopbackDaspSocketInterface setReorderDelay(long ms) { reorderDelay = ms; return this; }
+
+  /**
+   * Probability from 0.0 to 1.0 that a sent
+   * packet is delivered twice.
+   */
+  public LoopbackDaspSocketInterface setDuplicate(double p) { duplicate = p; return this; }
+
+  /**
+   * One way latency in ms added to every sent packet.
+   */
+  public LoopbackDaspSocketInterface setLatency(long ms) { latency = ms; return this; }
+
+  /**
+   * Outbound bandwidth in bytes per second or zero for unlimited.
+   * Packets queue behind each other as they would on a slow link.
+   */
+  public LoopbackDaspSocketInterface setBandwidth(long bytesPerSec) { bandwidth = bytesPerSec; return this; }
+
+  public int numLost()       { return numLost; }
+  public int numReordered()  { return numReordered; }
+  public int numDuplicated() { return numDuplicated; }
+
+////////////////////////////////////////////////////////////////
+// DaspSocketInterface
+////////////////////////////////////////////////////////////////
+
+  public boolean routes(InetAddress addr, int port)
+  {
+    return true;
+  }
+
+  public int localPort()
+  {
+    return port;
+  }
+
+  /**
+   * Apply our impairments and queue the packet for the interface
+   * bound to its destination port.  Packets to unbound ports are
+   * silently dropped as UDP would.
+   */
+  public void send(DatagramPacket p) throws IOException
+  {
+    if (closed) throw new IOException("Loopback interface closed");
+    LoopbackDaspSocketInterface to = (LoopbackDaspSocketInterface)ports.get(new Integer(p.getPort()));
+    if (to == null) return;
+
+    byte[] data = new byte[p.getLength()];
+    System.arraycopy(p.getData(), p.getOffset(), data, 0, data.length);
+
+    long due;
+    int copies = 1;
+    synchronized (this)
+    {
+      if (rand.nextDouble() < loss) { numLost++; return; }
+
+      long now = System.nanoTime();
+      long at = now;
+      if (bandwidth > 0)
+      {
+        // serialize behind whatever is already on the link
+        linkFree = Math.max(linkFree, now) + data.length * 1000000000L / bandwidth;
+        at = linkFree;
+      }
+      due = at + latency * 1000000L;
+      if (rand.nextDouble() < reorder) { numReordered++; due += reorderDelay * 1000000L; }
+      if (rand.nextDouble() < duplicate) { numDuplicated++; copies = 2; }
+    }
+
+    for (int i=0; i<copies; ++i)
+      to.queue.put(new Packet(data, port, due, seq()));
+  }
+
+  /**
+   * Wait for the next packet which is due; time out
+   * periodically so the receiver can notice a close.
+   */
+  protected void receive(DatagramPacket p) throws IOException
+  {
+    Packet x;
+    try
+    {
+      x = (Packet)queue.poll(RECEIVE_POLL, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e)
+    {
+      throw new SocketTimeoutException("interrupted");
+    }
+    if (x == null) throw new SocketTimeoutException();
+
+    System.arraycopy(x.data, 0, p.getData(), p.getOffset(), x.data.length);
+    p.setLength(x.data.length);
+    p.setAddress(addr);
+    p.setPort(x.from);
+  }
+
+  public void close() throws IOException
+  {
+    closed = true;
+    synchronized (ports)
+    {
+      Integer key = new Integer(port);
+      if (ports.get(key) == this) ports.remove(key);
+    }
+    queue.clear();
+  }
+
+////////////////////////////////////////////////////////////////
+// Packet
+////////////////////////////////////////////////////////////////
+
+  private static synchronized long seq() { return nextSeq++; }
+
+  /**
+   * Packet in flight, delayed until due; ties are
+   * broken by send order.
+   */
+  static final class Packet implements Delayed
+  {
+    Packet(byte[] data, int from, long due, long seq)
+    {
+      this.data = data;
+      this.from = from;
+      this.due  = due;
+      this.seq  = seq;
+    }
+
+    public long getDelay(TimeUnit unit)
+    {
+      return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public int compareTo(Delayed o)
+    {
+      Packet x = (Packet)o;
+      if (due != x.due) return due < x.due ? -1 : 1;
+      if (seq != x.seq) return seq < x.seq ? -1 : 1;
+      return 0;
+    }
+
+    final byte[] data;
+    final int from;
+    final long due;
+    final long seq;
+  }
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  static final long RECEIVE_POLL = 100;  // ms
+
+  private static final Hashtable ports = new Hashtable();  // Integer -> iface
+  private static int nextPort = 40000;
+  private static long nextSeq;
+  private static final InetAddress addr;
+  static
+  {
+    InetAddress a = null;
+    try { a = InetAddress.getByAddress("localhost", new byte[] { 127, 0, 0, 1 }); }
+    catch (Exception e) { e.printStackTrace(); }
+    addr = a;
+  }
+
+  final int port;                  // virtual port
+  private final DelayQueue queue;  // packets sent to us
+  private final Random rand;       // seeded impairments
+  private volatile boolean closed;
+  private long linkFree;           // nanoTime our link is next idle
+  private double loss;
+  private double reorder;
+  private long reorderDelay = 10;
+  private double duplicate;
+  private long latency;
+  private long bandwidth;
+  private int numLost;
+  private int numReordered;
+  private int numDuplicated;
+}
@@ -0,0 +1,218 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.dasp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * NioDaspEventLoop is a single background thread which services
+ * any number of NioDaspSocketInterfaces with one Selector.  The
+ * same thread reads every datagram for all its interfaces, so the
+ * thread count stays fixed no matter how many interfaces and ports
+ * are bound.  The thread is started when the first interface is
+ * registered and exits once the last one has been unregistered.
+ * Session house keeping is not run here, it is scheduled by each
+ * DaspSocket's own timer wheel.
+ */
+public final class NioDaspEventLoop
+{
+
+////////////////////////////////////////////////////////////////
+// Construction
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Get the event loop shared by default by all
+   * NioDaspSocketInterfaces in this VM.
+   */
+  public static NioDaspEventLoop shared()
+    throws IOException
+  {
+    synchronized (NioDaspEventLoop.class)
+    {
+      if (shared == null) shared = new NioDaspEventLoop("NioDaspEventLoop");
+      return shared;
+    }
+  }
+
+  /**
+   * Create a new event loop with its own selector.
+   */
+  public NioDaspEventLoop(String name)
+    throws IOException
+  {
+    this.name       = name;
+    this.lock       = new Object();
+    this.selector   = Selector.open();
+    this.interfaces = new NioDaspSocketInterface[0];
+    this.pending    = new ArrayList();
+    this.buf        = ByteBuffer.allocateDirect(DaspConst.ABS_MAX_VAL);
+  }
+
+////////////////////////////////////////////////////////////////
+// Methods
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Get the number of interfaces currently serviced by this loop.
+   */
+  public int size()
+  {
+    synchronized (lock)
+    {
+      return interfaces.length;
+    }
+  }
+
+  /**
+   * Return if the background thread is currently running.
+   */
+  public boolean isRunning()
+  {
+    synchronized (lock)
+    {
+      return thread != null;
+    }
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return name + " [" + size() + " interfaces]";
+  }
+
+  /**
+   * Start servicing the specified interface - called
+   * by NioDaspSocketInterface.start.
+   */
+  void register(NioDaspSocketInterface iface)
+  {
+    synchronized (lock)
+    {
+      NioDaspSocketInterface[] temp = new NioDaspSocketInterface[interfaces.length+1];
+      System.arraycopy(interfaces, 0, temp, 0, interfaces.length);
+      temp[interfaces.length] = iface;
+      interfaces = temp;
+
+      // channels must be registered on the loop thread, otherwise
+      // register blocks while the selector is in select()
+      pending.add(iface);
+      if (thread == null)
+      {
+        thread = new Loop();
+        thread.start();
+      }
+      else
+      {
+        selector.wakeup();
+      }
+    }
+  }
+
+  /**
+   * Stop servicing the specified interface - called
+   * by NioDaspSocketInterface.stop.
+   */
+  void unregister(NioDaspSocketInterface iface)
+  {
+    synchronized (lock)
+    {
+      ArrayList temp = new ArrayList(interfaces.length);
+      for (int i=0; i<interfaces.length; ++i)
+        if (interfaces[i] != iface) temp.add(interfaces[i]);
+      interfaces = (NioDaspSocketInterface[])temp.toArray(new NioDaspSocketInterface[temp.size()]);
+      pending.remove(iface);
+
+      SelectionKey key = iface.channel.keyFor(selector);
+      if (key != null) key.cancel();
+      selector.wakeup();
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// Loop
+////////////////////////////////////////////////////////////////
+
+  /**
+   * The event loop thread: select for readable
+   * channels and dispatch their datagrams.
+   */
+  class Loop extends Thread
+  {
+    Loop() { super(name); }
+
+    public void run()
+    {
+      while (true)
+      {
+        synchronized (lock)
+        {
+          // exit once there is nothing left to service
+          if (interfaces.length == 0) { thread = null; return; }
+
+          // register newly started interfaces
+          for (int i=0; i<pending.size(); ++i)
+          {
+            NioDaspSocketInterface iface = (NioDaspSocketInterface)pending.get(i);
+            try
+            {
+              iface.channel.register(selector, SelectionKey.OP_READ, iface);
+            }
+            catch (IOException e)
+            {
+              e.printStackTrace();
+            }
+          }
+          pending.clear();
+        }
+
+        try
+        {
+          // wait for something to read
+          selector.select();
+
+          // drain readable channels into our reusable buffer
+          Iterator it = selector.selectedKeys().iterator();
+          while (it.hasNext())
+          {
+            SelectionKey key = (SelectionKey)it.next();
+            it.remove();
+            if (key.isValid() && key.isReadable())
+              ((NioDaspSocketInterface)key.attachment()).read(buf);
+          }
+        }
+        catch (Throwable e)
+        {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  private static NioDaspEventLoop shared;
+
+  final String name;                     // thread name
+  final Selector selector;               // selector for all channels
+  private final Object lock;             // guards interfaces, pending, thread
+  private NioDaspSocketInterface[] interfaces; // copy on write
+  private ArrayList pending;             // interfaces to register with selector
+  private Thread thread;                 // loop thread or null if idle
+  private final ByteBuffer buf;          // reusable receive buffer (loop thread only)
+}
@@ -0,0 +1,181 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.dasp;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * NioDaspSocketInterface uses a non-blocking DatagramChannel which
+ * is serviced by a NioDaspEventLoop instead of its own receiver and
+ * house keeping threads.  Many interfaces may share one event loop:
+ *
+ * <pre>
+ *   DaspSocket s = DaspSocket.open(new NioDaspSocketInterface(port), acceptor, qMode);
+ * </pre>
+ */
+public class NioDaspSocketInterface extends DaspSocketInterface
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Bind to the specified port (or an ephemeral port
+   * if -1) using the shared event loop.
+   */
+  public NioDaspSocketInterface(int port)
+    throws IOException
+  {
+    this(port, NioDaspEventLoop.shared());
+  }
+
+  /**
+   * Bind to the specified port (or an ephemeral port
+   * if -1) using the specified event loop.
+   */
+  public NioDaspSocketInterface(int port, NioDaspEventLoop loop)
+    throws IOException
+  {
+    this(new InetSocketAddress(port < 0 ? 0 : port), loop);
+  }
+
+  /**
+   * Bind to the specified local address using the
+   * specified event loop.
+   */
+  public NioDaspSocketInterface(InetSocketAddress bindAddr, NioDaspEventLoop loop)
+    throws IOException
+  {
+    this.loop = loop;
+    this.channel = DatagramChannel.open();
+    try
+    {
+      channel.configureBlocking(false);
+      channel.socket().bind(bindAddr);
+    }
+    catch (IOException e)
+    {
+      channel.close();
+      throw e;
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// DaspSocketInterface
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Get the event loop servicing this interface.
+   */
+  public final NioDaspEventLoop loop()
+  {
+    return loop;
+  }
+
+  public boolean routes(InetAddress addr, int port)
+  {
+    return true;
+  }
+
+  public int localPort()
+  {
+    return channel.socket().getLocalPort();
+  }
+
+  /**
+   * Send the packet; if the channel has no room to queue the
+   * datagram it is dropped and left to DASP retries.
+   */
+  public void send(DatagramPacket p) throws IOException
+  {
+    channel.send(ByteBuffer.wrap(p.getData(), p.getOffset(), p.getLength()), p.getSocketAddress());
+  }
+
+  /**
+   * Blocking receives are not supported, all reads
+   * happen on the event loop thread.
+   */
+  protected void receive(DatagramPacket p) throws IOException
+  {
+    throw new IOException("NioDaspSocketInterface reads on its event loop");
+  }
+
+  public void close() throws IOException
+  {
+    channel.close();
+  }
+
+////////////////////////////////////////////////////////////////
+// Lifecycle
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Register with the event loop rather than
+   * starting our own threads.
+   */
+  public void start(DaspSocket s)
+  {
+    daspSocket = s;
+    loop.register(this);
+  }
+
+  /**
+   * Unregister from the event loop and close the channel.
+   */
+  public void stop()
+  {
+    loop.unregister(this);
+    try { close(); } catch (Exception e) {}
+  }
+
+////////////////////////////////////////////////////////////////
+// Receive
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Called on the event loop thread when our channel is readable.
+   * Read up to MAX_READS datagrams into the loop's reusable buffer
+   * and dispatch each straight from the buffer.
+   */
+  void read(ByteBuffer buf)
+  {
+    for (int i=0; i<MAX_READS; ++i)
+    {
+      try
+      {
+        buf.clear();
+        InetSocketAddress addr = (InetSocketAddress)channel.receive(buf);
+        if (addr == null) return;
+        buf.flip();
+        daspSocket.dispatch(this, addr, buf);
+      }
+      catch (Throwable e)
+      {
+        if (daspSocket.isAlive) e.printStackTrace();
+        if (!channel.isOpen()) return;
+      }
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  // max datagrams read per wakeup so busy channels can't starve others
+  static final int MAX_READS = 64;
+
+  final NioDaspEventLoop loop;     // services our channel
+  final DatagramChannel channel;   // non-blocking UDP channel
+}
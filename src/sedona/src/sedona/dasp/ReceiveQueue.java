@@ -4,46 +4,88 @@
 //
 // History:
 //   3 Jan 07  Brian Frank  Creation
+//   17 Oct 26  Lock-free ring with overflow policies
 //
 
 package sedona.dasp;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
 /**
- * ReceiveQueue manages the incoming DaspSessionMessage queue.
+ * ReceiveQueue manages the incoming DaspSessionMessage queue.  It is a
+ * bounded lock-free ring where each slot carries a sequence number, so
+ * the receiver threads enqueue and the application dequeues without
+ * sharing a lock.  Threads only park when the queue is empty (or full
+ * under the BLOCK policy), and are unparked directly by the other side.
  */
 final class ReceiveQueue
-{                       
+{
 
 ////////////////////////////////////////////////////////////////
 // Constructor.
-////////////////////////////////////////////////////////////////  
-  
+////////////////////////////////////////////////////////////////
+
   /**
-   * Constructor. 
+   * Constructor using the FAIL overflow policy.
    */
   ReceiveQueue(int max)
   {
-    this.max = max;
+    this(max, FAIL);
+  }
+
+  /**
+   * Constructor with the given overflow policy.
+   */
+  ReceiveQueue(int max, int policy)
+  {
+    int cap = 2;
+    while (cap < max) cap <<= 1;
+
+    this.max    = max;
+    this.policy = policy;
+    this.mask   = cap - 1;
+    this.slots  = new AtomicReferenceArray(cap);
+    this.seqs   = new AtomicLongArray(cap);
+    for (int i=0; i<cap; ++i) seqs.set(i, i);
+  }
+
+  /**
+   * Parse an overflow policy name: "fail", "dropOldest",
+   * "dropNewest", or "block".
+   */
+  static int policy(String name)
+  {
+    if (name == null || name.equals("fail")) return FAIL;
+    if (name.equals("dropOldest")) return DROP_OLDEST;
+    if (name.equals("dropNewest")) return DROP_NEWEST;
+    if (name.equals("block"))      return BLOCK;
+    throw new IllegalArgumentException("Unknown queue policy: " + name);
   }
-  
+
 ////////////////////////////////////////////////////////////////
 // Access
-////////////////////////////////////////////////////////////////  
+////////////////////////////////////////////////////////////////
 
   /**
    * Get the if size is zero.
    */
-  public final synchronized boolean isEmpty()
+  public final boolean isEmpty()
   {
-    return size == 0;
+    return size() == 0;
   }
 
   /**
    * Get the number of frames currently in the queue.
    */
-  public final synchronized int size()
+  public final int size()
   {
-    return size;
+    long n = tail.get() - head.get();
+    return n <= 0 ? 0 : (int)n;
   }
 
   /**
@@ -51,11 +93,20 @@ final class ReceiveQueue
    */
   public final int peak()
   {
-    return peak;
+    return peak.get();
   }
 
   /**
-   * Return current queue backlog which will be tolerated. 
+   * Get the number of messages discarded by the
+   * DROP_OLDEST or DROP_NEWEST policies.
+   */
+  public final int drops()
+  {
+    return drops.get();
+  }
+
+  /**
+   * Return current queue backlog which will be tolerated.
    */
   public final int max()
   {
@@ -63,14 +114,24 @@ final class ReceiveQueue
   }
 
   /**
-   * Clear the isAlive flag which will wake up blocked enqueuers.
+   * Get the overflow policy.
+   */
+  public final int policy()
+  {
+    return policy;
+  }
+
+  /**
+   * Clear the isAlive flag which will wake up blocked
+   * enqueuers and dequeuers.
    */
-  public final synchronized void kill()
+  public final void kill()
   {
     isAlive = false;
-    notifyAll();
+    unparkAll(consumers);
+    unparkAll(producers);
   }
-  
+
   /**
    * Read off the oldest message from the queue.  If
    * no messages exist on the queue, then wait for
@@ -82,62 +143,199 @@ final class ReceiveQueue
    *    if the queue is empty and the timeout
    *    expired.
    */
-  public synchronized DaspMessage dequeue(long timeout)   
+  public DaspMessage dequeue(long timeout)
     throws InterruptedException
   {
-    while (isAlive && size == 0 && timeout != 0)
+    DaspMessage m = poll();
+    if (m != null || timeout == 0) return m;
+
+    long deadline = System.nanoTime() + timeout * 1000000L;
+    Thread t = Thread.currentThread();
+    while (true)
     {
-      if (timeout == -1) wait();
-      else { wait(timeout); break; }
+      // register before the recheck so an enqueue
+      // between the two is sure to unpark us
+      consumers.add(t);
+      m = poll();
+      if (m != null || !isAlive)
+      {
+        consumers.remove(t);
+        return m;
+      }
+
+      long nanos = deadline - System.nanoTime();
+      if (timeout == -1) LockSupport.park(this);
+      else if (nanos > 0) LockSupport.parkNanos(this, nanos);
+      consumers.remove(t);
+
+      if (Thread.interrupted()) { passWakeup(); throw new InterruptedException(); }
+      if (timeout != -1 && nanos <= 0) { passWakeup(); return null; }
     }
-    
-    DaspMessage m = head;
-    if (m == null) return null;
-    head = m.next;
-    if (head == null) tail = null;
-    m.next = null;
-    size--;
-    notifyAll();
-    return m;
   }
 
   /**
-   * Add a message to the end of the Queue.
-   * Throw FullException if queue is full.
+   * Add a message to the end of the Queue.  Return true if the
+   * message was queued or false if the DROP_NEWEST policy discarded
+   * it.  Throw FullException if full under the FAIL policy.  Under
+   * the BLOCK policy wait for room, which stalls the calling receiver.
    */
-  public synchronized void enqueue(DaspMessage m)
+  public boolean enqueue(DaspMessage m)
     throws FullException
-  {                     
-    if (isAlive && size >= max()) 
-      throw new FullException();
-    
-    if (m.next != null) throw new IllegalStateException();
-    if (tail == null) { head = tail = m; }
-    else { tail.next = m; tail = m; }
-    size++;
-    if (size > peak) peak = size;
-    notifyAll();
-  }
-  
+  {
+    while (true)
+    {
+      // once killed we don't enforce max, so that final messages
+      // such as close still get to whoever is draining the queue
+      if ((!isAlive || size() < max) && offer(m))
+      {
+        updatePeak();
+        Object w = consumers.peek();
+        if (w != null) LockSupport.unpark((Thread)w);
+        return true;
+      }
+
+      switch (policy)
+      {
+        case DROP_NEWEST:
+          drops.incrementAndGet();
+          return false;
+
+        case DROP_OLDEST:
+          DaspMessage old = poll();
+          if (old != null) { drops.incrementAndGet(); old.release(); }
+          break;
+
+        case BLOCK:
+          if (!isAlive) { drops.incrementAndGet(); return false; }
+          Thread t = Thread.currentThread();
+          producers.add(t);
+          if (size() >= max && isAlive) LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+          producers.remove(t);
+          break;
+
+        default:
+          throw new FullException();
+      }
+    }
+  }
+
   /**
    * Remove all the enqueued entries.
    */
-  public synchronized void clear()
+  public void clear()
   {
-    size = 0;
-    head = null;
-    tail = null;
-    notifyAll();
+    while (poll() != null);
   }
-  
+
   /**
    * To string.
    */
   public String toString()
   {
-    return "MsgQueue size=" + size + " peak=" + peak + " max=" + max();
+    return "MsgQueue size=" + size() + " peak=" + peak() + " drops=" + drops() + " max=" + max();
   }
-  
+
+////////////////////////////////////////////////////////////////
+// Ring
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Claim the tail slot and publish the message into it.
+   * Return false if the ring is full.  A slot is free for
+   * position pos when its sequence equals pos.
+   */
+  private boolean offer(DaspMessage m)
+  {
+    long pos = tail.get();
+    while (true)
+    {
+      int i = (int)(pos & mask);
+      long dif = seqs.get(i) - pos;
+      if (dif == 0)
+      {
+        if (tail.compareAndSet(pos, pos+1))
+        {
+          slots.set(i, m);
+          seqs.set(i, pos+1);
+          return true;
+        }
+        pos = tail.get();
+      }
+      else if (dif < 0)
+      {
+        return false;
+      }
+      else
+      {
+        pos = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Claim the head slot and take its message, or return null if
+   * the ring is empty.  A slot is full for position pos when its
+   * sequence equals pos+1; we free it for the next lap.
+   */
+  private DaspMessage poll()
+  {
+    long pos = head.get();
+    while (true)
+    {
+      int i = (int)(pos & mask);
+      long dif = seqs.get(i) - (pos+1);
+      if (dif == 0)
+      {
+        if (head.compareAndSet(pos, pos+1))
+        {
+          DaspMessage m = (DaspMessage)slots.get(i);
+          slots.set(i, null);
+          seqs.set(i, pos+mask+1);
+          Object w = producers.peek();
+          if (w != null) LockSupport.unpark((Thread)w);
+          return m;
+        }
+        pos = head.get();
+      }
+      else if (dif < 0)
+      {
+        return null;
+      }
+      else
+      {
+        pos = head.get();
+      }
+    }
+  }
+
+  private void updatePeak()
+  {
+    int n = size();
+    while (true)
+    {
+      int p = peak.get();
+      if (n <= p || peak.compareAndSet(p, n)) return;
+    }
+  }
+
+  /**
+   * A consumer leaving without a message may have been the one
+   * picked to wake, so pass the wakeup on if anything is queued.
+   */
+  private void passWakeup()
+  {
+    if (isEmpty()) return;
+    Object w = consumers.peek();
+    if (w != null) LockSupport.unpark((Thread)w);
+  }
+
+  private static void unparkAll(ConcurrentLinkedQueue q)
+  {
+    Object[] threads = q.toArray();
+    for (int i=0; i<threads.length; ++i)
+      LockSupport.unpark((Thread)threads[i]);
+  }
+
 ////////////////////////////////////////////////////////////////
 // FullException
 ////////////////////////////////////////////////////////////////
@@ -146,15 +344,159 @@ final class ReceiveQueue
   {
   }
 
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    test();
+    long t2 = System.currentTimeMillis();
+    System.out.println("  ReceiveQueue Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private static void test()
+    throws Exception
+  {
+    DaspMessage a = new DaspMessage();
+    DaspMessage b = new DaspMessage();
+    DaspMessage c = new DaspMessage();
+
+    // fail
+    ReceiveQueue q = new ReceiveQueue(2);
+    verify(q.dequeue(0) == null);
+    verify(q.enqueue(a));
+    verify(q.enqueue(b));
+    verify(q.size() == 2 && q.peak() == 2);
+    try { q.enqueue(c); verify(false); } catch (FullException e) { verify(true); }
+    verify(q.dequeue(0) == a);
+    verify(q.dequeue(-1) == b);
+    verify(q.isEmpty());
+
+    // timeout
+    long t = System.currentTimeMillis();
+    verify(q.dequeue(30) == null);
+    verify(System.currentTimeMillis() - t >= 25);
+
+    // drop newest
+    q = new ReceiveQueue(2, DROP_NEWEST);
+    verify(q.enqueue(a));
+    verify(q.enqueue(b));
+    verify(!q.enqueue(c));
+    verify(q.drops() == 1);
+    verify(q.dequeue(0) == a);
+    verify(q.dequeue(0) == b);
+
+    // drop oldest
+    q = new ReceiveQueue(2, DROP_OLDEST);
+    verify(q.enqueue(a));
+    verify(q.enqueue(b));
+    verify(q.enqueue(c));
+    verify(q.drops() == 1 && q.size() == 2);
+    verify(q.dequeue(0) == b);
+    verify(q.dequeue(0) == c);
+
+    // many laps around a ring which isn't a power of 2
+    q = new ReceiveQueue(3);
+    for (int i=0; i<1000; ++i)
+    {
+      verify(q.enqueue(a));
+      verify(q.enqueue(b));
+      verify(q.dequeue(0) == a);
+      verify(q.enqueue(c));
+      verify(q.dequeue(0) == b);
+      verify(q.dequeue(0) == c);
+    }
+    verify(q.peak() == 2);
+
+    // block waits for the consumer, who is unparked by producers
+    final ReceiveQueue bq = new ReceiveQueue(1, BLOCK);
+    final int num = 20000;
+    final int[] received = new int[1];
+    Thread consumer = new Thread("ReceiveQueue.test")
+    {
+      public void run()
+      {
+        try
+        {
+          while (received[0] < num*2 && bq.dequeue(5000) != null) received[0]++;
+        }
+        catch (InterruptedException e) {}
+      }
+    };
+    consumer.start();
+    Thread[] producers = new Thread[2];
+    for (int i=0; i<producers.length; ++i)
+    {
+      producers[i] = new Thread("ReceiveQueue.test")
+      {
+        public void run()
+        {
+          try { for (int j=0; j<num; ++j) bq.enqueue(new DaspMessage()); }
+          catch (FullException e) {}
+        }
+      };
+      producers[i].start();
+    }
+    for (int i=0; i<producers.length; ++i) producers[i].join();
+    consumer.join();
+    verify(received[0] == num*2);
+    verify(bq.drops() == 0);
+
+    // kill wakes a blocked dequeue
+    final ReceiveQueue kq = new ReceiveQueue(2);
+    Thread killer = new Thread("ReceiveQueue.test")
+    {
+      public void run()
+      {
+        try { Thread.sleep(20); } catch (InterruptedException e) {}
+        kq.kill();
+      }
+    };
+    killer.start();
+    verify(kq.dequeue(-1) == null);
+    killer.join();
+
+    // policy names
+    verify(policy(null) == FAIL);
+    verify(policy("dropOldest") == DROP_OLDEST);
+    verify(policy("dropNewest") == DROP_NEWEST);
+    verify(policy("block") == BLOCK);
+  }
+
+  private static void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
 ////////////////////////////////////////////////////////////////
 // Attributes
 ////////////////////////////////////////////////////////////////
 
-  private DaspMessage head;
-  private DaspMessage tail;
-  private int size;
-  private int peak;
-  private boolean isAlive = true;
-  private int max;   
-  
+  static final int FAIL        = 0;  // throw FullException
+  static final int DROP_OLDEST = 1;  // discard the head to make room
+  static final int DROP_NEWEST = 2;  // discard the message being queued
+  static final int BLOCK       = 3;  // wait for room
+
+  // producers recheck for room at least this often
+  static final long BLOCK_PARK_NANOS = 10000000L;
+
+  private final AtomicReferenceArray slots;  // messages
+  private final AtomicLongArray seqs;        // per slot sequence
+  private final int mask;                    // capacity-1
+  private final AtomicLong head = new AtomicLong();  // next position to dequeue
+  private final AtomicLong tail = new AtomicLong();  // next position to enqueue
+  private final ConcurrentLinkedQueue consumers = new ConcurrentLinkedQueue(); // parked dequeuers
+  private final ConcurrentLinkedQueue producers = new ConcurrentLinkedQueue(); // parked enqueuers
+  private final AtomicInteger peak  = new AtomicInteger();
+  private final AtomicInteger drops = new AtomicInteger();
+  private volatile boolean isAlive = true;
+  private final int max;
+  private final int policy;
+
 }
@@ -10,6 +10,10 @@ package sedona.dasp;
 
 /**
  * ReceiveWindow manages the incoming message sequences and acknowledgements.
+ * Acks piggyback on outgoing messages; when we have nothing to send they
+ * are delayed up to ackDelay ms so several datagrams are covered by one
+ * keep alive, but we ack right away once ackEvery datagrams are pending
+ * or a datagram arrives out of order.
  */    
 final class ReceiveWindow  
 {                        
@@ -34,6 +38,17 @@ final class ReceiveWindow
   {                  
     return !acked;
   }
+
+  /**
+   * Return if our unacked datagrams should be acked immediately
+   * rather than waiting for the ack delay: either ackEvery of them
+   * are pending or there is a gap the sender needs to hear about.
+   */
+  final synchronized boolean ackNow()
+  {
+    if (acked) return false;
+    return pending >= ackEvery || ackDelay <= 0 || seqMore > 0x1;
+  }
   
   /**
    * If we have room within idealMax then 
@@ -43,21 +58,38 @@ final class ReceiveWindow
   {   
     // if we have room within idealMax always add ack 
     // header where 8 = 5 fixed header + 3 ack header
-    int payloadLen = msg.payload.length;
+    int payloadLen = msg.payload().length;
     if (payloadLen+8 <= session.idealMax)
     {
       msg.ack = seqNum;
       acked = true;
+      pending = 0;
       
       // if we have ackMores and we have room for another 3 
       // bytes (total 11 bytes), then add the ackMore header
       if (seqMore > 0x1 && payloadLen+11 <= session.idealMax)
       {
-        msg.ackMore = toAckMore(seqMore, session.idealMax - payloadLen - 10);
+        int len = ackMoreLen(seqMore, session.idealMax - payloadLen - 10);
+        msg.ackMore     = null;
+        msg.ackMoreLen  = len;
+        msg.ackMoreBits = len == 4 ? seqMore : seqMore & ((1 << (len*8)) - 1);
       }
     }
   }      
   
+  /**
+   * Given a 32-bit seqMore bitmask, return the number of bytes
+   * toAckMore would use.  The max argument limits the result
+   * to 1, 2, or 3 bytes.
+   */
+  static int ackMoreLen(int seqMore, int max)
+  {
+    if (seqMore <= 0xff     || max <= 1) return 1;
+    if (seqMore <= 0xffff   || max <= 2) return 2;
+    if (seqMore <= 0xffffff || max <= 3) return 3;
+    return 4;
+  }
+
   /**
    * Given a 32-bit seqMore bitmask, return the ackMore header.
    * The max argument limits the result to 1, 2, or 3 bytes.
@@ -128,6 +160,7 @@ final class ReceiveWindow
       if (num <= start || num > end) 
       {
         acked = false;  // force next outgoing msg to include ackNum
+        pending = ackEvery; // and send it now, our last ack was lost
         return false;   
       }
     }                                                     
@@ -137,6 +170,7 @@ final class ReceiveWindow
       if (num <= start && num > end) 
       {
         acked = false;  // force next outgoing msg to include ackNum
+        pending = ackEvery; // and send it now, our last ack was lost
         return false;
       }
     }             
@@ -164,6 +198,7 @@ final class ReceiveWindow
 
     // clean acked flag so that we know to ack these received
     acked = false;
+    pending++;
               
     // successful received    
     return true;
@@ -250,6 +285,47 @@ final class ReceiveWindow
       verify((num+31)&0xffff, 0x1);
     }                                    
     
+    // delayed acks
+    DaspMsg msg = new DaspMsg();
+    ackEvery = 3;
+    ackDelay = 100;
+    seqNum  = 100;
+    seqMore = 1;
+    setAckHeaders(msg);
+    verify(!ackNow());
+    verify(receive(101));
+    verify(!ackNow());
+    verify(receive(102));
+    verify(!ackNow());
+    verify(receive(103));
+    verify(ackNow());
+    setAckHeaders(msg);
+    verify(msg.ack == 103);
+    verify(!ackNow());
+
+    // out of order is acked right away
+    verify(receive(105));
+    verify(ackNow());
+    msg = new DaspMsg();
+    setAckHeaders(msg);
+    verify(msg.ack == 103 && msg.isAckMore(2));
+    verify(!ackNow());
+
+    // filling the gap slides the window
+    verify(receive(104));
+    verify(103+2, 0x1);
+    verify(!ackNow());
+    setAckHeaders(new DaspMsg());
+
+    // duplicates mean our ack was lost, so ack right away
+    verify(!receive(101));
+    verify(ackNow());
+
+    // zero delay acks every datagram
+    setAckHeaders(new DaspMsg());
+    ackDelay = 0;
+    verify(receive(106));
+    verify(ackNow());
   }           
   
     
@@ -279,5 +355,8 @@ final class ReceiveWindow
   private int seqNum  = -1;    // successful received - start of window
   private int seqMore = -1;    // successful received out of order
   private boolean acked;       // have we acked seqNum and seqMore
+  private int pending;         // datagrams received since last ack
+  int ackEvery = DaspConst.ACK_EVERY_VAL; // ack once this many are pending
+  long ackDelay = DaspConst.ACK_DELAY_VAL; // max ms to hold an ack
   
 }
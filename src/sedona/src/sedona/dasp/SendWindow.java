@@ -29,6 +29,9 @@ final class SendWindow
     this.ackTimes = new int[20];                
     for (int i=0; i<ackTimes.length; ++i)
       ackTimes[i] = -1;                     
+    this.cwndHistory = new int[20];                
+    for (int i=0; i<cwndHistory.length; ++i)
+      cwndHistory[i] = -1;                     
   }
   
 ////////////////////////////////////////////////////////////////
@@ -73,15 +76,49 @@ final class SendWindow
   {                     
     Packet p = new Packet();
     p.enqueuedTime = DaspSession.ticks();
-    p.seqNum  = nextSeqNum();
     p.payload = payload;         
 
-    // will block until send window has room
-    enqueue(p);                             
-    
-    // fire away
-    p.sentTime = DaspSession.ticks();
+    // will block until send window has room, the sequence
+    // number is assigned once in so concurrent senders
+    // always queue in sequence order
+    enqueue(p, true);
+    fire(p);
+  }
+
+  /**
+   * Add a datagram to the end of the queue if there is room
+   * right now, otherwise return false without blocking.
+   */
+  boolean trySend(byte[] payload)
+    throws InterruptedException
+  {
+    Packet p = new Packet();
+    p.enqueuedTime = DaspSession.ticks();
+    p.payload = payload;
+    if (!enqueue(p, false)) return false;
+    fire(p);
+    return true;
+  }
+
+  /**
+   * Send a packet just added to the queue.
+   */
+  private void fire(Packet p)
+  {
+    sent(p, DaspSession.ticks());
     session.send(toMsg(p));
+    session.scheduleHouseKeeping(p.sentTime + p.retry);
+  }
+
+  /**
+   * Mark the packet as sent, until then it isn't considered for
+   * retries.  The packet's retry timeout starts at the current RTO.
+   */
+  private synchronized void sent(Packet p, long now)
+  {
+    p.sentTime = now;
+    p.retry = rto();
+    p.sent = true;
   }
   
   /**
@@ -91,7 +128,7 @@ final class SendWindow
   private DaspMsg toMsg(Packet packet)
   { 
     // construct datagram message                  
-    DaspMsg msg = new DaspMsg();
+    DaspMsg msg = DaspSession.scratch();
     msg.msgType   = DaspConst.DATAGRAM;
     msg.sessionId = session.remoteId;
     msg.seqNum    = packet.seqNum;
@@ -104,31 +141,37 @@ final class SendWindow
   }
 
   /**
-   * Add a datagram to the end of the queue - block if full.
+   * Add a datagram to the end of the queue - block if full,
+   * or return false if full and not block.
    */
-  private synchronized void enqueue(Packet p)
+  private synchronized boolean enqueue(Packet p, boolean block)
     throws InterruptedException
   {                     
     while(isAlive && full()) 
     {
+      if (!block) return false;
       try { blocked = Thread.currentThread().getName(); } catch(Exception e) {}
       wait();
     }
     blocked = null;
     
     if (p.next != null) throw new IllegalStateException();
+    p.seqNum = nextSeqNum();
     if (tail == null) { head = tail = p; }
     else { tail.next = p; tail = p; }
     size++;
     notifyAll();
+    return true;
   }                     
   
   /**
-   * Return if our sending window is filled up.
+   * Return if our sending window is filled up, which is
+   * the smaller of the remote's receive window and our 
+   * congestion window.
    */
   private boolean full()
   {
-    return size >= sendSize;
+    return size >= sendSize || (congestionControl && size >= cwnd);
   }
   
   /**
@@ -174,17 +217,28 @@ final class SendWindow
     int unackStart = (ackNum + 1) & 0xffff;
     int unackEnd   = (unackStart + 10000) & 0xffff;    
 
-    // check each packet for ack, and slide head as appriopiate
+    // check each packet for ack, and slide head as appriopiate;
+    // an unacked packet followed by an acked one means the
+    // remote is receiving out of order so something got lost
     Packet p = head;                         
     long now = DaspSession.ticks();
+    boolean sawUnacked = false;
+    boolean gap = false;
     while (p != null)
     {                    
       if (!p.acked && isAcked(unackStart, unackEnd, msg, p.seqNum))
       {
         p.acked = true;
+        cwndAcked();
         ackTimes[ackTimesPos] = (int)(now - p.enqueuedTime);
         ackTimesPos = (ackTimesPos + 1) % ackTimes.length;
+
+        // Karn's algorithm: only sample packets never retried 
+        // since we can't tell which transmission was acked
+        if (p.sent && p.sendAttempts == 1) rttSample(now - p.sentTime);
       }               
+      if (!p.acked) sawUnacked = true;
+      else if (sawUnacked) gap = true;
       if (p == head && p.acked)
       {               
         head = p.next; 
@@ -193,6 +247,7 @@ final class SendWindow
       p = p.next;       
     } 
     if (head == null) tail = null;               
+    if (gap) cwndLoss(false, now);
     notifyAll();
   }               
   
@@ -219,17 +274,10 @@ final class SendWindow
     }   
     
     // if we have an ackMore header, then check for unordered acks
-    byte[] ackMore = msg.ackMore;
-    if (ackMore != null)
+    if (msg.hasAckMore())
     {                                          
       int diff = (seqNum - msg.ack) & 0xffff;             
-      int index = ackMore.length - (diff>>3) - 1;
-      if (0 <= index && index < ackMore.length)
-      {
-        int ackMoreByte = ackMore[index] & 0xff;
-        int ackMoreMask = 1 << (diff & 0x7);
-        if ((ackMoreMask & ackMoreByte) != 0) return true;
-      }     
+      if (msg.isAckMore(diff)) return true;
     } 
     
     return false;
@@ -240,17 +288,20 @@ final class SendWindow
    * ago needs to get resent.  Return the longest duration we've
    * had an unacked packet enqueued.
    */
-  synchronized long sendRetries()
+  long sendRetries()
   {                      
     long now = DaspSession.ticks();
     long oldest = 0;
-    Packet p = head;
-    while (p != null)
+    Packet due = null, dueTail = null;
+    synchronized (this)
     {
-      if (!p.acked)
+      Packet p = head;
+      while (p != null)
       {
-        // MG - do not implement maxSend timeouts right now. The default
-        // behavior of the specification is too aggressive.
+        if (!p.acked && p.sent)
+        {
+          // MG - do not implement maxSend timeouts right now. The default
+          // behavior of the specification is too aggressive.
 //        if (p.sendAttempts >= maxSend)
 //        {
 //          // packet was never ack'd after maxSend attempts, so close the session.
@@ -258,23 +309,155 @@ final class SendWindow
 //          return oldest;
 //        }
         
-        if (now - p.sentTime >= sendRetry)
-        {
-          p.sentTime = now;        
-          ++p.sendAttempts;
-          ++session.numRetries;
-          ++session.iface.numRetries;
-          session.send(toMsg(p));  
-        }
+          if (now - p.sentTime >= p.retry)
+          {
+            cwndLoss(true, now);
+            p.sentTime = now;        
+            if (adaptiveRetry) p.retry = Math.min(p.retry*2, maxRetry);
+            ++p.sendAttempts;
+            ++session.numRetries;
+            ++session.iface.numRetries;
+            if (dueTail == null) due = p; else dueTail.retryNext = p;
+            dueTail = p;
+          }
         
-        oldest = Math.max(oldest, now-p.enqueuedTime);
-      }
+          oldest = Math.max(oldest, now-p.enqueuedTime);
+        }
       
-      p = p.next;
-    }    
+        p = p.next;
+      }    
+    }
+
+    // resend outside our lock so the receiver thread isn't held
+    // up processing acks behind our syscalls; if a packet is acked
+    // meanwhile the remote end just drops the duplicate
+    while (due != null)
+    {
+      Packet p = due;
+      due = p.retryNext;
+      p.retryNext = null;
+      session.send(toMsg(p));
+    }
     return oldest;
   }
+
+  /**
+   * Get the ticks when the next unacked packet is due
+   * for a retry, or -1 if nothing is waiting on an ack.
+   */
+  synchronized long nextRetry()
+  {
+    long next = -1;
+    for (Packet p = head; p != null; p = p.next)
+    {
+      if (p.acked || !p.sent) continue;
+      long due = p.sentTime + p.retry;
+      if (next < 0 || due < next) next = due;
+    }
+    return next;
+  }
       
+////////////////////////////////////////////////////////////////
+// Round Trip Time
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Update the smoothed round trip time and variance with a new
+   * sample using Jacobson/Karels, then recompute the retransmit
+   * timeout as srtt + 4*rttvar.  Like the classic implementation 
+   * we keep srtt scaled by 8 and rttvar scaled by 4 so that all 
+   * the math is integer.
+   */
+  synchronized void rttSample(long r)
+  {
+    if (!adaptiveRetry) return;
+    if (r < 1) r = 1;
+    if (srtt8 < 0)
+    {
+      srtt8   = r << 3;
+      rttvar4 = r << 1;
+    }
+    else
+    {
+      long m = r - (srtt8 >> 3);
+      srtt8 += m;
+      if (m < 0) m = -m;
+      m -= (rttvar4 >> 2);
+      rttvar4 += m;
+    }
+    rto = Math.max(minRetry, Math.min(maxRetry, (srtt8 >> 3) + Math.max(1, rttvar4)));
+  }
+
+  /**
+   * Smoothed round trip time in ms or -1 if no samples yet.
+   */
+  synchronized long srtt() { return srtt8 < 0 ? -1 : srtt8 >> 3; }
+
+  /**
+   * Round trip time variance in ms or -1 if no samples yet.
+   */
+  synchronized long rttvar() { return srtt8 < 0 ? -1 : rttvar4 >> 2; }
+
+  /**
+   * Current retransmit timeout for newly sent packets, this
+   * is sendRetry until we have our first round trip sample.
+   */
+  synchronized long rto() { return rto < 0 ? sendRetry : rto; }
+
+////////////////////////////////////////////////////////////////
+// Congestion Window
+////////////////////////////////////////////////////////////////
+
+  /**
+   * A packet was acked: grow the congestion window by one per
+   * ack during slow start (doubling each round trip), then by
+   * one per window's worth of acks during congestion avoidance.
+   * There is no point in growing past the remote's window.
+   */
+  private void cwndAcked()
+  {
+    if (!congestionControl || cwnd >= sendSize) return;
+    if (cwnd < ssthresh)
+    {
+      setCwnd(cwnd+1);
+    }
+    else if (++cwndAcks >= cwnd)
+    {
+      cwndAcks = 0;
+      setCwnd(cwnd+1);
+    }
+  }
+
+  /**
+   * A loss was detected either by an out of order ack (gap) or
+   * by a retry timeout.  Halve the window for a gap and drop back
+   * to one packet on a timeout.  Losses are usually detected for 
+   * several packets at once, so we only back off once per rto.
+   */
+  private void cwndLoss(boolean timeout, long now)
+  {
+    if (!congestionControl) return;
+    if (numCwndLosses > 0 && now - lastCwndLoss < rto()) return;
+    numCwndLosses++;
+    lastCwndLoss = now;
+    ssthresh = Math.max(cwnd/2, MIN_SSTHRESH);
+    cwndAcks = 0;
+    setCwnd(timeout ? 1 : ssthresh);
+  }
+
+  private void setCwnd(int n)
+  {
+    cwnd = n;
+    cwndHistory[cwndHistoryPos] = n;
+    cwndHistoryPos = (cwndHistoryPos + 1) % cwndHistory.length;
+  }
+
+  /**
+   * Get the congestion window and slow start threshold.
+   */
+  synchronized int cwnd() { return cwnd; }
+  synchronized int ssthresh() { return ssthresh; }
+
 ////////////////////////////////////////////////////////////////
 // Packet
 ////////////////////////////////////////////////////////////////
@@ -286,8 +469,11 @@ final class SendWindow
     boolean acked;  
     long enqueuedTime;
     long sentTime;
+    long retry;           // ms until retry, doubled on each retry
+    boolean sent;         // set once first sent
     int sendAttempts = 1; // only incremented during retry
     Packet next;
+    Packet retryNext;     // chain of packets due for resend
   }
 
 ////////////////////////////////////////////////////////////////
@@ -316,6 +502,7 @@ final class SendWindow
   private void test() 
     throws Exception
   {                          
+    congestionControl = false;
     seqNum = 0;     
     sendSize = 4;         
     byte[] b = new byte[0];
@@ -413,6 +600,76 @@ final class SendWindow
     verify("105 106 107a 108 109 110 111a 112 113 114 115 116 117a");
     ack(106);  
     verify("108 109 110 111a 112 113 114 115 116 117a");
+
+    // round trip time estimation    
+    srtt8 = -1; rto = -1;
+    sendRetry = 1000; minRetry = 100; maxRetry = 8000;
+    verify(rto() == 1000);
+    verify(srtt() == -1);
+    rttSample(100);
+    verify(srtt() == 100);
+    verify(rttvar() == 50);
+    verify(rto() == 300);
+    rttSample(100);
+    verify(srtt() == 100);
+    verify(rttvar() == 37);
+    verify(rto() == 250);
+    for (int i=0; i<50; ++i) rttSample(100);
+    verify(srtt() == 100);
+    verify(rto() == 103);
+    rttSample(20);
+    verify(srtt() == 90);
+    verify(rttvar() == 20);
+    verify(rto() == 173);
+    for (int i=0; i<50; ++i) rttSample(5);
+    verify(rto() == minRetry);
+    rttSample(60000);
+    verify(rto() == maxRetry);
+
+    // congestion window slow start
+    clear();
+    congestionControl = true;
+    seqNum = 200; sendSize = 32; cwnd = 2; ssthresh = Integer.MAX_VALUE;
+    send(b); send(b);
+    verify("200 201 full");
+    ack(200); verify("201");
+    verify(cwnd == 3);
+    send(b); send(b);
+    verify("201 202 203 full");
+    ack(203); verify("");
+    verify(cwnd == 6);
+
+    // gap halves the window once per rto
+    send(b); send(b); send(b); send(b); send(b); send(b);
+    verify("204 205 206 207 208 209 full");
+    ack(203, 205); verify("204 205a 206 207 208 209 full");
+    verify(cwnd == 3);
+    verify(ssthresh == 3);
+    ack(203, 205, 206); 
+    verify(cwnd == 3);
+
+    // congestion avoidance grows by one per window of acks
+    ack(206); verify("207 208 209 full");
+    verify(cwnd == 3);
+    verify(cwndAcks == 2);
+    ack(209); verify("");
+    verify(cwnd == 4);
+    verify(cwndAcks == 2);
+
+    // timeout drops to one
+    lastCwndLoss -= 100000;
+    cwndLoss(true, DaspSession.ticks());
+    verify(cwnd == 1);
+    verify(ssthresh == MIN_SSTHRESH);
+    send(b); verify("210 full");
+    ack(210); verify("");
+    verify(cwnd == 2);
+
+    // never grows past remote's window
+    sendSize = 2; ack(210); 
+    send(b); send(b); ack(212);
+    verify(cwnd == 2);
+    congestionControl = false;
   }        
   
   private void ack(int a) { ack(new int[] { a }); }
@@ -490,7 +747,22 @@ final class SendWindow
   private boolean isAlive = true;
   private int size;                // current number of messages
   private int seqNum;              // next outgoing sequence number
-  long sendRetry = 1000;           // ms
+  long sendRetry = 1000;           // ms initial retransmit timeout
+  long minRetry = 100;             // ms lower bound for rto
+  long maxRetry = 8000;            // ms upper bound for rto and backoff
+  boolean adaptiveRetry = true;    // compute rto from round trip times
+  private long srtt8 = -1;         // smoothed round trip time scaled by 8
+  private long rttvar4;            // round trip time variance scaled by 4
+  private long rto = -1;           // retransmit timeout or -1 for sendRetry
+  boolean congestionControl = true; // limit sends to cwnd
+  int cwnd = 4;                    // congestion window (num packets)
+  private int ssthresh = Integer.MAX_VALUE; // slow start threshold
+  private int cwndAcks;            // acks counted in congestion avoidance
+  private long lastCwndLoss;       // ticks of last back off
+  int numCwndLosses;               // number of times we backed off
+  int[] cwndHistory;               // circular list of cwnd changes
+  private int cwndHistoryPos;      // next index to write in cwndHistory
+  static final int MIN_SSTHRESH = 2;
   int  maxSend = 3;                // max number of times to send a datagram packet
   int sendSize = 8;                // current max num for sending window
   int[] ackTimes;                  // circular list of ack times in ms
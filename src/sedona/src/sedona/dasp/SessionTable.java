@@ -0,0 +1,203 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.dasp;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * SessionTable maps 16-bit session ids to DaspSessions.  Since ids
+ * are 16-bit we just use a 64K slot array indexed directly by id, so
+ * the lookup done for every received packet is a single volatile read
+ * without locking, hashing, or boxing.  Adding and removing sessions
+ * is rare and serialized on the table, which also maintains a copy
+ * on write array for cheap snapshots of all the sessions.
+ */
+final class SessionTable
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  SessionTable()
+  {
+    this.slots = new AtomicReferenceArray(SLOTS);
+  }
+
+////////////////////////////////////////////////////////////////
+// Access
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Get the session for the given id or null.  This
+   * method is lock-free and allocates nothing.
+   */
+  DaspSession get(int id)
+  {
+    if ((id & ~0xffff) != 0) return null;
+    Object x = slots.get(id);
+    return x == RESERVED ? null : (DaspSession)x;
+  }
+
+  /**
+   * Return if the id is in use (or reserved).
+   */
+  boolean used(int id)
+  {
+    return slots.get(id & 0xffff) != null;
+  }
+
+  /**
+   * Get the number of sessions (including reserved ids).
+   */
+  int size()
+  {
+    return size;
+  }
+
+  /**
+   * Get a snapshot of all the sessions.
+   */
+  DaspSession[] toArray()
+  {
+    return (DaspSession[])list.clone();
+  }
+
+////////////////////////////////////////////////////////////////
+// Modification
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Reserve the given id; return false if it is already in
+   * use.  Reserved ids must be followed by put or release.
+   */
+  synchronized boolean reserve(int id)
+  {
+    if (!slots.compareAndSet(id, null, RESERVED)) return false;
+    size++;
+    return true;
+  }
+
+  /**
+   * Map a reserved id to its session.
+   */
+  synchronized void put(DaspSession s)
+  {
+    if (!slots.compareAndSet(s.id, RESERVED, s))
+      throw new IllegalStateException("id not reserved: " + s.id);
+
+    DaspSession[] temp = new DaspSession[list.length+1];
+    System.arraycopy(list, 0, temp, 0, list.length);
+    temp[list.length] = s;
+    list = temp;
+  }
+
+  /**
+   * Release an id which was reserved but never put.
+   */
+  synchronized void release(int id)
+  {
+    if (slots.compareAndSet(id, RESERVED, null)) size--;
+  }
+
+  /**
+   * Remove the session, return false if not mapped.
+   */
+  synchronized boolean remove(DaspSession s)
+  {
+    if (!slots.compareAndSet(s.id, s, null)) return false;
+    size--;
+
+    DaspSession[] temp = new DaspSession[list.length-1];
+    int n = 0;
+    for (int i=0; i<list.length; ++i)
+      if (list[i] != s) temp[n++] = list[i];
+    list = temp;
+    return true;
+  }
+
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    DaspSocket sock = DaspSocket.open(-1, null, DaspSocket.SESSION_QUEUING);
+    new SessionTable().test(sock);
+    long t2 = System.currentTimeMillis();
+    System.out.println("  SessionTable Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+    sock.close();
+  }
+
+  private void test(DaspSocket sock)
+  {
+    java.util.Properties options = new java.util.Properties();
+    DaspSession a = new DaspSession(sock.interfaces[0], 0x0000, null, 0, true, options);
+    DaspSession b = new DaspSession(sock.interfaces[0], 0xabcd, null, 0, true, options);
+    DaspSession c = new DaspSession(sock.interfaces[0], 0xfffe, null, 0, true, options);
+
+    verify(size() == 0);
+    verify(get(0) == null);
+    verify(get(-1) == null);
+    verify(get(0x10000) == null);
+
+    // reserved ids are used, but not visible
+    verify(reserve(a.id));
+    verify(!reserve(a.id));
+    verify(used(a.id));
+    verify(get(a.id) == null);
+    verify(size() == 1);
+    verify(toArray().length == 0);
+    put(a);
+    verify(get(a.id) == a);
+    verify(toArray().length == 1);
+
+    verify(reserve(b.id));
+    verify(reserve(c.id));
+    put(b);
+    release(c.id);
+    verify(!used(c.id));
+    verify(size() == 2);
+    verify(get(b.id) == b);
+    verify(get(c.id) == null);
+    verify(toArray().length == 2);
+
+    // remove
+    verify(remove(a));
+    verify(!remove(a));
+    verify(get(a.id) == null);
+    verify(size() == 1);
+    verify(toArray().length == 1);
+    verify(toArray()[0] == b);
+    verify(remove(b));
+    verify(size() == 0);
+    verify(toArray().length == 0);
+  }
+
+  private void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  static final int SLOTS = 0x10000;
+  static final Object RESERVED = new Object();
+
+  private final AtomicReferenceArray slots;     // id -> DaspSession
+  private volatile DaspSession[] list = new DaspSession[0]; // copy on write
+  private volatile int size;                    // used slots
+}
@@ -0,0 +1,344 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.dasp;
+
+/**
+ * TimerWheel is a hashed timer wheel with millisecond ticks used to
+ * schedule session house keeping.  Tasks are hashed into a slot by
+ * their deadline, so scheduling and canceling are O(1).  The thread
+ * sleeps until the next non-empty slot comes around, so idle tasks
+ * whose deadlines are far off cost only a slot visit per revolution.
+ * Expired tasks are run on the wheel's thread outside of its lock.
+ */
+final class TimerWheel
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  TimerWheel(String name)
+  {
+    this.name  = name;
+    this.slots = new Task[SLOTS];
+    this.tick  = DaspSession.ticks();
+  }
+
+////////////////////////////////////////////////////////////////
+// Lifecycle
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Start the background thread.
+   */
+  synchronized void start()
+  {
+    if (thread != null) throw new IllegalStateException();
+    thread = new Worker();
+    thread.start();
+  }
+
+  /**
+   * Stop the background thread, pending tasks are never run.
+   */
+  synchronized void stop()
+  {
+    isAlive = false;
+    notifyAll();
+  }
+
+////////////////////////////////////////////////////////////////
+// Scheduling
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Get the number of scheduled tasks.
+   */
+  synchronized int size()
+  {
+    return size;
+  }
+
+  /**
+   * Schedule the task to expire at the given deadline in
+   * ms ticks, replacing any previous schedule.
+   */
+  synchronized void schedule(Task t, long deadline)
+  {
+    if (t.slot >= 0) unlink(t);
+    link(t, deadline);
+  }
+
+  /**
+   * Schedule the task to expire at the given deadline unless
+   * it is already scheduled to expire at or before it.
+   */
+  synchronized void scheduleEarlier(Task t, long deadline)
+  {
+    if (t.slot >= 0)
+    {
+      if (t.deadline <= deadline) return;
+      unlink(t);
+    }
+    link(t, deadline);
+  }
+
+  /**
+   * Cancel the task if scheduled.
+   */
+  synchronized void cancel(Task t)
+  {
+    if (t.slot >= 0) unlink(t);
+  }
+
+  private void link(Task t, long deadline)
+  {
+    // anything already due goes into the next slot we process
+    long at = Math.max(deadline, tick+1);
+    int slot = (int)(at & MASK);
+    t.deadline = deadline;
+    t.slot = slot;
+    t.prev = null;
+    t.next = slots[slot];
+    if (t.next != null) t.next.prev = t;
+    slots[slot] = t;
+    size++;
+
+    // wake up the thread if it is sleeping past this one
+    if (at < wakeAt) notifyAll();
+  }
+
+  private void unlink(Task t)
+  {
+    if (t.prev == null) slots[t.slot] = t.next;
+    else t.prev.next = t.next;
+    if (t.next != null) t.next.prev = t.prev;
+    t.slot = -1;
+    t.next = t.prev = null;
+    size--;
+  }
+
+////////////////////////////////////////////////////////////////
+// Expire
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Advance the wheel up to now and unlink the expired tasks.
+   * Return them as a chain linked by their next field.  This
+   * is broken out of the worker for testing.
+   */
+  synchronized Task advance(long now)
+  {
+    Task expired = null;
+    int visits = 0;
+    while (tick < now && visits++ < SLOTS)
+    {
+      tick++;
+      Task t = slots[(int)(tick & MASK)];
+      while (t != null)
+      {
+        Task next = t.next;
+        if (t.deadline <= now)
+        {
+          unlink(t);
+          t.next = expired;
+          expired = t;
+        }
+        t = next;
+      }
+    }
+    tick = now;
+    return expired;
+  }
+
+  /**
+   * Get the tick of the next non-empty slot, or one
+   * revolution from now if the wheel is empty.
+   */
+  synchronized long nextWake()
+  {
+    for (long t=tick+1; t<=tick+SLOTS; ++t)
+      if (slots[(int)(t & MASK)] != null) return t;
+    return tick + SLOTS;
+  }
+
+  class Worker extends Thread
+  {
+    Worker() { super(name); }
+
+    public void run()
+    {
+      while (true)
+      {
+        Task expired;
+        synchronized (TimerWheel.this)
+        {
+          if (!isAlive) return;
+          expired = advance(DaspSession.ticks());
+          if (expired == null)
+          {
+            wakeAt = nextWake();
+            long snooze = wakeAt - DaspSession.ticks();
+            try { if (snooze > 0) TimerWheel.this.wait(snooze); }
+            catch (InterruptedException e) { return; }
+            wakeAt = Long.MAX_VALUE;
+            continue;
+          }
+        }
+
+        // run expired tasks outside our lock
+        while (expired != null)
+        {
+          Task t = expired;
+          expired = t.next;
+          t.next = null;
+          try
+          {
+            t.expired();
+          }
+          catch (Throwable e)
+          {
+            if (isAlive) e.printStackTrace();
+          }
+        }
+      }
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// Task
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Task is scheduled with the wheel, it may be rescheduled
+   * any number of times but is in the wheel at most once.
+   */
+  static abstract class Task
+  {
+    abstract void expired();
+
+    long deadline;   // ms ticks
+    int slot = -1;   // slot index or -1 if not scheduled
+    Task next;
+    Task prev;
+  }
+
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+  {
+    long t1 = System.currentTimeMillis();
+    new TimerWheel("test").test();
+    long t2 = System.currentTimeMillis();
+    System.out.println("  TimerWheel Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private void test()
+  {
+    long base = tick;
+    TestTask a = new TestTask("a");
+    TestTask b = new TestTask("b");
+    TestTask c = new TestTask("c");
+
+    // simple expire in order
+    schedule(a, base+5);
+    schedule(b, base+3);
+    verify(size() == 2);
+    verify(nextWake() == base+3);
+    verify(advance(base+2), "");
+    verify(advance(base+3), "b");
+    verify(advance(base+10), "a");
+    verify(size() == 0);
+
+    // reschedule and cancel
+    base = tick;
+    schedule(a, base+5);
+    schedule(a, base+8);
+    verify(size() == 1);
+    scheduleEarlier(a, base+9);
+    verify(a.deadline == base+8);
+    scheduleEarlier(a, base+2);
+    verify(a.deadline == base+2);
+    schedule(b, base+4);
+    cancel(b);
+    cancel(b);
+    verify(size() == 1);
+    verify(advance(base+4), "a");
+
+    // already due goes into next slot
+    base = tick;
+    schedule(a, base-100);
+    verify(advance(base+1), "a");
+
+    // more than one revolution out
+    base = tick;
+    schedule(a, base+SLOTS+10);
+    schedule(b, base+10);
+    schedule(c, base+SLOTS*3);
+    verify(nextWake() == base+10);
+    verify(advance(base+SLOTS), "b");
+    verify(advance(base+SLOTS+9), "");
+    verify(advance(base+SLOTS+10), "a");
+    verify(size() == 1);
+
+    // sleeping past many revolutions still finds everything
+    verify(advance(base+SLOTS*10), "c");
+    verify(size() == 0);
+    verify(nextWake() == tick+SLOTS);
+
+    // same slot different rounds
+    base = tick;
+    schedule(a, base+7);
+    schedule(b, base+7+SLOTS);
+    verify(advance(base+7), "a");
+    verify(advance(base+7+SLOTS), "b");
+  }
+
+  private void verify(Task chain, String expected)
+  {
+    StringBuffer s = new StringBuffer();
+    for (Task t = chain; t != null; t = t.next)
+      s.append(((TestTask)t).name);
+    if (!expected.equals(s.toString()))
+      throw new RuntimeException(expected + " != " + s);
+    verifies++;
+  }
+
+  private void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  static class TestTask extends Task
+  {
+    TestTask(String name) { this.name = name; }
+    void expired() {}
+    final String name;
+  }
+
+  private static int verifies;
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  static final int SLOTS = 1024;       // must be power of 2
+  static final int MASK  = SLOTS - 1;
+
+  final String name;                   // thread name
+  private final Task[] slots;          // heads of doubly linked lists
+  private long tick;                   // last tick processed
+  private long wakeAt = Long.MAX_VALUE; // tick the worker is sleeping until
+  private int size;                    // number of scheduled tasks
+  private boolean isAlive = true;      // cleared by stop
+  private Thread thread;               // worker thread
+}
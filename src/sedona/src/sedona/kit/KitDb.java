@@ -17,7 +17,9 @@ import sedona.manifest.*;
 /**
  * KitDb manages the directory of kit versions on the local disk.
  * Each kit gets a directory and each kit is stored in a file 
- * called "kitName-checksum-version.kit".
+ * called "kitName-checksum-version.kit".  The sorted kit files of
+ * each kit are indexed in memory and a kit's directory is only
+ * scanned again when its modified time changes.
  */
 public class KitDb
 {
@@ -28,6 +30,13 @@ public class KitDb
 
   public static final File dir = new File(Env.home, "kits");
 
+  // directories modified more recently than this are always
+  // rescanned, since file systems with coarse timestamps may
+  // not change the time again for a file added right after
+  static final long MTIME_RESOLUTION = 3000L;
+
+  private static final HashMap index = new HashMap();  // kitName -> Entry
+
 //////////////////////////////////////////////////////////////////////////
 // Methods
 //////////////////////////////////////////////////////////////////////////
@@ -75,7 +84,47 @@ public class KitDb
    */
   public static KitFile[] list(String kitName)
   {
-    File[] files = toDir(kitName).listFiles(); 
+    return (KitFile[])index(kitName).clone();
+  }
+
+  /**
+   * Clear the index so every kit directory is scanned again,
+   * for changes made too quickly for their directory's modified
+   * time to show them.
+   */
+  public static void refresh()
+  {
+    synchronized (index) { index.clear(); }
+  }
+
+  /**
+   * Get the sorted kit files for the kit from the index, scanning
+   * its directory if it is not indexed or has changed.  The array
+   * is shared and must not be modified.
+   */
+  private static KitFile[] index(String kitName)
+  {
+    File kitDir = toDir(kitName);
+    long modified = kitDir.lastModified();
+    synchronized (index)
+    {
+      Entry e = (Entry)index.get(kitName);
+      if (e != null && e.modified == modified) return e.kits;
+    }
+
+    KitFile[] kits = scan(kitDir);
+
+    // only trust the modified time once it is old enough
+    if (System.currentTimeMillis() - modified > MTIME_RESOLUTION)
+    {
+      synchronized (index) { index.put(kitName, new Entry(modified, kits)); }
+    }
+    return kits;
+  }
+
+  private static KitFile[] scan(File kitDir)
+  {
+    File[] files = kitDir.listFiles(); 
     if (files == null || files.length == 0) return new KitFile[0];
     
     ArrayList acc = new ArrayList(files.length);  
@@ -91,13 +140,20 @@ public class KitDb
     return kits;
   }
 
+  static class Entry
+  {
+    Entry(long modified, KitFile[] kits) { this.modified = modified; this.kits = kits; }
+    final long modified;    // kit directory modified time when scanned
+    final KitFile[] kits;   // sorted kit files
+  }
+
   /**
    * Given a kit dependency, return every kit file which meets
    * the dependency.  If no matches return an empty array.
    */
   public static KitFile[] matchAll(Depend depend)
   {                                  
-    KitFile[] kits = list(depend.name());
+    KitFile[] kits = index(depend.name());
     ArrayList acc = new ArrayList();  
     for (int i=0; i<kits.length; ++i)
       if (depend.match(kits[i].version, kits[i].checksum)) 
@@ -120,7 +176,7 @@ public class KitDb
    */
   public static KitFile matchBest(Depend depend)
   {                                  
-    KitFile[] kits = list(depend.name());
+    KitFile[] kits = index(depend.name());
     KitFile best = null;
     for (int i=0; i<kits.length; ++i)
       if (depend.match(kits[i].version, kits[i].checksum))
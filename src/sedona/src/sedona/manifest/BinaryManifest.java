@@ -0,0 +1,315 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.manifest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import sedona.Buf;
+import sedona.Depend;
+import sedona.Facets;
+import sedona.Value;
+import sedona.util.Abstime;
+import sedona.util.Version;
+
+/**
+ * BinaryManifest is a compact precompiled encoding of a KitManifest
+ * stored in the manifest database next to its XML as
+ * "kitName-checksum.bin".  Every string is stored once in a table up
+ * front and referenced by index after that, and the file is memory
+ * mapped and decoded in one pass without building an XML tree.
+ *
+ * <pre>
+ * manifest
+ * {
+ *   i4    magic 0x534d4231 "SMB1"
+ *   u1    version
+ *   u2    numStrings
+ *   str[] strings       u2 length, UTF-8 bytes
+ *   u2    name
+ *   i4    checksum
+ *   u1    flags         0x01 hasNatives, 0x02 doc
+ *   u2    version, vendor, description, buildHost, buildTime  (0xffff null)
+ *   u2    numDepends, u2[] depends
+ *   u2    numTypes, type[] types
+ * }
+ * type   { u2 id, u2 name, u2 base, i4 sizeof, i4 flags, facets, u2 numSlots, slot[] }
+ * slot   { u2 id, u2 name, u2 type, i4 flags, u2 default, facets }
+ * facets { u2 num, { u2 name, u1 typeId, u2 val }[] }
+ * </pre>
+ */
+class BinaryManifest
+{
+
+//////////////////////////////////////////////////////////////////////////
+// Encode
+//////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Encode the manifest into a new buffer.
+   */
+  static Buf encode(KitManifest km)
+  {
+    BinaryManifest e = new BinaryManifest();
+
+    // encode the body first to build the string table
+    Buf body = new Buf(8192);
+    body.u2(e.str(km.name));
+    body.i4(km.checksum);
+    body.u1((km.hasNatives ? 0x01 : 0) | (km.doc ? 0x02 : 0));
+    body.u2(e.str(km.version == null ? null : km.version.toString()));
+    body.u2(e.str(km.vendor));
+    body.u2(e.str(km.description));
+    body.u2(e.str(km.buildHost));
+    body.u2(e.str(km.buildTime == null ? null : km.buildTime.encode()));
+
+    Depend[] depends = km.depends == null ? new Depend[0] : km.depends;
+    body.u2(depends.length);
+    for (int i=0; i<depends.length; ++i)
+      body.u2(e.str(depends[i].toString()));
+
+    body.u2(km.types.length);
+    for (int i=0; i<km.types.length; ++i)
+    {
+      TypeManifest t = km.types[i];
+      body.u2(t.id);
+      body.u2(e.str(t.name));
+      body.u2(e.str(t.base));
+      body.i4(t.sizeof);
+      body.i4(t.flags);
+      e.facets(body, t.facets);
+      body.u2(t.slots.length);
+      for (int j=0; j<t.slots.length; ++j)
+      {
+        SlotManifest s = t.slots[j];
+        body.u2(s.declaredId);
+        body.u2(e.str(s.name));
+        body.u2(e.str(s.type));
+        body.i4(s.flags);
+        body.u2(e.str(s.def == null ? null : s.def.encodeString()));
+        e.facets(body, s.facets);
+      }
+    }
+
+    // header and string table, then the body
+    Buf out = new Buf(body.size + e.strings.size()*16 + 16);
+    out.i4(MAGIC);
+    out.u1(VERSION);
+    out.u2(e.strings.size());
+    for (int i=0; i<e.strings.size(); ++i)
+    {
+      byte[] b = utf8((String)e.strings.get(i));
+      if (b.length > 0xffff) throw new IllegalStateException("String too long");
+      out.u2(b.length);
+      out.write(b);
+    }
+    out.append(body);
+    return out;
+  }
+
+  private void facets(Buf out, Facets facets)
+  {
+    String[] keys = facets.keys();
+    out.u2(keys.length);
+    for (int i=0; i<keys.length; ++i)
+    {
+      Value val = facets.get(keys[i]);
+      out.u2(str(keys[i]));
+      out.u1(val.typeId());
+      out.u2(str(val.encodeString()));
+    }
+  }
+
+  private int str(String s)
+  {
+    if (s == null) return NULL;
+    Integer index = (Integer)indices.get(s);
+    if (index != null) return index.intValue();
+    if (strings.size() >= NULL) throw new IllegalStateException("Too many strings");
+    index = new Integer(strings.size());
+    strings.add(s);
+    indices.put(s, index);
+    return index.intValue();
+  }
+
+//////////////////////////////////////////////////////////////////////////
+// Decode
+//////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Decode a manifest from the buffer's current position.
+   */
+  static KitManifest decode(String name, ByteBuffer in)
+    throws IOException
+  {
+    if (in.getInt() != MAGIC) throw new IOException("Invalid magic");
+    int ver = in.get() & 0xff;
+    if (ver != VERSION) throw new IOException("Unsupported version: " + ver);
+
+    String[] strs = new String[u2(in)];
+    byte[] b = new byte[256];
+    for (int i=0; i<strs.length; ++i)
+    {
+      int len = u2(in);
+      if (len > b.length) b = new byte[len];
+      in.get(b, 0, len);
+      strs[i] = new String(b, 0, len, "UTF-8");
+    }
+
+    String kitName = str(in, strs);
+    if (!name.equals(kitName))
+      throw new IOException("Mismatched name " + name + " != " + kitName);
+
+    KitManifest km = new KitManifest(name);
+    km.checksum = in.getInt();
+    int flags = in.get();
+    km.hasNatives = (flags & 0x01) != 0;
+    km.doc        = (flags & 0x02) != 0;
+    String s;
+    s = str(in, strs); km.version   = s == null ? null : new Version(s);
+    km.vendor      = str(in, strs);
+    km.description = str(in, strs);
+    km.buildHost   = str(in, strs);
+    s = str(in, strs); km.buildTime = s == null ? null : Abstime.parse(s);
+
+    km.depends = new Depend[u2(in)];
+    for (int i=0; i<km.depends.length; ++i)
+      km.depends[i] = Depend.parse(str(in, strs));
+
+    km.types = new TypeManifest[u2(in)];
+    for (int i=0; i<km.types.length; ++i)
+    {
+      int id         = u2(in);
+      String tname   = str(in, strs);
+      String base    = str(in, strs);
+      int sizeof     = in.getInt();
+      int tflags     = in.getInt();
+      Facets facets  = facets(in, strs);
+      TypeManifest t = new TypeManifest(km, id, tname, facets, base, sizeof, tflags);
+      if (t.id != i) throw new IOException("Misaligned type id: " + t.qname);
+
+      t.slots = new SlotManifest[u2(in)];
+      for (int j=0; j<t.slots.length; ++j)
+      {
+        int sid       = u2(in);
+        String sname  = str(in, strs);
+        String type   = str(in, strs);
+        int sflags    = in.getInt();
+        Value def     = SlotManifest.decodeDefault(type, sflags, str(in, strs));
+        t.slots[j] = new SlotManifest(t, sid, sname, facets(in, strs), type, sflags, def);
+        if (sid != j) throw new IOException("Misaligned declared slot id: " + t.slots[j].qname);
+      }
+      km.types[i] = t;
+    }
+    return km;
+  }
+
+  private static Facets facets(ByteBuffer in, String[] strs)
+  {
+    int n = u2(in);
+    if (n == 0) return null;
+    Facets facets = new Facets();
+    for (int i=0; i<n; ++i)
+    {
+      String name = str(in, strs);
+      int typeId  = in.get() & 0xff;
+      facets.set(name, Value.defaultForType(typeId).decodeString(str(in, strs)));
+    }
+    return facets;
+  }
+
+  private static String str(ByteBuffer in, String[] strs)
+  {
+    int i = u2(in);
+    return i == NULL ? null : strs[i];
+  }
+
+  private static int u2(ByteBuffer in)
+  {
+    return in.getShort() & 0xffff;
+  }
+
+  private static byte[] utf8(String s)
+  {
+    try
+    {
+      return s.getBytes("UTF-8");
+    }
+    catch (java.io.UnsupportedEncodingException e)
+    {
+      throw new RuntimeException(e.toString());
+    }
+  }
+
+//////////////////////////////////////////////////////////////////////////
+// File IO
+//////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Memory map and decode the manifest file.
+   */
+  static KitManifest read(String name, File f)
+    throws IOException
+  {
+    RandomAccessFile fp = new RandomAccessFile(f, "r");
+    try
+    {
+      FileChannel ch = fp.getChannel();
+      return decode(name, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+    }
+    catch (RuntimeException e)
+    {
+      // truncated or corrupt file
+      throw new IOException("Invalid binary manifest: " + e);
+    }
+    finally
+    {
+      fp.close();
+    }
+  }
+
+  /**
+   * Encode the manifest to a temp file and rename it to f.
+   */
+  static void write(KitManifest km, File f)
+    throws IOException
+  {
+    File tmp = File.createTempFile(f.getName(), ".tmp", f.getParentFile());
+    try
+    {
+      encode(km).writeTo(tmp);
+      if (!tmp.renameTo(f))
+      {
+        f.delete();
+        if (!tmp.renameTo(f)) throw new IOException("Cannot rename " + tmp);
+      }
+    }
+    finally
+    {
+      tmp.delete();
+    }
+  }
+
+//////////////////////////////////////////////////////////////////////////
+// Fields
+//////////////////////////////////////////////////////////////////////////
+
+  static final int MAGIC   = 0x534d4231;
+  static final int VERSION = 1;
+  static final int NULL    = 0xffff;
+
+  private final ArrayList strings = new ArrayList();  // index -> String
+  private final HashMap indices = new HashMap();      // String -> Integer
+
+}
@@ -13,6 +13,7 @@ import sedona.Env;
 import sedona.KitPart;
 import sedona.kit.KitDb;
 import sedona.kit.KitFile;
+import sedona.util.Cache;
 import sedona.util.Log;
 import sedona.util.sedonadev.Download;
 import sedona.xml.XParser;
@@ -20,7 +21,6 @@ import sedona.xml.XWriter;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -38,7 +38,39 @@ public class ManifestDb
 
   public static final File dir = new File(Env.home, "manifests");
   public static final Log log = new Log("manifestdb");
-  private static HashMap cache = new HashMap();
+  static boolean binary = Env.getProperty("manifestdb.binary", true);
+  private static final Cache cache = new Cache("manifestdb",
+    Env.getProperty("manifestdb.cacheSize", 1024),
+    Env.getProperty("manifestdb.cacheWeight", 1000000L))
+  {
+    protected long weigh(Object key, Object val)
+    {
+      return ManifestDb.weigh((KitManifest)val);
+    }
+  };
+
+  /**
+   * Get the cache of loaded manifests keyed by "{name}-{checksum}"
+   * or "{name}-local".  It is bounded by "manifestdb.cacheSize"
+   * manifests and "manifestdb.cacheWeight" total types and slots.
+   */
+  public static Cache cache() { return cache; }
+
+  /**
+   * Weight of a manifest in the cache: one plus its types and slots.
+   */
+  static long weigh(KitManifest km)
+  {
+    long w = 1;
+    for (int i=0; km.types != null && i<km.types.length; ++i)
+    {
+      TypeManifest t = km.types[i];
+      if (t == null) continue;
+      w += 1;
+      if (t.slots != null) w += t.slots.length;
+    }
+    return w;
+  }
 
 //////////////////////////////////////////////////////////////////////////
 // Load
@@ -48,15 +80,18 @@ public class ManifestDb
    * Load the manifest for the local kit zip file
    * or return null if kit is not found.
    */
-  public static KitManifest loadForLocalKit(String name)
+  public static KitManifest loadForLocalKit(final String name)
     throws Exception
   {
-    // first check cache for special "kit-local" key
-    KitManifest km = (KitManifest)cache.get(toLocalKey(name));
-    if (km != null) return km;
-
+    // first check cache for special "kit-local" key, else
     // attempt to load from kit using -1 wildcard checksum
-    return loadFromLocalKit(new Info(name, -1));
+    return (KitManifest)cache.get(toLocalKey(name), new Cache.Loader()
+    {
+      public Object load(Object key) throws Exception
+      {
+        return loadFromLocalKit(new Info(name, -1));
+      }
+    });
   }
 
   /**
@@ -70,43 +105,55 @@ public class ManifestDb
    *     and save it to the local manifest database.
    * <li>Return {@code null}
    * </ol>
+   * No lock is held across the disk and network I/O: concurrent
+   * loads of the same part wait for one load, and loads of other
+   * parts proceed in parallel.
    * @see sedona.util.sedonadev.Download
    * @see sedona.util.sedonadev.Download#fetchManifest(KitPart)
    */
-  public static KitManifest load(KitPart part)
+  public static KitManifest load(final KitPart part)
     throws Exception
-  {    synchronized (cache)
+  {
+    // build name/checksum key
+    final Info info = new Info(part.name, part.checksum);
+
+    // check local cache, else load it
+    return (KitManifest)cache.get(info.key, new Cache.Loader()
     {
-      // build name/checksum key
-      Info info = new Info(part.name, part.checksum);
-
-      // check local cache
-      KitManifest km = (KitManifest)cache.get(info.key);
-      if (km != null) return km;
-
-      // check local manifest database
-      km = loadFromDb(info);
-      if (km != null) return km;
-
-      // check manifest in local kit file
-      km = loadFromLocalKit(info);
-      if (km != null) return km;
-      
-      // check sedonadev.org websites
-      km = Download.fetchManifest(part);
-      if (km != null)
+      public Object load(Object key) throws Exception
       {
-        save(km);
-        return km;
+        return doLoad(part, info);
       }
+    });
+  }
 
-      // no dice
-      return null;
+  private static KitManifest doLoad(KitPart part, Info info)
+    throws Exception
+  {
+    // check local manifest database
+    KitManifest km = loadFromDb(info);
+    if (km != null) return km;
+
+    // check manifest in local kit file
+    km = loadFromLocalKit(info);
+    if (km != null) return km;
+
+    // check sedonadev.org websites
+    km = Download.fetchManifest(part);
+    if (km != null)
+    {
+      save(km);
+      return km;
     }
+
+    // no dice
+    return null;
   }
 
   /**
-   * Attempt to load manifest from local manifest database.
+   * Attempt to load manifest from local manifest database,
+   * using the binary manifest if it is up to date or else
+   * parsing the XML and writing the binary manifest.
    */
   private static KitManifest loadFromDb(Info info)
     throws Exception
@@ -114,19 +161,55 @@ public class ManifestDb
     // check if db file exists
     if (!info.file.exists()) return null;
 
+    // check binary manifest
+    KitManifest km = loadFromBin(info);
+    if (km != null) return km;
+
     log.debug("ManifestDb: Load [" + info.file + "]");
 
     // parse into memory
-    KitManifest km = new KitManifest(info.name);
+    km = new KitManifest(info.name);
     km.decodeXml(XParser.make(info.file).parse());
     if (km.checksum != info.checksum)
       throw new Exception("Mismatched checksum: " + info.file);
 
-    // store in cache and return
-    cache.put(info.key, km);
+    // precompile for next time
+    if (binary)
+    {
+      try
+      {
+        BinaryManifest.write(km, info.bin);
+      }
+      catch (Exception e)
+      {
+        log.debug("ManifestDb: Cannot write [" + info.bin + "]", e);
+      }
+    }
+
     return km;
   }
 
+  /**
+   * Attempt to load manifest from the binary manifest which
+   * is stored next to the XML, or return null if it is missing,
+   * older than the XML, or invalid.
+   */
+  private static KitManifest loadFromBin(Info info)
+  {
+    if (!binary || info.bin.lastModified() < info.file.lastModified()) return null;
+    try
+    {
+      KitManifest km = BinaryManifest.read(info.name, info.bin);
+      if (km.checksum == info.checksum) return km;
+      log.warn("ManifestDb: Mismatched checksum [" + info.bin + "]");
+    }
+    catch (Exception e)
+    {
+      log.warn("ManifestDb: Cannot read [" + info.bin + "]: " + e);
+    }
+    return null;
+  }
+
   /**
    * Attempt to load manifest from kit zip file.
    */
@@ -233,10 +316,24 @@ public class ManifestDb
 // Save
 //////////////////////////////////////////////////////////////////////////
 
+  /**
+   * Install a manifest obtained elsewhere, such as from a device:
+   * save it to the local manifest database and cache it.  Return
+   * false if it could not be saved.
+   */
+  public static boolean install(KitManifest km)
+  {
+    if (!save(km)) return false;
+    cache.put(new Info(km).key, km);
+    return true;
+  }
+
   /**
    * Save a kit back to the local manifest database.  This method
    * will not raise an exception but returns true on success and
-   * false on failure.
+   * false on failure.  The manifest is written to a temp file and
+   * renamed so concurrent loads never see a partial file.  Any binary
+   * manifest is removed first and rewritten on the next load.
    */
   public static boolean save(KitManifest km)
   {
@@ -244,7 +341,8 @@ public class ManifestDb
     try
     {
       info.file.getParentFile().mkdirs();
-      XWriter out = new XWriter(info.file);
+      File tmp = File.createTempFile(info.key, ".tmp", info.file.getParentFile());
+      XWriter out = new XWriter(tmp);
       log.debug("Save [" + info.file + "]");
       try
       {
@@ -254,6 +352,17 @@ public class ManifestDb
       {
         out.close();
       }
+      info.bin.delete();
+      if (!tmp.renameTo(info.file))
+      {
+        // platforms which won't rename over an existing file
+        info.file.delete();
+        if (!tmp.renameTo(info.file))
+        {
+          tmp.delete();
+          throw new Exception("Cannot rename " + tmp);
+        }
+      }
       return true;
     }
     catch (Exception e)
@@ -279,6 +388,7 @@ public class ManifestDb
     {
       super(name, checksum);
       this.file = new File(dir, name + File.separator + key + ".xml");
+      this.bin  = new File(dir, name + File.separator + key + ".bin");
     }
 
     Info(KitManifest km)
@@ -287,6 +397,7 @@ public class ManifestDb
     }
 
     final File file;     // file in manifest db
+    final File bin;      // precompiled binary manifest
   }
 
 }
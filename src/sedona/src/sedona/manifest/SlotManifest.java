@@ -69,24 +69,29 @@ public class SlotManifest
     String name = xml.get("name");
     String type = xml.get("type");
     int flags   = stringToFlags(xml.get("flags", ""));
-
-    Value def = null;
-    if ((flags & Slot.AS_STR) != 0)
-    {
-      def = Str.make(xml.get("default", ""));
-    }
-    else if ((flags & Slot.ACTION) == 0)
-    {
-      def = Value.defaultForType(Type.predefinedId(type));
-      String defStr = xml.get("default", null);
-      if (defStr != null) def = def.decodeString(defStr);
-    }
+    Value def   = decodeDefault(type, flags, xml.get("default", null));
 
     Facets facets = Facets.decodeXml(xml.elem("facets"));
 
     return new SlotManifest(parent, id, name, facets, type, flags, def);
   }
 
+  /**
+   * Decode the default value of a slot from its encoded
+   * string, or the type's default if defStr is null.
+   */
+  static Value decodeDefault(String type, int flags, String defStr)
+  {
+    if ((flags & Slot.AS_STR) != 0)
+      return Str.make(defStr == null ? "" : defStr);
+
+    if ((flags & Slot.ACTION) != 0) return null;
+
+    Value def = Value.defaultForType(Type.predefinedId(type));
+    if (defStr != null) def = def.decodeString(defStr);
+    return def;
+  }
+
   /**
    * Convert bitmask flags to string format;
    * we usea single ASCII char per bit flag.
@@ -122,6 +122,23 @@ public class OfflineApp
       assignIds(kids[i]);
   }
 
+  /**
+   * Switch every component in the app, and any added from
+   * now on, to compact property storage.
+   */
+  public void compactAll()
+  {
+    compactAll = true;
+    compactAll(this);
+  }
+
+  private void compactAll(OfflineComponent c)
+  {
+    c.compactStorage();
+    OfflineComponent[] kids = c.children();
+    for (int i=0; i<kids.length; ++i) compactAll(kids[i]);
+  }
+
   /**
    * Add to the lookup table, resize if necessary.
    */
@@ -195,6 +212,7 @@ public class OfflineApp
     // app has been decoded (and we know which ids have been used)
     if (kid.id > 0)
       addToLookupTable(kid);
+    if (compactAll) kid.compactStorage();
 
     // lazily create kid structures on parent
     if (parent.kids == null)
@@ -657,6 +675,7 @@ public class OfflineApp
   private OfflineComponent[] lookup;   // indexed by component id
   private ArrayList links;
   private int lastId;
+  private boolean compactAll;     // compact storage for added components
 
 }
 
@@ -432,7 +432,7 @@ public class OfflineComponent
     {
       Slot slot = slots[i];
       if (slot.isProp() && slot.isConfig())
-        set(slot, get(slot).decodeBinary(in));
+        decodeBinary(slot, in);
     }
   }
 
@@ -0,0 +1,658 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.sox;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sedona.*;
+
+/**
+ * AsyncSoxClient is a non-blocking facade over a connected SoxClient.
+ * Each call sends its requests through the client's SoxExchange and
+ * returns a SoxFuture right away; the future is completed by the
+ * SoxReceiver thread when the responses arrive, so no thread is
+ * parked per outstanding call:
+ *
+ * <pre>
+ *   AsyncSoxClient async = new AsyncSoxClient(client);
+ *   async.readProp(comp, slot).onComplete(new SoxFuture.Listener()
+ *   {
+ *     public void completed(SoxFuture f) { ... f.get() ... }
+ *   });
+ * </pre>
+ *
+ * Argument errors are thrown by the call itself, network errors and
+ * timeouts complete the future with an error.  Calls never block:
+ * requests beyond the 255 reply numbers in flight or the room in the
+ * send window are queued by the SoxExchange and sent in order as soon
+ * as they can be.
+ * <p>
+ * Listeners run on the SoxReceiver thread.  They may issue further
+ * AsyncSoxClient calls, but must not call the blocking SoxClient
+ * methods or wait on another future inline, since the responses they
+ * would wait for are delivered by that same thread.  load and add read
+ * the schema on first use, which blocks, so issuing them from a
+ * listener fails unless SoxClient.readSchema was called up front.
+ */
+public class AsyncSoxClient
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Wrap the given client with the default timeout.
+   */
+  public AsyncSoxClient(SoxClient client)
+  {
+    this(client, DEFAULT_TIMEOUT);
+  }
+
+  /**
+   * Wrap the given client failing calls which take longer
+   * than timeout ms, or never timing out if zero.
+   */
+  public AsyncSoxClient(SoxClient client, long timeout)
+  {
+    this.client  = client;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Get the wrapped client.
+   */
+  public SoxClient client()
+  {
+    return client;
+  }
+
+////////////////////////////////////////////////////////////////
+// Read Prop
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Read a property, completes with its Value.
+   */
+  public SoxFuture readProp(SoxComponent comp, Slot slot)
+  {
+    client.checkMine(comp);
+    return readProp(comp.id, slot);
+  }
+
+  /**
+   * Read a property using raw component id, completes with its Value.
+   */
+  public SoxFuture readProp(int compId, Slot slot)
+  {
+    return call(new Msg[] { Msg.makeReadPropReq(compId, slot) }, readPropCall(slot));
+  }
+
+  static Call readPropCall(final Slot slot)
+  {
+    return new Call(1)
+    {
+      Object parse(Msg[] res) throws Exception { return SoxClient.parseReadProp(res[0], slot); }
+    };
+  }
+
+////////////////////////////////////////////////////////////////
+// Load / Update
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Convenience for <code>load(int[])</code>,
+   * completes with the SoxComponent.
+   */
+  public SoxFuture load(int id)
+  {
+    final SoxFuture f = new SoxFuture();
+    load(new int[] { id }).onComplete(new SoxFuture.Listener()
+    {
+      public void completed(SoxFuture x)
+      {
+        if (x.error() != null) f.fail(x.error());
+        else if (x.isCancelled()) f.cancel(false);
+        else f.complete(((SoxComponent[])value(x))[0]);
+      }
+    });
+    return f;
+  }
+
+  /**
+   * Load the component meta-data definitions of the specified ids
+   * like SoxClient.load(int[]), completes with the SoxComponent[].
+   */
+  public SoxFuture load(final int[] ids)
+  {
+    try { readSchema(); } catch (Exception e) { return failed(e); }
+
+    final SoxComponent[] result = new SoxComponent[ids.length];
+    ArrayList reqs = new ArrayList();
+    for (int i=0; i<ids.length; ++i)
+    {
+      result[i] = client.cache(ids[i]);
+      if (result[i] == null)
+        reqs.add(Msg.makeUpdateReq(ids[i], 't'));
+    }
+
+    return call((Msg[])reqs.toArray(new Msg[reqs.size()]), new Call(reqs.size())
+    {
+      Object parse(Msg[] res) throws Exception
+      {
+        for (int i=0; i<res.length; ++i)
+        {
+          res[i].checkResponse('C');
+          client.applyToCache(res[i]);
+        }
+        for (int i=0; i<ids.length; ++i)
+        {
+          result[i] = client.cache(ids[i]);
+          if (result[i] == null) throw new IllegalStateException(""+ids[i]);
+        }
+        return result;
+      }
+    });
+  }
+
+  /**
+   * Update the components with their current values like
+   * SoxClient.update, completes with comps.
+   */
+  public SoxFuture update(final SoxComponent[] comps, int mask)
+  {
+    client.checkMine(comps);
+
+    ArrayList reqs = new ArrayList();
+    for (int i=0; i<comps.length; ++i)
+    {
+      int id = comps[i].id;
+      if ((mask & SoxComponent.TREE) != 0)    reqs.add(Msg.makeUpdateReq(id, 't'));
+      if ((mask & SoxComponent.CONFIG) != 0)  reqs.add(Msg.makeUpdateReq(id, 'c'));
+      if ((mask & SoxComponent.RUNTIME) != 0) reqs.add(Msg.makeUpdateReq(id, 'r'));
+      if ((mask & SoxComponent.LINKS) != 0)   reqs.add(Msg.makeUpdateReq(id, 'l'));
+    }
+
+    return call((Msg[])reqs.toArray(new Msg[reqs.size()]), new Call(reqs.size())
+    {
+      Object parse(Msg[] res) throws Exception
+      {
+        for (int i=0; i<res.length; ++i)
+        {
+          res[i].checkResponse('C');
+          client.applyToCache(res[i]);
+        }
+        return comps;
+      }
+    });
+  }
+
+////////////////////////////////////////////////////////////////
+// Write / Invoke
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Write a property, completes with null.
+   */
+  public SoxFuture write(SoxComponent comp, Slot slot, Value val)
+  {
+    client.checkMine(comp);
+    return write(comp.id, slot, val);
+  }
+
+  /**
+   * Write a property using raw component id, completes with null.
+   */
+  public SoxFuture write(int compId, Slot slot, Value val)
+  {
+    if (!Component.testMode) slot.assertValue(val);
+    return call(new Msg[] { Msg.makeWriteReq(compId, slot, val) }, new Check(1, 'W'));
+  }
+
+  /**
+   * Invoke an action, completes with null.
+   */
+  public SoxFuture invoke(SoxComponent comp, Slot slot, Value arg)
+  {
+    client.checkMine(comp);
+    return invoke(comp.id, slot, arg);
+  }
+
+  /**
+   * Invoke an action using raw component id, completes with null.
+   */
+  public SoxFuture invoke(int compId, Slot slot, Value arg)
+  {
+    if (!Component.testMode) slot.assertValue(arg);
+    return call(new Msg[] { Msg.makeInvokeReq(compId, slot, arg) }, new Check(1, 'I'));
+  }
+
+////////////////////////////////////////////////////////////////
+// Add / Links / Query
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Add a new component like SoxClient.add,
+   * completes with the new SoxComponent.
+   */
+  public SoxFuture add(final SoxComponent parent, Type type, final String name, final Value[] configValues)
+  {
+    try { readSchema(); } catch (Exception e) { return failed(e); }
+    final Type t = client.checkAdd(parent, type, name, configValues);
+    return call(new Msg[] { Msg.makeAddReq(parent, t, name, configValues) }, new Call(1)
+    {
+      Object parse(Msg[] res) throws Exception { return client.applyAdd(res[0], parent, t, name, configValues); }
+    });
+  }
+
+  /**
+   * Get the links into and out of a component, completes with its Link[].
+   */
+  public SoxFuture links(SoxComponent comp)
+  {
+    client.checkMine(comp);
+    return links(comp.id);
+  }
+
+  /**
+   * Get the links into and out of a component using raw
+   * component id, completes with its Link[].
+   */
+  public SoxFuture links(int compId)
+  {
+    return call(new Msg[] { Msg.makeUpdateReq(compId, 'l') }, linksCall(compId));
+  }
+
+  static Call linksCall(final int compId)
+  {
+    return new Call(1)
+    {
+      Object parse(Msg[] res) throws Exception { return SoxClient.parseLinks(res[0], compId); }
+    };
+  }
+
+  /**
+   * Query for the installed service type, completes
+   * with the int[] of component ids.
+   */
+  public SoxFuture queryService(Type serviceType)
+  {
+    return call(new Msg[] { Msg.makeQueryServiceReq(serviceType) }, new Call(1)
+    {
+      Object parse(Msg[] res) throws Exception { return SoxClient.parseQueryService(res[0]); }
+    });
+  }
+
+////////////////////////////////////////////////////////////////
+// Calls
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Send the requests and complete the call's future from
+   * its parse method once every response has arrived.
+   */
+  private SoxFuture call(Msg[] reqs, final Call call)
+  {
+    final SoxExchange x;
+    try
+    {
+      ISoxComm comm = client.comm();
+      if (!(comm instanceof SoxExchange))
+        throw new UnsupportedOperationException("AsyncSoxClient requires SoxExchange");
+      x = (SoxExchange)comm;
+      call.exchange = x;
+      x.requestAsync(reqs, call);
+    }
+    catch (Exception e)
+    {
+      return failed(e);
+    }
+
+    // arm the timeout, which is disarmed again on completion
+    if (timeout > 0 && !call.future.isDone())
+    {
+      Timeout task = new Timeout(call, timeout);
+      timer.schedule(task, timeout);
+      call.future.onComplete(task);
+    }
+    return call.future;
+  }
+
+  /**
+   * Timeout fails a call still outstanding after the client's timeout.
+   * A cancelled TimerTask stays in the Timer's queue until its scheduled
+   * time, so at a high call rate the queue holds about rate * timeout
+   * dead tasks: they only keep a weak handle to their call (and through
+   * it the exchange), and the timer is purged every PURGE_INTERVAL
+   * cancels so the dead tasks themselves don't pile up either.
+   */
+  static final class Timeout extends TimerTask implements SoxFuture.Listener
+  {
+    Timeout(Call call, long timeout)
+    {
+      this.call    = new WeakReference(call);
+      this.timeout = timeout;
+    }
+
+    public void run()
+    {
+      Call c = (Call)call.get();
+      if (c == null) return;
+
+      // free the reply numbers before anyone waiting wakes up
+      SoxExchange x = c.exchange;
+      if (x != null) x.cancel(c);
+      c.future.fail(new SoxException("Request timed out after " + timeout + "ms"));
+    }
+
+    public void completed(SoxFuture f)
+    {
+      if (cancel() && cancels.incrementAndGet() % PURGE_INTERVAL == 0) timer.purge();
+    }
+
+    final WeakReference call;  // Call
+    final long timeout;
+  }
+
+  /**
+   * Read the schema on first use, which can't be done on the
+   * SoxReceiver thread since it would wait on its own response.
+   */
+  private void readSchema()
+    throws Exception
+  {
+    if (Thread.currentThread() instanceof SoxReceiver && (client.util == null || client.util.schema == null))
+      throw new IllegalStateException("Schema not read yet, call SoxClient.readSchema before issuing from a listener");
+    client.readSchema();
+  }
+
+  private static SoxFuture failed(Throwable e)
+  {
+    SoxFuture f = new SoxFuture();
+    f.fail(e);
+    return f;
+  }
+
+  private static Object value(SoxFuture f)
+  {
+    try { return f.get(); }
+    catch (Exception e) { throw new IllegalStateException(e.toString()); }
+  }
+
+  /**
+   * Batch which completes its future with the parsed responses.
+   */
+  abstract static class Call extends SoxExchange.Batch
+  {
+    Call(int n) { super(n); }
+
+    /**
+     * Parse the responses into the future's result.
+     */
+    abstract Object parse(Msg[] res) throws Exception;
+
+    void done()
+    {
+      try
+      {
+        future.complete(parse(res));
+      }
+      catch (Throwable e)
+      {
+        future.fail(e);
+      }
+    }
+
+    void failed(Throwable cause)
+    {
+      future.fail(cause);
+    }
+
+    final SoxFuture future = new SoxFuture()
+    {
+      void cancelled()
+      {
+        SoxExchange x = exchange;
+        if (x != null) x.cancel(Call.this);
+      }
+    };
+    volatile SoxExchange exchange;
+    Msg req;  // request when queued by a SoxCoalescer
+  }
+
+  /**
+   * Call which only checks the response code and completes with null.
+   */
+  static class Check extends Call
+  {
+    Check(int n, int cmd) { super(n); this.cmd = cmd; }
+
+    Object parse(Msg[] res) throws Exception
+    {
+      for (int i=0; i<res.length; ++i) res[i].checkResponse(cmd);
+      return null;
+    }
+
+    final int cmd;
+  }
+
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    LoopbackSoxDevice device = new LinksDevice();
+    try
+    {
+      test(device);
+    }
+    finally
+    {
+      device.close();
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.println("  AsyncSoxClient Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private static void test(LoopbackSoxDevice device)
+    throws Exception
+  {
+    SoxClient client = device.connect();
+    AsyncSoxClient async = new AsyncSoxClient(client, 300);
+    SoxExchange x = (SoxExchange)client.comm();
+
+    // single call
+    Link[] links = (Link[])async.links(5).get(5, TimeUnit.SECONDS);
+    verify(links.length == 1);
+    verify(links[0].fromCompId == 6 && links[0].fromSlotId == 2);
+    verify(links[0].toCompId == 5 && links[0].toSlotId == 3);
+
+    // a completed call's timeout is cancelled and doesn't keep it alive
+    Call c = new Check(1, 'C');
+    Timeout t = new Timeout(c, 60000);
+    timer.schedule(t, 60000);
+    c.future.onComplete(t);
+    int disarmed = cancels.get();
+    c.future.complete(null);
+    verify(cancels.get() == disarmed + 1);
+    c = null;
+    for (int i=0; i<50 && t.call.get() != null; ++i) { System.gc(); Thread.sleep(10); }
+    verify(t.call.get() == null);
+    t.run();
+
+    // hundreds of calls in flight completed by listeners, with
+    // a timeout long enough for the last to wait out the first
+    AsyncSoxClient bulk = new AsyncSoxClient(client, 10000);
+    device.setDelay(10);
+    final int n = 400;
+    final int[] done = new int[1];
+    final boolean[] ok = new boolean[] { true };
+    SoxFuture[] futures = new SoxFuture[n];
+    for (int i=0; i<n; ++i)
+    {
+      final int id = 100 + i;
+      futures[i] = bulk.links(id).onComplete(new SoxFuture.Listener()
+      {
+        public void completed(SoxFuture f)
+        {
+          Link[] l = (Link[])value(f);
+          synchronized (done)
+          {
+            if (l.length != 1 || l[0].toCompId != id) ok[0] = false;
+            done[0]++;
+            done.notifyAll();
+          }
+        }
+      });
+    }
+    synchronized (done)
+    {
+      long deadline = System.currentTimeMillis() + 10000;
+      while (done[0] < n && System.currentTimeMillis() < deadline) done.wait(100);
+    }
+    verify(done[0] == n && ok[0]);
+    for (int i=0; i<n; ++i) verify(futures[i].isDone() && futures[i].error() == null);
+    verify(device.peakOutstanding() > 1);
+    verify(x.numPending() == 0);
+    verify(cancels.get() >= disarmed + 1 + n);
+
+    // calls issued while every reply number is in flight are queued
+    // rather than blocking the caller, even from a listener on the
+    // SoxReceiver thread
+    device.setDelay(50);
+    final AsyncSoxClient chain = bulk;
+    final int[] chained = new int[1];
+    long t0 = System.currentTimeMillis();
+    for (int i=0; i<300; ++i)
+    {
+      bulk.links(100 + i).onComplete(new SoxFuture.Listener()
+      {
+        public void completed(SoxFuture f)
+        {
+          chain.links(5).onComplete(new SoxFuture.Listener()
+          {
+            public void completed(SoxFuture f)
+            {
+              synchronized (chained)
+              {
+                if (f.error() == null) chained[0]++;
+                chained.notifyAll();
+              }
+            }
+          });
+        }
+      });
+    }
+    verify(System.currentTimeMillis() - t0 < 1000);
+    verify(x.numQueued() > 0);
+    synchronized (chained)
+    {
+      long deadline = System.currentTimeMillis() + 10000;
+      while (chained[0] < 300 && System.currentTimeMillis() < deadline) chained.wait(100);
+    }
+    verify(chained[0] == 300);
+    verify(x.numPending() == 0 && x.numQueued() == 0);
+    device.setDelay(0);
+
+    // error response
+    SoxFuture f = async.links(998);
+    try { f.get(); verify(false); }
+    catch (ExecutionException e) { verify(e.getCause() instanceof SoxException); }
+
+    // timeout frees the reply number
+    f = async.links(999);
+    try { f.get(100, TimeUnit.MILLISECONDS); verify(false); }
+    catch (TimeoutException e) { verify(!f.isDone()); }
+    try { f.get(); verify(false); }
+    catch (ExecutionException e) { verify(e.getCause().getMessage().indexOf("timed out") > 0); }
+    verify(x.numPending() == 0);
+
+    // cancel frees the reply number, and late listeners fire at once
+    f = new AsyncSoxClient(client, 0).links(999);
+    verify(x.numPending() == 1);
+    verify(f.cancel(true));
+    verify(!f.cancel(true));
+    verify(f.isCancelled() && f.isDone());
+    verify(x.numPending() == 0);
+    try { f.get(); verify(false); } catch (CancellationException e) { verify(true); }
+    final boolean[] fired = new boolean[1];
+    f.onComplete(new SoxFuture.Listener() { public void completed(SoxFuture x) { fired[0] = true; } });
+    verify(fired[0]);
+
+    // close fails calls in flight and new calls
+    f = new AsyncSoxClient(client, 0).links(999);
+    client.close();
+    try { f.get(5, TimeUnit.SECONDS); verify(false); }
+    catch (ExecutionException e) { verify(e.getCause() instanceof SoxException); }
+    f = async.links(5);
+    verify(f.isDone() && f.error() instanceof SoxException);
+  }
+
+  /**
+   * Device which answers link requests with one link from compId+1,
+   * drops requests for 999 and fails requests for 998.
+   */
+  static class LinksDevice extends LoopbackSoxDevice
+  {
+    LinksDevice() throws Exception {}
+
+    Msg respond(Msg req)
+    {
+      int compId = ((req.bytes[2] & 0xff) << 8) | (req.bytes[3] & 0xff);
+      if (compId == 999) return null;
+      Msg res = new Msg();
+      if (compId == 998)
+      {
+        res.u1('!');
+        res.u1(req.bytes[1] & 0xff);
+        res.str("bad");
+        return res;
+      }
+      res.u1('C');
+      res.u1(req.bytes[1] & 0xff);
+      res.u2(compId);
+      res.u1('l');
+      res.u2(compId+1); res.u1(2); res.u2(compId); res.u1(3);
+      res.u2(0xffff);
+      return res;
+    }
+  }
+
+  private static synchronized void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  public static final long DEFAULT_TIMEOUT = 30000;  // ms
+
+  private static final Timer timer = new Timer("AsyncSoxClient.Timer", true);
+  private static final AtomicInteger cancels = new AtomicInteger();  // timeouts disarmed
+  private static final int PURGE_INTERVAL = 256;
+
+  private final SoxClient client;
+  private final long timeout;  // ms or zero for none
+}
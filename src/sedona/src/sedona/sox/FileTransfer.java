@@ -8,16 +8,41 @@
 
 package sedona.sox;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Properties;
+import java.util.zip.CRC32;
 
+import sedona.Buf;
 import sedona.Env;
+import sedona.dasp.DaspSession;
 import sedona.sox.ISoxComm.TransferListener;
 
 /**
- * FileTransfer manages file get/puts
+ * FileTransfer manages file get/puts.
+ *
+ * A get tracks which chunks have arrived and writes each one straight
+ * to its final offset.  If the chunks stop arriving before the file is
+ * complete the transfer is closed and reopened for just the missing
+ * range using the "offset" header, up to "retries" times in a row
+ * without progress.  With the "resume" header a get into a local file
+ * also keeps its progress in a ".part" file next to it, so a transfer
+ * which fails or is killed picks up where it stopped the next time
+ * instead of starting over.  The part file records the CRC of the
+ * chunk before the first missing one; a resumed get reopens from that
+ * chunk to the end of the remote file, and starts over unless the
+ * remaining size still matches and the chunk's CRC is unchanged.  That
+ * catches a file which was truncated, grew or was rewritten, though
+ * not an edit which leaves both the size and that one chunk alone.
+ * Client side headers, never sent:
+ *   - retries: reopens allowed without progress (default 3)
+ *   - timeout: ms without a chunk before reopening (default receiveTimeout)
+ *   - resume: "true" to persist progress of a get to a local file
  */
 public class FileTransfer
 {
@@ -52,6 +77,15 @@ public class FileTransfer
     this.chunkSize   = geti(reqHeaders, "chunkSize", defaultChunkSize);
     this.lock        = new Object();
     this.startTicks  = Env.ticks();
+    this.retries     = geti(reqHeaders, "retries", DEFAULT_RETRIES);
+    this.timeout     = geti(reqHeaders, "timeout", (int)comm.session().receiveTimeout());
+
+    if (getb(reqHeaders, "resume", false))
+    {
+      if (!(file instanceof SoxFile.LocalFile))
+        throw new IllegalArgumentException("resume requires a local file");
+      this.part = new File(((SoxFile.LocalFile)file).file.getPath() + ".part");
+    }
   }
 
 //////////////////////////////////////////////////////////////
@@ -61,72 +95,191 @@ public class FileTransfer
   public Properties getFile()
     throws Exception
   {
-    file.open("w");
+    boolean resume = loadPart();
+    file.open(resume ? "m" : "w");
+    boolean ok = false;
     try
     {
+      if (resume) file.reserve(totalSize);
       doGetFile();
-      return resHeaders;
+      ok = true;
+    }
+    catch (Exception e)
+    {
+      if (part != null && received != null) checkpoint();
+      throw e;
     }
     finally
     {
-      file.close();
+      // a file which can't be closed properly is an error,
+      // unless we already failed for another reason
+      try { file.close(); }
+      catch (RuntimeException e) { if (ok) throw e; e.printStackTrace(); }
     }
+    if (part != null) part.delete();
+    return resHeaders;
   }
 
   private void doGetFile()
     throws Exception
   {
-    // start a "get" transaction
     this.method = "g";
-    this.fileSize = geti(reqHeaders, "fileSize", 0);
-    start();
-
-    // wait until we've received the entire file
-    lastReceiveTicks = Env.ticks();
-    synchronized (lock)
+    int attempts = 0;
+    while (true)
     {
-      // force a flush of all queued chunks
-      receiveChunk(null);
-
-      while (transferedChunks < numChunks)
+      // open a "get" transaction for the whole file or,
+      // when retrying or resuming, just the missing range
+      int before = transferedChunks;
+      if (received == null)
       {
-        // sanity check
-        if (comm.session()==null)
-          throw new IOException("file transfer session disconnected");
+        this.fileSize = geti(reqHeaders, "fileSize", 0);
+        this.base = 0;
+        start(offset);
+      }
+      else
+      {
+        // the missing range, plus the check chunk until it is verified
+        int first = received.nextClearBit(0);
+        int last  = first;
+        for (int i=first; i<totalChunks; ++i) if (!received.get(i)) last = i;
+        if (checkChunk >= 0)
+        {
+          first = Math.min(first, checkChunk);
+          last  = Math.max(last, checkChunk);
+        }
 
-        if (Env.ticks() - lastReceiveTicks > comm.session().receiveTimeout())
-          throw new IOException("file transfer timed out");
+        // a resume opens to the end of the remote file, so we
+        // notice if it grew as well as if it shrank
+        int size = Math.min(totalSize, (last+1)*chunkSize) - first*chunkSize;
+        int expected = resuming ? totalSize - first*chunkSize : size;
+        int requestedChunkSize = chunkSize;
 
-        // wait to receive chunks
-        try { lock.wait(1000); } catch(Exception e) {}
+        this.fileSize = resuming ? 0 : size;
+        this.base = first;
+        start(offset + first*chunkSize);
+
+        // the remote file changed size or the device changed the
+        // chunk size since the progress was recorded, so start over
+        if (fileSize != expected || chunkSize != requestedChunkSize)
+        {
+          startOver();
+          continue;
+        }
+        resuming = false;
+      }
+
+      // wait until we've received the entire file
+      boolean complete = awaitChunks();
+
+      // the check chunk no longer matches, so the
+      // remote file was rewritten and we start over
+      if (stale)
+      {
+        startOver();
+        continue;
       }
+      if (complete) break;
+
+      // stalled, give up if retries didn't get anywhere
+      if (transferedChunks > before) attempts = 0;
+      if (++attempts > retries)
+        throw new IOException("file transfer timed out");
+      if (part != null) checkpoint();
+      close();
     }
 
     // send close message to free transfer
-    Msg req = Msg.prepareRequest('z');
-    Msg res = comm.request(req);
-    res.checkResponse('Z');
+    close();
 
     // update progress and report done
     progress();
     done();
   }
 
+  /**
+   * The remote file no longer matches the recorded progress,
+   * drop it and fetch the whole file again.
+   */
+  private void startOver()
+    throws Exception
+  {
+    close();
+    synchronized (lock)
+    {
+      received = null;
+      transferedChunks = 0;
+      savedChunks = 0;
+      checkChunk = -1;
+      resuming = false;
+      stale = false;
+    }
+    file.close();
+    file.open("w");
+  }
+
+  /**
+   * Wait for every chunk of the file and the check chunk,
+   * return false if none arrive for the timeout or the
+   * check chunk doesn't match.
+   */
+  private boolean awaitChunks()
+    throws Exception
+  {
+    lastReceiveTicks = Env.ticks();
+
+    // force a flush of all queued chunks
+    receiveChunk(null);
+
+    while (true)
+    {
+      boolean save = false;
+      synchronized (lock)
+      {
+        if (stale) return false;
+        if (transferedChunks >= totalChunks && checkChunk < 0) return true;
+
+        // sanity check
+        if (comm.session()==null)
+          throw new IOException("file transfer session disconnected");
+
+        if (Env.ticks() - lastReceiveTicks > timeout)
+          return false;
+
+        // checkpoint progress every so often
+        if (part != null && transferedChunks - savedChunks >= SAVE_INTERVAL)
+        {
+          save = true;
+          savedChunks = transferedChunks;
+        }
+        else
+        {
+          // wait to receive chunks
+          try { lock.wait(Math.min(1000, timeout)); } catch(Exception e) {}
+        }
+      }
+      if (save) checkpoint();
+    }
+  }
+
   public void receiveChunk(Msg msg)
   {
     try
     {
       if (msg != null)
-        chunkQueue.add(msg);
+        synchronized (chunkQueue) { chunkQueue.add(msg); }
 
       if (!opened)
         return;
 
       synchronized (lock)
       {
-        while (!chunkQueue.isEmpty())
+        while (true)
         {
-          msg = (Msg)chunkQueue.remove(0);
+          synchronized (chunkQueue)
+          {
+            if (chunkQueue.isEmpty()) break;
+            msg = (Msg)chunkQueue.removeFirst();
+          }
           int cmd           = msg.u1();
           int replyNum      = msg.u1();
           int chunkNum      = msg.u2();
@@ -149,11 +302,26 @@ public class FileTransfer
             return;
           }
 
-          // increment our transfer chunk count
-          transferedChunks++;
+          // once stale the rest is thrown away
+          if (stale) continue;
+
+          // the chunk recorded with resumed progress must be unchanged
+          int index = base + chunkNum;
+          if (index == checkChunk)
+          {
+            checkChunk = -1;
+            if (crc(msg.bytes, msg.pos, thisChunkSize) != checkCrc) { stale = true; continue; }
+          }
+
+          // skip a chunk we already have from an earlier attempt
+          if (received.get(index)) continue;
 
           // write this chunk to the file
-          file.write(chunkNum*chunkSize, msg, thisChunkSize);
+          file.write(index*chunkSize, msg, thisChunkSize);
+
+          // increment our transfer chunk count
+          received.set(index);
+          transferedChunks++;
         }
 
         // notify the calling thread
@@ -194,7 +362,7 @@ public class FileTransfer
     // start a "put" transaction
     this.method   = "p";
     this.fileSize = geti(reqHeaders, "fileSize", file.size());
-    start();
+    start(offset);
 
     // start sending chunks - the send window will block
     // us automatically to provide flow control
@@ -260,16 +428,17 @@ public class FileTransfer
 //////////////////////////////////////////////////////////////
 
   /**
-   * Start the file transaction via the 'f' request and response.
-   * This is common code for both gets and puts.
+   * Start the file transaction via the 'f' request and response
+   * at the given byte offset of the remote file.  This is common
+   * code for both gets and puts.
    */
-  private void start()
+  private void start(int offset)
     throws Exception
   {
     synchronized (lock)
     {
       opened = false;
-      chunkQueue.clear();
+      synchronized (chunkQueue) { chunkQueue.clear(); }
 
       // build request
       Msg req = Msg.prepareRequest('f');
@@ -282,12 +451,18 @@ public class FileTransfer
       while (it.hasNext())
       {
         String key = (String)it.next();
-        if (key.equals("fileSize")) continue;
+        if (key.equals("fileSize") || key.equals("offset")) continue;
+        if (key.equals("retries") || key.equals("timeout") || key.equals("resume")) continue;
 
         String val = (String)reqHeaders.get(key);
         req.str(key);
         req.str(val);
       }
+      if (offset != 0)
+      {
+        req.str("offset");
+        req.str(""+offset);
+      }
       req.u1(0);  // end of headers
 
       // send request
@@ -318,13 +493,180 @@ public class FileTransfer
       if (numChunks == 0 && method.equals("p"))
         numChunks = 1;
 
-      // initialize our transfer chunk count
-      transferedChunks = 0;
+      // initialize our transfer chunk count, a get
+      // keeps its received chunks across retries
+      if (received == null)
+      {
+        this.totalSize   = fileSize;
+        this.totalChunks = numChunks;
+        this.transferedChunks = 0;
+        if (method.equals("g"))
+        {
+          this.received = new BitSet(numChunks);
+          file.reserve(fileSize);
+        }
+      }
 
       opened = true;
     }
   }
 
+  /**
+   * Send the close message to free the transfer; chunks
+   * which straggle in after it are dropped.
+   */
+  private void close()
+    throws Exception
+  {
+    synchronized (lock) { opened = false; }
+    Msg req = Msg.prepareRequest('z');
+    Msg res = comm.request(req);
+    res.checkResponse('Z');
+  }
+
+//////////////////////////////////////////////////////////////
+// Resume
+//////////////////////////////////////////////////////////////
+
+  /**
+   * Load the progress of an earlier get of the same uri from
+   * the part file.  Return true if there is any to resume.
+   */
+  private boolean loadPart()
+  {
+    if (part == null || !part.exists()) return false;
+    if (!((SoxFile.LocalFile)file).file.exists()) return false;
+    try
+    {
+      Properties props = new Properties();
+      FileInputStream in = new FileInputStream(part);
+      try { props.load(in); } finally { in.close(); }
+
+      if (!uri.equals(props.getProperty("uri"))) return false;
+      if (geti(props, "offset", 0) != offset) return false;
+
+      int size   = geti(props, "fileSize", 0);
+      int chunk  = geti(props, "chunkSize", 0);
+      String hex = props.getProperty("chunks", "");
+      int n      = size/chunk + (size % chunk > 0 ? 1 : 0);
+      if (hex.length() != (n+3)/4) return false;
+
+      BitSet bits = new BitSet(n);
+      for (int i=0; i<n; ++i)
+        if ((Character.digit(hex.charAt(i/4), 16) & (1 << (i%4))) != 0) bits.set(i);
+      if (bits.cardinality() >= n) return false;
+
+      // without a check chunk we can't tell if the remote
+      // file was rewritten, so don't trust the progress
+      int check = geti(props, "check", -1);
+      if (check < 0 || check >= n || !bits.get(check)) return false;
+
+      this.totalSize        = size;
+      this.totalChunks      = n;
+      this.chunkSize        = chunk;
+      this.received         = bits;
+      this.transferedChunks = bits.cardinality();
+      this.savedChunks      = transferedChunks;
+      this.checkChunk       = check;
+      this.checkCrc         = Long.parseLong(props.getProperty("crc"), 16);
+      this.resuming         = true;
+      return true;
+    }
+    catch (Exception e)
+    {
+      // unreadable progress is just no progress
+      return false;
+    }
+  }
+
+  /**
+   * Save the progress so far to the part file.
+   */
+  private void checkpoint()
+  {
+    try
+    {
+      BitSet bits;
+      int check;
+      long crc;
+      synchronized (lock)
+      {
+        // the check chunk is the one before the first missing
+        // chunk, which a resume reopens from anyways; its CRC is
+        // read back under the lock since chunks write the file
+        bits  = (BitSet)received.clone();
+        int first = bits.nextClearBit(0);
+        check = first > 0 ? first-1 : bits.length()-1;
+        crc   = check < 0 ? 0 : crc(check);
+      }
+      savePart(bits, check, crc);
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * CRC of the given received chunk as written to the file.
+   */
+  private long crc(int chunk)
+    throws IOException
+  {
+    int len = Math.min(chunkSize, totalSize - chunk*chunkSize);
+    Buf buf = new Buf(len);
+    file.read(chunk*chunkSize, buf, len);
+    return crc(buf.bytes, 0, len);
+  }
+
+  private static long crc(byte[] b, int off, int len)
+  {
+    CRC32 crc = new CRC32();
+    crc.update(b, off, len);
+    return crc.getValue();
+  }
+
+  /**
+   * Write the set of received chunks and the check chunk to
+   * the part file via a temp file, so a crash never leaves a
+   * torn one.  Without a check chunk there is nothing worth
+   * resuming.
+   */
+  private void savePart(BitSet bits, int check, long crc)
+  {
+    try
+    {
+      if (check < 0) { part.delete(); return; }
+
+      StringBuffer hex = new StringBuffer((totalChunks+3)/4);
+      for (int i=0; i<totalChunks; i+=4)
+      {
+        int nibble = 0;
+        for (int j=0; j<4; ++j) if (bits.get(i+j)) nibble |= 1 << j;
+        hex.append(Character.forDigit(nibble, 16));
+      }
+
+      Properties props = new Properties();
+      props.put("uri",       uri);
+      props.put("offset",    ""+offset);
+      props.put("fileSize",  ""+totalSize);
+      props.put("chunkSize", ""+chunkSize);
+      props.put("chunks",    hex.toString());
+      props.put("check",     ""+check);
+      props.put("crc",       Long.toHexString(crc));
+
+      File tmp = new File(part.getPath() + ".tmp");
+      FileOutputStream out = new FileOutputStream(tmp);
+      try { props.store(out, "sox file transfer progress"); } finally { out.close(); }
+      if (part.exists()) part.delete();
+      tmp.renameTo(part);
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace();
+    }
+  }
+
 //////////////////////////////////////////////////////////////
 // Utils
 //////////////////////////////////////////////////////////////
@@ -357,7 +699,7 @@ public class FileTransfer
     if (listener == null) return;
     try
     {
-      listener.progress(transferedChunks*chunkSize, fileSize);
+      listener.progress(Math.min(transferedChunks*chunkSize, totalSize), totalSize);
     }
     catch (Throwable e)
     {
@@ -376,26 +718,314 @@ public class FileTransfer
     System.out.println();
     System.out.println("Done [" + uri + "]");
     System.out.println("  duration:    " + dur + "ms");
-    System.out.println("  fileSize:    " + fileSize + " bytes");
+    System.out.println("  fileSize:    " + totalSize + " bytes");
     System.out.println("  chunkSize:   " + chunkSize + " bytes");
-    System.out.println("  numChunks:   " + numChunks);
+    System.out.println("  numChunks:   " + totalChunks);
     System.out.println();
   }
 
+//////////////////////////////////////////////////////////////
+// Test
+//////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    byte[] data = new byte[5050];
+    new java.util.Random(1).nextBytes(data);
+    FileDevice device = new FileDevice(data);
+    File dir = File.createTempFile("FileTransfer", "");
+    dir.delete();
+    dir.mkdirs();
+    try
+    {
+      test(device, dir);
+    }
+    finally
+    {
+      device.close();
+      File[] files = dir.listFiles();
+      for (int i=0; files != null && i<files.length; ++i) files[i].delete();
+      dir.delete();
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.println("  FileTransfer Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private static void test(FileDevice device, File dir)
+    throws Exception
+  {
+    SoxClient client = device.connect();
+
+    // a clean get streams the whole file in one transaction
+    Buf buf = new Buf();
+    final int[] last = new int[2];
+    client.getFile("a", SoxFile.make(buf), headers(null), new TransferListener()
+    {
+      public void progress(int bytes, int total) { last[0] = bytes; last[1] = total; }
+    });
+    verify(java.util.Arrays.equals(buf.trim(), device.data));
+    verify(device.opens().equals("0:0"));
+    verify(device.chunksSent() == 51);
+    verify(last[0] == 5050 && last[1] == 5050);
+
+    // a stall reopens just the missing range and
+    // keeps the chunks which did arrive
+    device.dropNext(10, 20);
+    buf = new Buf();
+    client.getFile("a", SoxFile.make(buf), headers(null), null);
+    verify(java.util.Arrays.equals(buf.trim(), device.data));
+    verify(device.opens().equals("0:0 1000:1000"));
+    verify(device.chunksSent() == 51);
+
+    // with no retries the get fails, but the part file lets the
+    // next get fetch only what is left, reopening to the end of
+    // the file from the check chunk just before it
+    File f = new File(dir, "b");
+    File part = new File(dir, "b.part");
+    device.dropNext(30, 51);
+    try { client.getFile("b", SoxFile.make(f), headers("0"), null); verify(false); }
+    catch (IOException e) { verify(true); }
+    verify(part.exists());
+    verify(device.opens().equals("0:0"));
+    verify(device.chunksSent() == 30);
+    client.getFile("b", SoxFile.make(f), headers("0"), null);
+    verify(java.util.Arrays.equals(Buf.readFrom(f).trim(), device.data));
+    verify(device.opens().equals("2900:0"));
+    verify(device.chunksSent() == 22);
+    verify(!part.exists());
+
+    // progress is dropped if the remote file shrank
+    device.dropNext(30, 51);
+    try { client.getFile("b", SoxFile.make(f), headers("0"), null); verify(false); }
+    catch (IOException e) { verify(true); }
+    verify(part.exists());
+    verify(device.opens().equals("0:0"));
+    byte[] original = device.data;
+    byte[] shorter = new byte[2500];
+    System.arraycopy(original, 100, shorter, 0, shorter.length);
+    device.data = shorter;
+    client.getFile("b", SoxFile.make(f), headers("0"), null);
+    verify(java.util.Arrays.equals(Buf.readFrom(f).trim(), shorter));
+    verify(device.opens().equals("2900:0 0:0"));
+    verify(!part.exists());
+
+    // or grew
+    device.data = original;
+    device.dropNext(30, 51);
+    try { client.getFile("b", SoxFile.make(f), headers("0"), null); verify(false); }
+    catch (IOException e) { verify(true); }
+    byte[] longer = new byte[6000];
+    System.arraycopy(original, 0, longer, 0, original.length);
+    device.data = longer;
+    client.getFile("b", SoxFile.make(f), headers("0"), null);
+    verify(java.util.Arrays.equals(Buf.readFrom(f).trim(), longer));
+    verify(device.opens().equals("0:0 2900:0 0:0"));
+
+    // or was rewritten at the same length
+    device.data = original;
+    device.dropNext(30, 51);
+    try { client.getFile("b", SoxFile.make(f), headers("0"), null); verify(false); }
+    catch (IOException e) { verify(true); }
+    byte[] rewritten = new byte[original.length];
+    new java.util.Random(3).nextBytes(rewritten);
+    device.data = rewritten;
+    client.getFile("b", SoxFile.make(f), headers("0"), null);
+    verify(java.util.Arrays.equals(Buf.readFrom(f).trim(), rewritten));
+    verify(device.opens().equals("0:0 2900:0 0:0"));
+    verify(!part.exists());
+
+    // a part file without a check chunk isn't trusted
+    device.dropNext(30, 51);
+    try { client.getFile("b", SoxFile.make(f), headers("0"), null); verify(false); }
+    catch (IOException e) { verify(true); }
+    Properties props = new Properties();
+    FileInputStream in = new FileInputStream(part);
+    try { props.load(in); } finally { in.close(); }
+    verify(props.getProperty("check").equals("29"));
+    props.remove("check");
+    FileOutputStream out = new FileOutputStream(part);
+    try { props.store(out, null); } finally { out.close(); }
+    client.getFile("b", SoxFile.make(f), headers("0"), null);
+    verify(java.util.Arrays.equals(Buf.readFrom(f).trim(), rewritten));
+    verify(device.opens().equals("0:0 0:0"));
+    device.data = shorter;
+
+    // a mapped file is written in place and resumes too
+    File m = new File(dir, "m");
+    device.dropNext(20, 25);
+    try { client.getFile("m", SoxFile.makeMapped(m), headers("0"), null); verify(false); }
+    catch (IOException e) { verify(true); }
+    verify(device.opens().equals("0:0"));
+    verify(m.length() == 2000);
+    MappedSoxFile mf = (MappedSoxFile)SoxFile.makeMapped(m);
+    client.getFile("m", mf, headers("0"), null);
+    verify(mf.reserved == 2500);
+    verify(java.util.Arrays.equals(Buf.readFrom(m).trim(), shorter));
+    verify(device.opens().equals("1900:0"));
+
+    // a memory file can't resume
+    try { client.getFile("c", SoxFile.make(new Buf()), headers("0"), null); verify(false); }
+    catch (IllegalArgumentException e) { verify(true); }
+
+    client.close();
+  }
+
+  private static Properties headers(String resumeRetries)
+  {
+    Properties h = new Properties();
+    h.put("chunkSize", "100");
+    h.put("timeout", "200");
+    if (resumeRetries != null)
+    {
+      h.put("resume", "true");
+      h.put("retries", resumeRetries);
+    }
+    return h;
+  }
+
+  /**
+   * FileDevice serves gets of one file, streaming its chunks
+   * after the open response like a real device, and can be
+   * told to lose a range of chunks of the next transaction.
+   */
+  static class FileDevice extends LoopbackSoxDevice
+  {
+    FileDevice(byte[] data) throws Exception { this.data = data; }
+
+    Msg respond(Msg req)
+    {
+      if (req.bytes[0] != 'f') return super.respond(req);
+      try
+      {
+        req.u1();
+        int replyNum  = req.u1();
+        req.str();    // method
+        req.str();    // uri
+        int size      = req.i4();
+        int chunkSize = req.u2();
+        int offset    = 0;
+        while (true)
+        {
+          String key = req.str();
+          if (key.equals("")) break;
+          String val = req.str();
+          if (key.equals("offset")) offset = Integer.parseInt(val);
+        }
+
+        synchronized (this)
+        {
+          opens.append(opens.length() == 0 ? "" : " ").append(offset + ":" + size);
+          int max = Math.max(0, data.length - offset);
+          txOffset = offset;
+          txSize = size == 0 ? max : Math.min(size, max);
+          txChunkSize = chunkSize;
+        }
+
+        Msg res = new Msg();
+        res.u1('F');
+        res.u1(replyNum);
+        res.i4(txSize);
+        res.u2(txChunkSize);
+        res.u1(0);
+        return res;
+      }
+      catch (IOException e)
+      {
+        throw new RuntimeException(e.toString());
+      }
+    }
+
+    void sent(DaspSession s, Msg req, Msg res)
+      throws Exception
+    {
+      if (res.bytes[0] != 'F') return;
+      int from, to;
+      synchronized (this) { from = dropFrom; to = dropTo; dropFrom = dropTo = -1; }
+
+      int n = (txSize + txChunkSize - 1) / txChunkSize;
+      for (int i=0; i<n; ++i)
+      {
+        if (from <= i && i < to) continue;
+        int len = Math.min(txChunkSize, txSize - i*txChunkSize);
+        Msg k = new Msg();
+        k.u1('k');
+        k.u1(0xff);
+        k.u2(i);
+        k.u2(len);
+        k.write(data, txOffset + i*txChunkSize, len);
+        s.send(k.bytes, 0, k.size);
+        synchronized (this) { chunksSent++; }
+      }
+    }
+
+    synchronized void dropNext(int from, int to) { dropFrom = from; dropTo = to; }
+
+    /**
+     * Opens since last called as "offset:size" pairs.
+     */
+    synchronized String opens()
+    {
+      String s = opens.toString();
+      opens.setLength(0);
+      return s;
+    }
+
+    /**
+     * Chunks sent since last called.
+     */
+    synchronized int chunksSent()
+    {
+      int n = chunksSent;
+      chunksSent = 0;
+      return n;
+    }
+
+    volatile byte[] data;
+    private final StringBuffer opens = new StringBuffer();
+    private int txOffset, txSize, txChunkSize;
+    private int dropFrom = -1, dropTo = -1;
+    private int chunksSent;
+  }
+
+  private static synchronized void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
 //////////////////////////////////////////////////////////////
 // Fields
 //////////////////////////////////////////////////////////////
 
+  static final int DEFAULT_RETRIES = 3;
+  static final int SAVE_INTERVAL   = 64;    // chunks between part file checkpoints
+
   ISoxComm comm;
   TransferListener listener;  // progress callback
   String uri;             // filename to read/write
   SoxFile file;           // local representation of file to read/write
   String method;          // "g" for get and "p" for put
-  int fileSize;           // number of bytes in file
+  int fileSize;           // number of bytes in current transaction
+  int totalSize;          // number of bytes in file
   int offset;             // byte offset into file for reading/writing
   int chunkSize;          // number of bytes in chunk (last may be smaller)
-  int numChunks;          // number of chunks expected to be transfered
+  int numChunks;          // number of chunks in current transaction
+  int totalChunks;        // number of chunks expected to be transfered
   int transferedChunks;   // number of chunks transfers so far
+  int base;               // chunk index of current get transaction's chunk 0
+  BitSet received;        // chunks received so far (get only)
+  int checkChunk = -1;    // resumed chunk to verify against checkCrc or -1
+  long checkCrc;          // CRC32 of checkChunk when progress was saved
+  boolean resuming;       // progress loaded from part file not yet reopened
+  boolean stale;          // checkChunk didn't match, remote file changed
+  int retries;            // reopens allowed without progress (get only)
+  int timeout;            // ms without a chunk before reopening (get only)
+  File part;              // progress file or null (get only)
+  int savedChunks;        // transferedChunks at last part checkpoint
   Properties reqHeaders;  // client specified request headers
   Properties resHeaders;  // server specified response headers
   long startTicks;        // starting time
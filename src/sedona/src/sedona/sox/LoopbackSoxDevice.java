@@ -0,0 +1,198 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.sox;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import sedona.dasp.DaspAcceptor;
+import sedona.dasp.DaspMessage;
+import sedona.dasp.DaspSession;
+import sedona.dasp.DaspSocket;
+import sedona.dasp.LoopbackDaspSocketInterface;
+import sedona.util.UserUtil;
+
+/**
+ * LoopbackSoxDevice is a stand in for a Sedona device used by the
+ * white-box tests.  It accepts DASP sessions over a
+ * LoopbackDaspSocketInterface and answers every request by echoing
+ * its body back under the response command code.  Subclasses override
+ * respond to model specific commands.  Responses may be held back by
+ * a random delay so they complete out of order, and the device keeps
+ * track of how many requests it had outstanding at once.
+ */
+class LoopbackSoxDevice
+  implements Runnable
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  LoopbackSoxDevice()
+    throws Exception
+  {
+    iface  = new LoopbackDaspSocketInterface(-1);
+    socket = DaspSocket.open(iface, new DaspAcceptor()
+    {
+      public byte[] credentials(String u) { return UserUtil.credentials(USER, PASS); }
+      public Hashtable options() { return new Hashtable(); }
+    }, DaspSocket.SOCKET_QUEUING);
+    thread = new Thread(this, "LoopbackSoxDevice");
+    thread.start();
+  }
+
+  /**
+   * Open a new client socket and connect a SoxClient to us.
+   */
+  SoxClient connect()
+    throws Exception
+  {
+    DaspSocket s = DaspSocket.open(new LoopbackDaspSocketInterface(-1), null, DaspSocket.SESSION_QUEUING);
+    synchronized (clients) { clients.add(s); }
+    SoxClient c = new SoxClient(s, LoopbackDaspSocketInterface.address(), iface.localPort(), USER, PASS);
+    c.connect();
+    return c;
+  }
+
+  /**
+   * Shutdown the device and all the client sockets we opened.
+   */
+  void close()
+    throws Exception
+  {
+    synchronized (clients)
+    {
+      for (int i=0; i<clients.size(); ++i)
+        ((DaspSocket)clients.get(i)).close();
+      clients.clear();
+    }
+    socket.close();
+    timer.cancel();
+    thread.join();
+  }
+
+////////////////////////////////////////////////////////////////
+// Responses
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Build the response to the given request or return null to
+   * drop it.  Default echos the request body back with the
+   * command code capitalized.
+   */
+  Msg respond(Msg req)
+  {
+    Msg res = new Msg();
+    res.u1(req.bytes[0] & ~0x20);
+    res.u1(req.bytes[1] & 0xff);
+    res.write(req.bytes, 2, req.size - 2);
+    return res;
+  }
+
+  /**
+   * Hook called after the response to req has been sent on the
+   * session, for devices which follow up with more messages.
+   */
+  void sent(DaspSession s, Msg req, Msg res)
+    throws Exception
+  {
+  }
+
+  /**
+   * Max random ms each response is held back, zero
+   * to respond immediately.
+   */
+  LoopbackSoxDevice setDelay(long ms) { delay = ms; return this; }
+
+  /**
+   * Number of requests received.
+   */
+  synchronized int numRequests() { return numRequests; }
+
+  /**
+   * Most requests we were holding unanswered at once.
+   */
+  synchronized int peakOutstanding() { return peak; }
+
+////////////////////////////////////////////////////////////////
+// Run
+////////////////////////////////////////////////////////////////
+
+  public void run()
+  {
+    while (!socket.isClosed())
+    {
+      try
+      {
+        DaspMessage m = socket.receive(100);
+        if (m == null) continue;
+        final DaspSession s = m.session();
+        final Msg req = new Msg(m.payload());
+        m.release();
+
+        long wait;
+        synchronized (this)
+        {
+          numRequests++;
+          if (++outstanding > peak) peak = outstanding;
+          wait = delay <= 0 ? 0 : (long)(rand.nextDouble() * delay);
+        }
+
+        if (wait == 0) { reply(s, req); continue; }
+        timer.schedule(new TimerTask()
+        {
+          public void run() { reply(s, req); }
+        }, wait);
+      }
+      catch (Exception e)
+      {
+      }
+    }
+  }
+
+  private void reply(DaspSession s, Msg req)
+  {
+    synchronized (this) { outstanding--; }
+    try
+    {
+      Msg res = respond(req);
+      if (res != null && !s.isClosed())
+      {
+        s.send(res.bytes, 0, res.size);
+        sent(s, req, res);
+      }
+    }
+    catch (Exception e)
+    {
+      if (!s.isClosed()) e.printStackTrace();
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  static final String USER = "sox";
+  static final String PASS = "sox";
+
+  final LoopbackDaspSocketInterface iface;
+  final DaspSocket socket;
+  private final Thread thread;
+  private final Timer timer = new Timer("LoopbackSoxDevice.Timer", true);
+  private final ArrayList clients = new ArrayList();  // DaspSockets
+  private final Random rand = new Random(0);
+  private long delay;
+  private int numRequests;
+  private int outstanding;
+  private int peak;
+}
@@ -0,0 +1,245 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.sox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import sedona.Buf;
+
+/**
+ * MappedSoxFile is a SoxFile on the local file system which is
+ * memory mapped, so chunks are copied straight between the message
+ * buffer and the page cache without a seek and system call each or
+ * a heap copy of the whole file.  A get reserves the file's size as
+ * soon as the device reports it, or when it resumes, so the file is
+ * mapped once and never past that size.  Without a reservation,
+ * writes past the mapped region grow it geometrically.  On close the
+ * file is trimmed back to what was written; platforms which can't
+ * truncate a file while it is still mapped, like Windows, fail that
+ * and close raises a SoxException, so a complete reserved get never
+ * needs the trim.
+ */
+class MappedSoxFile
+  extends SoxFile.LocalFile
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  MappedSoxFile(File f) { super(f); }
+
+////////////////////////////////////////////////////////////////
+// SoxFile
+////////////////////////////////////////////////////////////////
+
+  public int size()
+  {
+    if (fp == null) return (int)file.length();
+    return writable ? Math.max(length, end) : length;
+  }
+
+  public void open(String mode)
+    throws IOException
+  {
+    writable = !mode.equals("r");
+    fp = new RandomAccessFile(file, writable ? "rw" : "r");
+    if (mode.equals("w")) fp.setLength(0);
+    length = (int)fp.length();
+    end = 0;
+    reserved = 0;
+    map = null;
+    if (!writable) map = fp.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+  }
+
+  public void read(int pos, Buf buf, int n)
+    throws IOException
+  {
+    if (map == null || pos+n > map.capacity())
+      throw new IOException("Read past end of file: pos=" + pos + " n=" + n);
+    map.position(pos);
+    buf.readFrom(map, n);
+  }
+
+  public void write(int pos, Buf buf, int n)
+    throws IOException
+  {
+    int needed = pos + n;
+    if (map == null || needed > map.capacity())
+    {
+      // grow geometrically, but never past the reserved size
+      int size = Math.max(needed, Math.max(length, map == null ? 0 : map.capacity()*2));
+      if (needed <= reserved) size = Math.min(size, reserved);
+      remap(size);
+    }
+    map.position(pos);
+    buf.writeTo(map, n);
+    if (needed > end) end = needed;
+  }
+
+  void reserve(int size)
+    throws IOException
+  {
+    if (!writable) return;
+    reserved = size;
+    if (map == null || size > map.capacity()) remap(size);
+  }
+
+  public void close()
+  {
+    IOException err = null;
+    int size = Math.max(length, end);
+    try
+    {
+      if (fp != null && writable)
+      {
+        if (map != null) map.force();
+        map = null;
+
+        // trim the region mapped ahead but never written
+        if (fp.length() > size) fp.setLength(size);
+      }
+    }
+    catch (IOException e)
+    {
+      err = e;
+    }
+    map = null;
+    super.close();
+    if (err != null)
+      throw new SoxException("Cannot trim " + file + " to " + size + " bytes: " + err);
+  }
+
+  /**
+   * Map the first size bytes for writing, extending the file.
+   */
+  private void remap(int size)
+    throws IOException
+  {
+    if (map != null) map.force();
+    map = fp.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+  }
+
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    File f = File.createTempFile("MappedSoxFile", ".bin");
+    try
+    {
+      test(f);
+    }
+    finally
+    {
+      f.delete();
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.println("  MappedSoxFile Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private static void test(File f)
+    throws Exception
+  {
+    byte[] data = new byte[10000];
+    new java.util.Random(2).nextBytes(data);
+
+    // out of order chunks without a reservation grow the mapping
+    // and the file is trimmed to what was written
+    SoxFile sf = SoxFile.makeMapped(f);
+    sf.open("w");
+    for (int i=9; i>=0; --i) sf.write(i*1000, new Buf(slice(data, i*1000, 1000)), 1000);
+    sf.write(0, new Buf(slice(data, 0, 1000)), 1000);
+    verify(sf.size() == 10000);
+    sf.close();
+    verify(f.length() == 10000);
+    verify(java.util.Arrays.equals(Buf.readFrom(f).trim(), data));
+
+    // read back chunks into a message buffer after a header
+    sf.open("r");
+    verify(sf.size() == 10000);
+    Buf msg = new Buf();
+    msg.u1('k');
+    sf.read(2500, msg, 300);
+    verify(msg.size == 301 && msg.pos == 301);
+    verify(java.util.Arrays.equals(slice(msg.trim(), 1, 300), slice(data, 2500, 300)));
+    try { sf.read(9900, msg, 200); verify(false); } catch (IOException e) { verify(true); }
+    sf.close();
+
+    // a reservation caps the mapping however the chunks arrive
+    sf.open("w");
+    sf.reserve(5000);
+    for (int i=4; i>=0; --i) sf.write(i*1000, new Buf(slice(data, i*1000, 1000)), 1000);
+    verify(((MappedSoxFile)sf).map.capacity() == 5000);
+    sf.close();
+    verify(f.length() == 5000);
+    verify(java.util.Arrays.equals(Buf.readFrom(f).trim(), slice(data, 0, 5000)));
+
+    // but doesn't stop writes past it
+    sf.open("w");
+    sf.reserve(1000);
+    sf.write(0, new Buf(slice(data, 0, 1000)), 1000);
+    sf.write(1000, new Buf(slice(data, 1000, 10)), 10);
+    verify(((MappedSoxFile)sf).map.capacity() == 2000);
+    sf.close();
+    verify(f.length() == 1010);
+
+    // "m" keeps what is there and a reservation past it
+    // is trimmed when less is written
+    sf.open("w");
+    sf.write(0, new Buf(data), 10000);
+    sf.close();
+    sf.open("m");
+    sf.reserve(20000);
+    sf.write(10000, new Buf(slice(data, 0, 500)), 500);
+    sf.close();
+    verify(f.length() == 10500);
+    byte[] all = Buf.readFrom(f).trim();
+    verify(java.util.Arrays.equals(slice(all, 0, 10000), data));
+    verify(java.util.Arrays.equals(slice(all, 10000, 500), slice(data, 0, 500)));
+
+    // "w" truncates
+    sf.open("w");
+    verify(sf.size() == 0);
+    sf.close();
+    verify(f.length() == 0);
+  }
+
+  private static byte[] slice(byte[] b, int off, int len)
+  {
+    byte[] s = new byte[len];
+    System.arraycopy(b, off, s, 0, len);
+    return s;
+  }
+
+  private static void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  private MappedByteBuffer map;  // mapped region or null
+  private boolean writable;      // opened "w" or "m"
+  private int length;            // file length when opened
+  private int end;               // highest byte written + 1
+  int reserved;                  // size reserved for a get or 0
+}
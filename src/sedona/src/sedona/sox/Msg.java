@@ -9,6 +9,9 @@
 package sedona.sox;
 
 import java.io.*;
+import sedona.Slot;
+import sedona.Type;
+import sedona.Value;
 import sedona.dasp.*;
 
 /**
@@ -43,6 +46,54 @@ public class Msg
     return req;
   }
 
+  static Msg makeReadPropReq(int compId, Slot slot)
+  {
+    Msg req = prepareRequest('r');
+    req.u2(compId);
+    req.u1(slot.id);
+    return req;
+  }
+
+  static Msg makeWriteReq(int compId, Slot slot, Value val)
+  {
+    Msg req = prepareRequest('w');
+    req.u2(compId);
+    req.u1(slot.id);
+    val.encodeBinary(req);
+    return req;
+  }
+
+  static Msg makeInvokeReq(int compId, Slot slot, Value arg)
+  {
+    Msg req = prepareRequest('i');
+    req.u2(compId);
+    req.u1(slot.id);
+    if (arg != null)
+      arg.encodeBinary(req);
+    return req;
+  }
+
+  static Msg makeAddReq(SoxComponent parent, Type type, String name, Value[] configValues)
+  {
+    Msg req = prepareRequest('a');
+    req.u2(parent.id);
+    req.u1(type.kit.id);
+    req.u1(type.id);
+    req.str(name);
+    for (int i=0; i<configValues.length; ++i)
+      configValues[i].encodeBinary(req);
+    return req;
+  }
+
+  static Msg makeQueryServiceReq(Type serviceType)
+  {
+    Msg req = prepareRequest('q');
+    req.u1('s');
+    req.u1(serviceType.kit.id);
+    req.u1(serviceType.id);
+    return req;
+  }
+
   /**
    * @deprecated Pre Sox 1.1 messaging only
    */
@@ -0,0 +1,503 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.sox;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+
+import sedona.*;
+import sedona.manifest.KitManifest;
+import sedona.manifest.ManifestDb;
+import sedona.manifest.SlotManifest;
+import sedona.manifest.TypeManifest;
+
+/**
+ * SoxAppSnapshot saves a SoxClient's component cache - tree structure
+ * and config values - to a file, so a later session can restore it
+ * instead of reloading the whole app over the network.  A snapshot is
+ * keyed by the Schema.key and an app identity string and is only
+ * restored when both match; runtime values and links are never stored.
+ * <p>
+ * The default identity is a checksum of the device's app.sab, which
+ * costs a transfer of the whole file on every validation.  It only
+ * changes when the device saves its app, so config writes, adds,
+ * deletes, renames and reorders made since the last save don't
+ * invalidate the snapshot and a restore brings back stale config and
+ * structure.  Sox has no cheaper identity which tracks the live app,
+ * so snapshots are off unless the "sox.appSnapshot" property is true
+ * or enabled is set, and should only be turned on for devices whose
+ * app is saved after every change.
+ */
+public class SoxAppSnapshot
+{
+
+////////////////////////////////////////////////////////////////
+// Config
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Are snapshots used by SoxClient.loadAppCached, default false.
+   */
+  public static boolean enabled = Env.getProperty("sox.appSnapshot", false);
+
+////////////////////////////////////////////////////////////////
+// Identity
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Read the device's app.sab and return its SHA-1 as hex.  This
+   * only changes when the device saves its app, see class header.
+   */
+  public static String appChecksum(SoxClient client)
+    throws Exception
+  {
+    Buf buf = new Buf();
+    client.getFile("app.sab", SoxFile.make(buf), null, null);
+    byte[] digest = MessageDigest.getInstance("SHA-1").digest(buf.trim());
+    StringBuffer s = new StringBuffer(digest.length*2);
+    for (int i=0; i<digest.length; ++i)
+    {
+      s.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+      s.append(Character.forDigit(digest[i] & 0xf, 16));
+    }
+    return s.toString();
+  }
+
+////////////////////////////////////////////////////////////////
+// Save
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Write every cached component of the client to the file under
+   * the given app identity.  The file is written to a temp file
+   * first and renamed so a crash never leaves a torn snapshot.
+   */
+  public static void save(SoxClient client, File file, String appId)
+    throws Exception
+  {
+    Schema schema = client.readSchema();
+    SoxComponent[] cache = client.cache;
+
+    Buf buf = new Buf(4096);
+    buf.i4(MAGIC);
+    buf.u1(VERSION);
+    buf.str(schema.key);
+    buf.str(appId);
+    int n = 0;
+    for (int i=0; i<cache.length; ++i) if (cache[i] != null) n++;
+    buf.u2(n);
+    for (int i=0; i<cache.length; ++i)
+      if (cache[i] != null) encode(buf, cache[i]);
+
+    File tmp = new File(file.getPath() + ".tmp");
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null) dir.mkdirs();
+    buf.writeTo(tmp);
+    if (file.exists() && !file.delete())
+      throw new SoxException("Cannot replace snapshot: " + file);
+    if (!tmp.renameTo(file))
+      throw new SoxException("Cannot write snapshot: " + file);
+  }
+
+  private static void encode(Buf buf, SoxComponent c)
+  {
+    buf.u2(c.id);
+    buf.u1(c.type.kit.id);
+    buf.u1(c.type.id);
+    buf.str(c.name);
+    buf.u2(c.parent);
+    buf.u1(c.permissions);
+    buf.u1(c.children.length);
+    for (int i=0; i<c.children.length; ++i)
+      buf.u2(c.children[i]);
+
+    Slot[] slots = c.type.slots;
+    for (int i=0; i<slots.length; ++i)
+      if (isConfig(slots[i])) c.get(slots[i]).encodeBinary(buf);
+  }
+
+////////////////////////////////////////////////////////////////
+// Restore
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Restore the snapshot into the client's cache if it exists and
+   * matches the client's schema and the given app identity.
+   * Components already in the cache are left alone.  Return false
+   * if there was nothing usable to restore.
+   */
+  public static boolean restore(SoxClient client, File file, String appId)
+    throws Exception
+  {
+    if (!file.exists()) return false;
+    Schema schema = client.readSchema();
+
+    Buf buf = Buf.readFrom(file);
+    try
+    {
+      if (buf.i4() != MAGIC || buf.u1() != VERSION) return false;
+      if (!buf.str().equals(schema.key)) return false;
+      if (!buf.str().equals(appId)) return false;
+
+      // decode everything before touching the cache
+      int n = buf.u2();
+      SoxComponent[] comps = new SoxComponent[n];
+      for (int i=0; i<n; ++i)
+        comps[i] = decode(buf, client, schema);
+
+      for (int i=0; i<n; ++i)
+        if (client.cache(comps[i].id) == null) client.cacheAdd(comps[i]);
+      return true;
+    }
+    catch (Exception e)
+    {
+      // treat a truncated or stale format as a cache miss
+      return false;
+    }
+  }
+
+  private static SoxComponent decode(Buf buf, SoxClient client, Schema schema)
+    throws Exception
+  {
+    int id = buf.u2();
+    Kit kit = schema.kit(buf.u1());
+    Type type = kit.type(buf.u1());
+    SoxComponent c = new SoxComponent(client, id, type);
+    c.name = buf.str();
+    c.parent = buf.u2();
+    c.permissions = buf.u1();
+    int[] children = new int[buf.u1()];
+    for (int i=0; i<children.length; ++i)
+      children[i] = buf.u2();
+    c.setChildren(children);
+
+    Slot[] slots = type.slots;
+    for (int i=0; i<slots.length; ++i)
+      if (isConfig(slots[i])) c.decodeBinary(slots[i], buf);
+    return c;
+  }
+
+  private static boolean isConfig(Slot slot)
+  {
+    return slot.isProp() && slot.isConfig();
+  }
+
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    KitPart part = new KitPart("sys", 0x5a5a0016);
+    ManifestDb.save(manifest(part));
+    File f = File.createTempFile("SoxAppSnapshot", ".bin");
+    f.delete();
+    AppDevice device = null;
+    boolean wasEnabled = enabled;
+    try
+    {
+      device = new AppDevice(part);
+      testLoadTree(device);
+      testSnapshot(device, f);
+    }
+    finally
+    {
+      enabled = wasEnabled;
+      if (device != null)
+      {
+        device.close();
+        Schema.cache().remove(device.schema.key);
+      }
+      f.delete();
+      new File(f.getPath() + ".tmp").delete();
+      File mf = ManifestDb.toFile(part);
+      ManifestDb.cache().remove(part.key);
+      mf.delete();
+      new File(mf.getParentFile(), part.key + ".bin").delete();
+      mf.getParentFile().delete();
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.println("  SoxAppSnapshot Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private static void testLoadTree(AppDevice device)
+    throws Exception
+  {
+    // depth 0 reads just the root
+    SoxClient c = device.connect();
+    device.requests();
+    verify(c.loadTree(1, 0, 0) == c.cache(1));
+    verify(device.requests().equals("t1"));
+    verifyTree(device, c, new int[] { 1 });
+    verify(c.cache(3) == null);
+
+    // depth 1 with config reads the children too, and the
+    // cached root only gets its config
+    verify(c.loadTree(0, 1, SoxComponent.CONFIG) == c.cache(0));
+    verify(device.requests().equals("c0 c1 c2 t0 t2"));
+    verifyTree(device, c, new int[] { 0, 1, 2 });
+    verifyConfig(device, c, new int[] { 0, 1, 2 });
+    verify(c.cache(3) == null);
+
+    // unbounded depth finds the rest
+    c.loadTree(0, -1, 0);
+    verify(device.requests().equals("t3"));
+    verifyTree(device, c, new int[] { 0, 1, 2, 3 });
+  }
+
+  private static void testSnapshot(AppDevice device, File f)
+    throws Exception
+  {
+    int[] all = { 0, 1, 2, 3 };
+
+    // off by default: plain load, no app.sab, no file
+    enabled = false;
+    SoxClient c = device.connect();
+    device.uris();
+    device.requests();
+    verify(c.loadAppCached(f) == c.cache(0));
+    verify(device.uris().equals(""));
+    verify(device.requests().equals(ALL));
+    verify(!f.exists());
+    verifyTree(device, c, all);
+    verifyConfig(device, c, all);
+
+    // enabled: a miss loads the tree and writes the snapshot
+    enabled = true;
+    c = device.connect();
+    device.uris();
+    device.requests();
+    c.loadAppCached(f);
+    verify(device.uris().equals("app.sab"));
+    verify(device.requests().equals(ALL));
+    verify(f.exists());
+
+    // a fresh client restores the whole tree from the file
+    c = device.connect();
+    device.requests();
+    SoxComponent app = c.loadAppCached(f);
+    verify(device.uris().equals("app.sab"));
+    verify(device.requests().equals(""));
+    verify(app == c.cache(0) && app.client() == c);
+    verifyTree(device, c, all);
+    verifyConfig(device, c, all);
+    Slot out = device.type.slot("out");
+    verify(c.cache(1).get(out).equals(out.def()));
+
+    // cached components are kept, others are added
+    c = device.connect();
+    c.loadTree(2, 0, 0);
+    SoxComponent two = c.cache(2);
+    String appId = appChecksum(c);
+    verify(restore(c, f, appId));
+    verify(c.cache(2) == two);
+    verifyTree(device, c, all);
+
+    // other app, other schema, or a torn file is a miss
+    c = device.connect();
+    verify(!restore(c, f, "other"));
+    verify(c.cache(0) == null);
+    byte[] good = Buf.readFrom(f).trim();
+    Buf torn = new Buf(); torn.write(good, 0, good.length-3);
+    torn.writeTo(f);
+    verify(!restore(c, f, appId));
+    verify(c.cache(0) == null);
+
+    // saving a new app.sab invalidates the snapshot
+    Buf buf = new Buf(); buf.write(good, 0, good.length);
+    buf.writeTo(f);
+    verify(restore(c, f, appId));
+    device.setConfig(3, "label", Str.make("changed"));
+    device.setApp(new byte[] { 1, 2, 3, 4 });
+    c = device.connect();
+    device.requests();
+    c.loadAppCached(f);
+    verify(device.requests().equals(ALL));
+    verifyConfig(device, c, all);
+
+    // but unsaved changes are missed by a restore
+    device.setConfig(3, "label", Str.make("unsaved"));
+    c = device.connect();
+    c.loadAppCached(f);
+    verify(c.cache(3).get(device.type.slot("label")).equals(Str.make("changed")));
+  }
+
+  private static void verifyTree(AppDevice device, SoxClient c, int[] ids)
+  {
+    for (int i=0; i<ids.length; ++i)
+    {
+      SoxComponent x = device.comps[ids[i]];
+      SoxComponent y = c.cache(ids[i]);
+      verify(y != null && y.client() == c && y.type.qname.equals(x.type.qname));
+      verify(y.name().equals(x.name()) && y.parentId() == x.parentId());
+      int[] xk = x.childrenIds(), yk = y.childrenIds();
+      verify(xk.length == yk.length);
+      for (int j=0; j<xk.length; ++j) verify(xk[j] == yk[j]);
+    }
+  }
+
+  private static void verifyConfig(AppDevice device, SoxClient c, int[] ids)
+  {
+    Slot[] slots = device.type.slots;
+    for (int i=0; i<ids.length; ++i)
+      for (int j=0; j<slots.length; ++j)
+        if (isConfig(slots[j]))
+          verify(c.cache(ids[i]).get(slots[j]).equals(device.comps[ids[i]].get(slots[j])));
+  }
+
+  /**
+   * A sys kit with the predefined types and a Folder type
+   * carrying config slots of several kinds and one runtime slot.
+   */
+  static KitManifest manifest(KitPart part)
+  {
+    KitManifest km = new KitManifest(part.name);
+    km.checksum = part.checksum;
+    String[] names = { "void", "bool", "byte", "short", "int", "long", "float", "double", "Buf" };
+    TypeManifest[] types = new TypeManifest[names.length+1];
+    for (int i=0; i<names.length; ++i)
+    {
+      types[i] = new TypeManifest(km, i, names[i], null, null, 0, 0);
+      types[i].slots = new SlotManifest[0];
+    }
+    TypeManifest t = types[names.length] = new TypeManifest(km, names.length, "Folder", null, null, 0, 0);
+    t.slots = new SlotManifest[]
+    {
+      new SlotManifest(t, 0, "on",    null, "bool",     Slot.CONFIG, Bool.FALSE),
+      new SlotManifest(t, 1, "count", null, "int",      Slot.CONFIG, Int.make(0)),
+      new SlotManifest(t, 2, "gain",  null, "float",    Slot.CONFIG, sedona.Float.ZERO),
+      new SlotManifest(t, 3, "label", null, "sys::Buf", Slot.CONFIG|Slot.AS_STR, Str.make("")),
+      new SlotManifest(t, 4, "out",   null, "int",      0, Int.make(-1)),
+    };
+    km.types = types;
+    return km;
+  }
+
+  /**
+   * AppDevice serves the schema from the test manifest and an app
+   * of four components: 0 with children 1 and 2, and 1 with child 3.
+   * Tree and config reads are recorded as "t0", "c3" and so on.
+   */
+  static class AppDevice extends SoxClient.ManifestDevice
+  {
+    AppDevice(KitPart part)
+      throws Exception
+    {
+      parts = new KitPart[] { part };
+      schema = Schema.load(parts);
+      type = schema.type("sys::Folder");
+      int[] parents  = { 0xffff, 0, 0, 1 };
+      int[][] kids = { { 1, 2 }, { 3 }, {}, {} };
+      for (int i=0; i<comps.length; ++i)
+      {
+        SoxComponent c = new SoxComponent(null, i, type);
+        c.name = i == 0 ? "app" : "c" + i;
+        c.parent = parents[i];
+        c.permissions = 0xff;
+        c.setChildren(kids[i]);
+        c.set(type.slot("on"), Bool.make(i % 2 == 1));
+        c.set(type.slot("count"), Int.make(i * 1000));
+        c.set(type.slot("gain"), sedona.Float.make(i == 3 ? java.lang.Float.NaN : i / 4f));
+        c.set(type.slot("label"), Str.make("label " + i));
+        comps[i] = c;
+      }
+      setApp(new byte[] { 'S', 'A', 'B' });
+    }
+
+    void setApp(byte[] sab) { serve("app.sab", sab); }
+
+    synchronized void setConfig(int id, String name, Value val)
+    {
+      comps[id].set(type.slot(name), val);
+    }
+
+    Msg respond(Msg req)
+    {
+      if (req.bytes[0] != 'c') return super.respond(req);
+      try
+      {
+        req.u1();
+        int replyNum = req.u1();
+        int id       = req.u2();
+        int what     = req.u1();
+
+        Msg res = new Msg();
+        res.u1('C');
+        res.u1(replyNum);
+        res.u2(id);
+        res.u1(what);
+        synchronized (this)
+        {
+          log.add("" + (char)what + id);
+          SoxComponent c = comps[id];
+          if (what == 't')
+          {
+            res.u1(c.type.kit.id);
+            res.u1(c.type.id);
+            res.str(c.name);
+            res.u2(c.parent);
+            res.u1(c.permissions);
+            res.u1(c.children.length);
+            for (int i=0; i<c.children.length; ++i) res.u2(c.children[i]);
+          }
+          else
+          {
+            Slot[] slots = type.slots;
+            for (int i=0; i<slots.length; ++i)
+              if (isConfig(slots[i])) c.get(slots[i]).encodeBinary(res);
+          }
+        }
+        return res;
+      }
+      catch (IOException e)
+      {
+        throw new RuntimeException(e.toString());
+      }
+    }
+
+    /**
+     * Component reads since last called, sorted since
+     * the walk pipelines them in no fixed order.
+     */
+    synchronized String requests()
+    {
+      String[] reads = (String[])log.toArray(new String[log.size()]);
+      log.clear();
+      java.util.Arrays.sort(reads);
+      StringBuffer s = new StringBuffer();
+      for (int i=0; i<reads.length; ++i)
+        s.append(i == 0 ? "" : " ").append(reads[i]);
+      return s.toString();
+    }
+
+    final Schema schema;
+    final Type type;
+    final SoxComponent[] comps = new SoxComponent[4];
+    private final java.util.ArrayList log = new java.util.ArrayList();
+  }
+
+  private static void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static final String ALL = "c0 c1 c2 c3 t0 t1 t2 t3";
+  private static int verifies;
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  static final int MAGIC   = 0x534f5843;  // "SOXC"
+  static final int VERSION = 1;
+}
@@ -1,5 +1,6 @@
 package sedona.sox;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetAddress;
@@ -164,12 +165,31 @@ public class SoxClient
     }
     catch (Schema.MissingKitManifestException missing)
     {
-      tryResolveMissing(missing.parts);
-      return Schema.load(parts);
+      String failures = tryResolveMissing(missing.parts);
+      try
+      {
+        return Schema.load(parts);
+      }
+      catch (Schema.MissingKitManifestException e)
+      {
+        // report why the manifests we fetched didn't install
+        if (failures != null && e.getCause() == null)
+          e.initCause(new SoxException("Cannot install manifests: " + failures));
+        throw e;
+      }
     }
   }
   
-  private  void tryResolveMissing(KitPart[] missing) throws Exception
+  /**
+   * Fetch the missing manifests from the device and install them
+   * into the manifest database.  First try the single zip transfer,
+   * then fetch whatever it didn't have one manifest at a time.  The
+   * device only runs one file transfer per session, so the transfers
+   * go back to back while each fetched manifest is parsed and saved
+   * on its own thread.  Return the parts which couldn't be installed
+   * and why, or null if all were.
+   */
+  private String tryResolveMissing(KitPart[] missing) throws Exception
   {
     KitManifest[] resolved = null;
     Buf b = new Buf();
@@ -181,31 +201,87 @@ public class SoxClient
     }
     catch (Exception e)
     {
-      // maybe single zip transfer will work...
+      // maybe single manifest transfers will work...
     }
-    
-    if (resolved == null)
+
+    // install what the zip had, and fetch the rest
+    StringBuffer failures = new StringBuffer();
+    ManifestInstaller[] installers = new ManifestInstaller[missing.length];
+    for (int i=0; i<missing.length; ++i)
     {
-      // now try single zip transfer
-      resolved = new KitManifest[missing.length];
-      for (int i=0; i<missing.length; ++i)
+      if (resolved != null && resolved[i] != null)
       {
-        b = new Buf();
-        try
-        {
-          getFile("m:" + missing[i] + ".xml", SoxFile.make(b), null, null);
-          resolved[i] = ManifestZipUtil.extract(b, missing[i]);
-        }
-        catch (Exception e)
-        {
-          resolved[i] = null;
-        }
+        installers[i] = new ManifestInstaller(missing[i], resolved[i], null);
+        installers[i].start();
+        continue;
+      }
+
+      b = new Buf();
+      try
+      {
+        getFile("m:" + missing[i] + ".xml", SoxFile.make(b), null, null);
+      }
+      catch (Exception e)
+      {
+        installFailed(failures, missing[i], "cannot fetch: " + e.getMessage());
+        continue;
       }
+      installers[i] = new ManifestInstaller(missing[i], null, b);
+      installers[i].start();
     }
 
-    for (int i=0; i<resolved.length; ++i)
-      if (resolved[i] != null)
-        ManifestDb.save(resolved[i]);
+    for (int i=0; i<installers.length; ++i)
+    {
+      if (installers[i] == null) continue;
+      installers[i].join();
+      if (installers[i].error != null)
+        installFailed(failures, missing[i], installers[i].error);
+    }
+    return failures.length() == 0 ? null : failures.toString();
+  }
+
+  private static void installFailed(StringBuffer failures, KitPart part, String reason)
+  {
+    ManifestDb.log.error("Cannot install manifest " + part + " from device: " + reason);
+    if (failures.length() > 0) failures.append(", ");
+    failures.append(part).append(" (").append(reason).append(')');
+  }
+
+  /**
+   * ManifestInstaller parses a manifest fetched from the
+   * device if needed and installs it into the manifest db.
+   * After it is joined, error is why it failed or null.
+   */
+  static class ManifestInstaller extends Thread
+  {
+    ManifestInstaller(KitPart part, KitManifest km, Buf xml)
+    {
+      super("ManifestInstaller:" + part);
+      this.part = part;
+      this.km   = km;
+      this.xml  = xml;
+      setDaemon(true);
+    }
+
+    public void run()
+    {
+      try
+      {
+        if (km == null) km = ManifestZipUtil.extract(xml, part);
+        if (km == null) error = "cannot parse manifest";
+        else if (!ManifestDb.install(km)) error = "cannot save manifest";
+      }
+      catch (Throwable e)
+      {
+        ManifestDb.log.error("Cannot install manifest " + part, e);
+        error = e.toString();
+      }
+    }
+
+    final KitPart part;
+    final Buf xml;
+    KitManifest km;
+    String error;
   }
 
   /**
@@ -253,9 +329,10 @@ public class SoxClient
 //////////////////////////////////////////////////////////////////////////
 
   /**
-   * Read a property.
+   * Read a property.  Like write, this is not synchronized so
+   * concurrent callers can pipeline or coalesce their requests.
    */
-  public synchronized Value readProp(SoxComponent comp, Slot slot)
+  public Value readProp(SoxComponent comp, Slot slot)
     throws Exception
   {
     checkMine(comp);
@@ -265,18 +342,29 @@ public class SoxClient
   /**
    * Read a property using raw component id and slot.
    */
-  public synchronized Value readProp(int compId, Slot slot)
+  public Value readProp(int compId, Slot slot)
     throws Exception
   {
+    // route through coalescer if enabled
+    SoxCoalescer c = this.coalescer;
+    if (c != null) return (Value)c.readProp(compId, slot).join();
+
     // build request
-    Msg req = Msg.prepareRequest('r');
-    req.u2(compId);
-    req.u1(slot.id);
+    Msg req = Msg.makeReadPropReq(compId, slot);
 
     // send request
     Msg res = request(req);
 
     // parse response
+    return parseReadProp(res, slot);
+  }
+
+  /**
+   * Parse a readProp response into its value.
+   */
+  static Value parseReadProp(Msg res, Slot slot)
+    throws Exception
+  {
     res.checkResponse('R');
     res.u2();     // resCompId
     res.u1();     // resPropId
@@ -373,6 +461,194 @@ public class SoxClient
     return result;
   }
 
+  /**
+   * Load the tree under rootId breadth first, down depth levels
+   * below the root or the whole tree if depth is negative, and
+   * return the root.  Each component's 't' request is queued as
+   * soon as its parent's response names it, and requests are
+   * pipelined through the exchange rather than sent level by level,
+   * so the send window stays full.  The mask may also request
+   * CONFIG, RUNTIME, or LINKS which are read in the same pass.
+   * Components already in the cache are not reloaded but their
+   * children are still walked.
+   */
+  public synchronized SoxComponent loadTree(int rootId, int depth, int mask)
+    throws Exception
+  {
+    readSchema();
+    ISoxComm comm = comm();
+    if (!(comm instanceof SoxExchange))
+      throw new UnsupportedOperationException("loadTree requires SoxExchange");
+    TreeLoad load = new TreeLoad((SoxExchange)comm, depth, mask);
+    load.run(rootId);
+    return cache(rootId);
+  }
+
+  /**
+   * Load the whole app tree with config like loadTree(0, -1, CONFIG),
+   * but restore it from the snapshot file if that was saved from the
+   * same schema and the device's app.sab is unchanged since.  After a
+   * full load the snapshot is rewritten.  Runtime values and links
+   * are not part of the snapshot.  Changes the device hasn't saved to
+   * app.sab yet are missed by a restore, so unless SoxAppSnapshot is
+   * enabled this is just a loadTree and the file is left alone.
+   */
+  public synchronized SoxComponent loadAppCached(File snapshot)
+    throws Exception
+  {
+    if (!SoxAppSnapshot.enabled) return loadTree(0, -1, SoxComponent.CONFIG);
+
+    String appId = SoxAppSnapshot.appChecksum(this);
+    if (!SoxAppSnapshot.restore(this, snapshot, appId))
+    {
+      loadTree(0, -1, SoxComponent.CONFIG);
+      SoxAppSnapshot.save(this, snapshot, appId);
+    }
+    return cache(0);
+  }
+
+  /**
+   * TreeLoad tracks one loadTree walk.  Responses are applied on the
+   * SoxReceiver thread which queues the children it discovers; the
+   * calling thread drains that queue into the exchange, so the receiver
+   * only ever applies responses.
+   */
+  final class TreeLoad
+  {
+    TreeLoad(SoxExchange exchange, int depth, int mask)
+    {
+      this.exchange = exchange;
+      this.depth    = depth;
+      this.mask     = mask;
+    }
+
+    void run(int rootId)
+      throws Exception
+    {
+      visit(rootId, 0);
+      while (true)
+      {
+        Msg req;
+        AsyncSoxClient.Call call;
+        synchronized (this)
+        {
+          while (error == null && queue.isEmpty() && outstanding > 0)
+          {
+            try { wait(500); } catch (InterruptedException e) {}
+            exchange.checkOpen();
+          }
+          if (error != null) throw error;
+          if (queue.isEmpty()) return;
+          req  = (Msg)queue.removeFirst();
+          call = (AsyncSoxClient.Call)queue.removeFirst();
+          outstanding++;
+        }
+        exchange.requestAsync(new Msg[] { req }, call);
+      }
+    }
+
+    /**
+     * Queue the tree request for a component discovered
+     * at level, unless it is already cached.
+     */
+    synchronized void visit(int id, int level)
+    {
+      SoxComponent c = cache(id);
+      if (c == null)
+        enqueue(Msg.makeUpdateReq(id, 't'), new Apply(id, level));
+      else
+        loaded(c, level);
+    }
+
+    /**
+     * Queue the rest of the mask for a component now in
+     * the cache and visit its children.  The other categories
+     * must wait for the tree since they are only applied
+     * to cached components.
+     */
+    synchronized void loaded(SoxComponent c, int level)
+    {
+      int id = c.id;
+      if ((mask & SoxComponent.CONFIG) != 0)  enqueue(Msg.makeUpdateReq(id, 'c'), new Apply(-1, 0));
+      if ((mask & SoxComponent.RUNTIME) != 0) enqueue(Msg.makeUpdateReq(id, 'r'), new Apply(-1, 0));
+      if ((mask & SoxComponent.LINKS) != 0)   enqueue(Msg.makeUpdateReq(id, 'l'), new Apply(-1, 0));
+
+      if (depth >= 0 && level >= depth) return;
+      int[] kids = c.childrenIds();
+      for (int i=0; i<kids.length; ++i)
+        visit(kids[i], level+1);
+    }
+
+    private void enqueue(Msg req, AsyncSoxClient.Call call)
+    {
+      queue.addLast(req);
+      queue.addLast(call);
+      notifyAll();
+    }
+
+    synchronized void finished(Exception e)
+    {
+      outstanding--;
+      if (e != null && error == null) error = e;
+      notifyAll();
+    }
+
+    /**
+     * Apply one response to the cache; tree
+     * responses also visit the children.
+     */
+    final class Apply extends AsyncSoxClient.Call
+    {
+      Apply(int treeId, int level)
+      {
+        super(1);
+        this.treeId = treeId;
+        this.level  = level;
+      }
+
+      Object parse(Msg[] res) throws Exception
+      {
+        return null;
+      }
+
+      void done()
+      {
+        Exception err = null;
+        try
+        {
+          res[0].checkResponse('C');
+          applyToCache(res[0]);
+          if (treeId >= 0)
+          {
+            SoxComponent c = cache(treeId);
+            if (c == null) throw new IllegalStateException(""+treeId);
+            loaded(c, level);
+          }
+        }
+        catch (Exception e)
+        {
+          err = e;
+        }
+        finished(err);
+      }
+
+      void failed(Throwable cause)
+      {
+        finished(cause instanceof Exception ? (Exception)cause : new SoxException(cause.toString()));
+      }
+
+      final int treeId;  // id if a tree request, else -1
+      final int level;
+    }
+
+    final SoxExchange exchange;
+    final int depth;
+    final int mask;
+    final LinkedList queue = new LinkedList();  // Msg, Call pairs to send
+    int outstanding;                            // sent, not yet applied
+    Exception error;                            // first failure
+  }
+
 //////////////////////////////////////////////////////////////////////////
 // Update
 //////////////////////////////////////////////////////////////////////////
@@ -513,9 +789,6 @@ public class SoxClient
   private void batchSubscribe(SoxComponent[] comps, final int mask, final long timeout)
     throws Exception
   {
-    if (comps.length > 255)
-      throw new SoxException("Cannot subscribe to more than 255 components: '" + comps.length + "'");
-
     checkMine(comps);
 
     // filter components that are already subscribed
@@ -528,42 +801,145 @@ public class SoxClient
     }
     if (arr.size() == 0) return;
 
-    // build request
     SoxComponent[] toSubscribe = (SoxComponent[])arr.toArray(new SoxComponent[arr.size()]);
-    Msg req = Msg.prepareRequest('s');
-    req.u1(mask);
-    req.u1(toSubscribe.length);
-    for (int i=0; i<toSubscribe.length; ++i)
-      req.u2(toSubscribe[i].id);
 
-    Msg response = request(req);
-    response.checkResponse('S');
-    if (timeout < 0) return; // async
+    // if synchronous, register for subscription events before
+    // we send anything so an event can't beat us to it
+    SubscribeWait wait = null;
+    if (timeout >= 0)
+    {
+      wait = new SubscribeWait(toSubscribe, mask);
+      addSubscribeWait(wait);
+    }
 
+    try
+    {
+      // send requests, more than 255 components are
+      // chunked into requests which go out together
+      Msg[] responses = requests(makeBatchReqs('s', toSubscribe, mask));
+      for (int i=0; i<responses.length; ++i)
+        responses[i].checkResponse('S');
+      if (wait == null) return; // async
+
+      // each response tells us how many components
+      // the server will send subscription events for
+      int expected = 0;
+      for (int i=0; i<responses.length; ++i)
+        expected += responses[i].u1();
+      wait.await(expected, timeout);
+    }
+    finally
+    {
+      if (wait != null) removeSubscribeWait(wait);
+    }
+  }
+
+  /**
+   * Build batch subscribe or unsubscribe requests for the
+   * components, with at most 255 ids per request since
+   * the count is a u1.
+   */
+  private static Msg[] makeBatchReqs(int cmd, SoxComponent[] comps, int mask)
+  {
+    Msg[] reqs = new Msg[(comps.length + 254) / 255];
+    for (int r=0; r<reqs.length; ++r)
+    {
+      int off = r * 255;
+      int n = Math.min(255, comps.length - off);
+      Msg req = Msg.prepareRequest(cmd);
+      req.u1(mask);
+      req.u1(n);
+      for (int i=0; i<n; ++i)
+        req.u2(comps[off+i].id);
+      reqs[r] = req;
+    }
+    return reqs;
+  }
+
+  private void addSubscribeWait(SubscribeWait w)
+  {
     synchronized (subscribeSyncLock)
     {
-      boolean[] syncState = new boolean[toSubscribe.length];
-      long lastEvent = Env.ticks();
-      int remaining = response.u1();
-      while ((remaining > 0) &&
-             (lastEvent + timeout > Env.ticks()))
+      for (int i=0; i<w.ids.length; ++i)
       {
-        subscribeSyncLock.wait(250);
-        for (int i=0; i<toSubscribe.length; ++i)
-        {
-          // skip components we have already determined to be subscribed
-          if (syncState[i]) continue;
+        Integer key = new Integer(w.ids[i]);
+        ArrayList list = (ArrayList)subscribeWaits.get(key);
+        if (list == null) subscribeWaits.put(key, list = new ArrayList(1));
+        list.add(w);
+      }
+    }
+  }
 
-          SoxComponent cacheComp = cache(toSubscribe[i].id);
-          if (cacheComp == null) continue;
-          if ((syncState[i] = ((cacheComp.subscription() & mask) == mask)))
-          {
-            --remaining;
-            lastEvent = System.currentTimeMillis();
-          }
+  private void removeSubscribeWait(SubscribeWait w)
+  {
+    synchronized (subscribeSyncLock)
+    {
+      for (int i=0; i<w.ids.length; ++i)
+      {
+        Integer key = new Integer(w.ids[i]);
+        ArrayList list = (ArrayList)subscribeWaits.get(key);
+        if (list == null) continue;
+        list.remove(w);
+        if (list.isEmpty()) subscribeWaits.remove(key);
+      }
+    }
+  }
+
+  /**
+   * SubscribeWait counts down the components of a synchronous
+   * subscribe as their subscription events arrive.  It is
+   * indexed by component id in subscribeWaits, so each event
+   * only touches the waits for its own component.
+   */
+  final class SubscribeWait
+  {
+    SubscribeWait(SoxComponent[] comps, int mask)
+    {
+      this.mask = mask;
+      this.ids  = new int[comps.length];
+      for (int i=0; i<comps.length; ++i)
+      {
+        ids[i] = comps[i].id;
+        pending.add(new Integer(ids[i]));
+      }
+    }
+
+    /**
+     * Called with subscribeSyncLock held when a
+     * component gains a subscription category.
+     */
+    void subscribed(SoxComponent c)
+    {
+      if ((c.subscription & mask) != mask) return;
+      if (!pending.remove(new Integer(c.id))) return;
+      counted++;
+      lastEvent = Env.ticks();
+    }
+
+    /**
+     * Wait until expected components are subscribed, or
+     * timeout ms pass without any progress.
+     */
+    void await(int expected, long timeout)
+      throws InterruptedException
+    {
+      synchronized (subscribeSyncLock)
+      {
+        lastEvent = Env.ticks();
+        while (counted < expected && !pending.isEmpty())
+        {
+          long left = lastEvent + timeout - Env.ticks();
+          if (left <= 0) break;
+          subscribeSyncLock.wait(left);
         }
       }
     }
+
+    final int mask;
+    final int[] ids;
+    final HashSet pending = new HashSet();  // Integer ids not yet counted
+    int counted;
+    long lastEvent;
   }
 
   /**
@@ -688,12 +1064,7 @@ public class SoxClient
   private void batchUnsubscribe(SoxComponent[] comps, int mask)
     throws Exception
   {
-    Msg req = Msg.prepareRequest('u');
-    req.u1(mask);
-    req.u1(comps.length);
-    for (int i=0; i<comps.length; ++i)
-      req.u2(comps[i].id);
-    request(req);
+    requests(makeBatchReqs('u', comps, mask));
   }
 
   private void doUnsubscribe(SoxComponent[] comps, int mask)
@@ -728,11 +1099,7 @@ public class SoxClient
     if (!Component.testMode) slot.assertValue(arg);
 
     // build request
-    Msg req = Msg.prepareRequest('i');
-    req.u2(compId);
-    req.u1(slot.id);
-    if (arg != null)
-      arg.encodeBinary(req);
+    Msg req = Msg.makeInvokeReq(compId, slot, arg);
 
     // send request
     Msg res = request(req);
@@ -748,7 +1115,7 @@ public class SoxClient
   /**
    * Write a property.
    */
-  public synchronized void write(SoxComponent comp, Slot slot, Value val)
+  public void write(SoxComponent comp, Slot slot, Value val)
     throws Exception
   {
     checkMine(comp);
@@ -758,16 +1125,17 @@ public class SoxClient
   /**
    * Write a property using raw component id.
    */
-  public synchronized void write(int compId, Slot slot, Value val)
+  public void write(int compId, Slot slot, Value val)
     throws Exception
   {
+    // route through coalescer if enabled
+    SoxCoalescer c = this.coalescer;
+    if (c != null) { c.write(compId, slot, val).join(); return; }
+
     if (!Component.testMode) slot.assertValue(val);
 
     // build request
-    Msg req = Msg.prepareRequest('w');
-    req.u2(compId);
-    req.u1(slot.id);
-    val.encodeBinary(req);
+    Msg req = Msg.makeWriteReq(compId, slot, val);
 
     // send request
     Msg res = request(req);
@@ -786,6 +1154,25 @@ public class SoxClient
    */
   public synchronized SoxComponent add(SoxComponent parent, Type type, String name, Value[] configValues)
     throws Exception
+  {
+    // check arguments
+    type = checkAdd(parent, type, name, configValues);
+
+    // build request
+    Msg req = Msg.makeAddReq(parent, type, name, configValues);
+
+    // send request
+    Msg res = request(req);
+
+    // parse response and update data structures
+    return applyAdd(res, parent, type, name, configValues);
+  }
+
+  /**
+   * Validate the arguments to add and return the
+   * type resolved against our schema.
+   */
+  Type checkAdd(SoxComponent parent, Type type, String name, Value[] configValues)
   {
     // check name
     Component.assertName(name);
@@ -824,20 +1211,16 @@ public class SoxClient
       if (prop.isAsStr() ? tid != Type.strId : prop.type.id != tid)
         throw new IllegalArgumentException("Config props don't match type's definition: " + type + " (" + props[i].name + " " + props[i].type + " != " + configValues[i].getClass().getName() + ")");
     }
+    return type;
+  }
 
-    // build request
-    Msg req = Msg.prepareRequest('a');
-    req.u2(parent.id);
-    req.u1(type.kit.id);
-    req.u1(type.id);
-    req.str(name);
-    for (int i=0; i<configValues.length; ++i)
-      configValues[i].encodeBinary(req);
-
-    // send request
-    Msg res = request(req);
-
-    // parse response
+  /**
+   * Parse an add response and add the new component to our cache.
+   */
+  SoxComponent applyAdd(Msg res, SoxComponent parent, Type type, String name, Value[] configValues)
+    throws Exception
+  {
+    Slot[] props = type.configProps();
     res.checkResponse('A');
     int compId = res.u2();
 
@@ -1010,12 +1393,19 @@ public class SoxClient
   public synchronized Link[] links(int compId)
     throws Exception
   {
-    Msg req = Msg.prepareRequest('c');
-    req.u2(compId);
-    req.u1('l');
+    Msg req = Msg.makeUpdateReq(compId, 'l');
 
     Msg res = request(req);
 
+    return parseLinks(res, compId);
+  }
+
+  /**
+   * Parse a links response for the given component.
+   */
+  static Link[] parseLinks(Msg res, int compId)
+    throws Exception
+  {
     res.checkResponse('C');
     int resCompId = res.u2();
     if (resCompId != compId)
@@ -1053,15 +1443,21 @@ public class SoxClient
     throws Exception
   {
     // build request
-    Msg req = Msg.prepareRequest('q');
-    req.u1('s');
-    req.u1(serviceType.kit.id);
-    req.u1(serviceType.id);
+    Msg req = Msg.makeQueryServiceReq(serviceType);
 
     // send request
     Msg res = request(req);
 
     // parse response
+    return parseQueryService(res);
+  }
+
+  /**
+   * Parse a service query response into its component ids.
+   */
+  static int[] parseQueryService(Msg res)
+    throws Exception
+  {
     res.checkResponse('Q');
     int[] temp = new int[256];
     int n = 0;
@@ -1087,6 +1483,8 @@ public class SoxClient
    * specified headers.  Return the response headers.
    * Standard headers:
    *   - chunkSize: client's preference for chunk size in bytes
+   *   - retries: reopens for missing chunks after a stall (default 3)
+   *   - resume: "true" to resume from a ".part" file next to a local file
    */
   public synchronized Properties getFile(String uri, SoxFile file,
                                          Properties headers,
@@ -1221,6 +1619,13 @@ public class SoxClient
       synchronized (subscribeSyncLock)
       {
         sc.subscription |= mask;
+
+        // count down any synchronous subscribes
+        // waiting on this component
+        ArrayList waits = (ArrayList)subscribeWaits.get(new Integer(sc.id));
+        if (waits == null) return;
+        for (int i=0; i<waits.size(); ++i)
+          ((SubscribeWait)waits.get(i)).subscribed(sc);
         subscribeSyncLock.notifyAll();
       }
     }
@@ -1316,6 +1721,52 @@ public class SoxClient
     return comm().request(reqs);
   }
 
+  /**
+   * Coalesce readProp and write calls issued within window ms of
+   * each other into batches of up to max requests, or turn
+   * coalescing off if window is negative.
+   */
+  public void setCoalescing(long window, int max)
+  {
+    this.coalescer = window < 0 ? null : new SoxCoalescer(this, window, max);
+  }
+
+  /**
+   * Store the primitive properties of components cached from now
+   * on compactly, so events decode into them without allocating.
+   * See Component.compactStorage.
+   */
+  public void setCompactStorage(boolean compact)
+  {
+    this.compactStorage = compact;
+  }
+
+  /**
+   * Get the coalescer used by readProp and write or null if off.
+   */
+  public SoxCoalescer coalescer()
+  {
+    return coalescer;
+  }
+
+  /**
+   * Deliver SoxComponentListener callbacks on the given dispatcher's
+   * worker threads instead of the SoxReceiver thread, or inline
+   * again if null.  A dispatcher may be shared by many clients.
+   */
+  public void setEventDispatcher(SoxEventDispatcher dispatcher)
+  {
+    this.dispatcher = dispatcher;
+  }
+
+  /**
+   * Get the dispatcher for listener callbacks or null if inline.
+   */
+  public SoxEventDispatcher eventDispatcher()
+  {
+    return dispatcher;
+  }
+
 //////////////////////////////////////////////////////////////////////////
 // Listeners
 //////////////////////////////////////////////////////////////////////////
@@ -1383,6 +1834,194 @@ public class SoxClient
     out.flush();
   }
 
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    KitPart[] parts =
+    {
+      new KitPart("sys",          0x0a0a0001),
+      new KitPart("testResolveB", 0x0b0b0002),
+      new KitPart("testResolveC", 0x0c0c0003),
+      new KitPart("testResolveD", 0x0d0d0004),
+    };
+    ManifestDevice device = new ManifestDevice();
+    try
+    {
+      testResolveMissing(device, parts);
+    }
+    finally
+    {
+      device.close();
+      // only remove the test manifests, the kit directory
+      // itself just if nothing else is in it
+      for (int i=0; i<parts.length; ++i)
+      {
+        File f = ManifestDb.toFile(parts[i]);
+        ManifestDb.cache().remove(parts[i].key);
+        f.delete();
+        new File(f.getParentFile(), parts[i].key + ".bin").delete();
+        f.getParentFile().delete();
+      }
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.println("  SoxClient Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private static void testResolveMissing(ManifestDevice device, KitPart[] parts)
+    throws Exception
+  {
+    // the zip only has sys, so B and C are fetched one at a time
+    device.parts = new KitPart[] { parts[0], parts[1], parts[2] };
+    device.zip(new KitPart[] { parts[0] });
+    device.serve(parts[1]);
+    device.serve(parts[2]);
+    Schema schema = device.connect().readSchema();
+    try
+    {
+      verify(schema.kits.length == 3);
+      verify(schema.kit("testResolveB").checksum == 0x0b0b0002);
+      verify(device.uris().equals("m:m.zip m:" + parts[1] + ".xml m:" + parts[2] + ".xml"));
+      verify(schema.kits[0].manifest == ManifestDb.cache().get(parts[0].key));
+      for (int i=0; i<3; ++i)
+      {
+        verify(ManifestDb.toFile(parts[i]).exists());
+        verify(ManifestDb.cache().get(parts[i].key) != null);
+      }
+    }
+    finally
+    {
+      Schema.cache().remove(schema.key);
+    }
+
+    // no zip, and D isn't available from the device
+    device.parts = new KitPart[] { parts[0], parts[3] };
+    device.zip(null);
+    try
+    {
+      device.connect().readSchema();
+      verify(false);
+    }
+    catch (Schema.MissingKitManifestException e)
+    {
+      verify(e.parts.length == 1 && e.parts[0].equals(parts[3]));
+      verify(e.getCause() != null && e.getCause().getMessage().indexOf(parts[3] + " (cannot fetch") > 0);
+    }
+    verify(device.uris().equals("m:m.zip m:" + parts[3] + ".xml"));
+    verify(!ManifestDb.toFile(parts[3]).exists());
+  }
+
+  /**
+   * ManifestDevice reports a schema of kits and serves
+   * their manifests as files.
+   */
+  static class ManifestDevice extends FileTransfer.FileDevice
+  {
+    ManifestDevice() throws Exception { super(new byte[0]); }
+
+    Msg respond(Msg req)
+    {
+      if (req.bytes[0] == 'v')
+      {
+        Msg res = new Msg();
+        res.u1('V');
+        res.u1(req.bytes[1] & 0xff);
+        res.u1(parts.length);
+        for (int i=0; i<parts.length; ++i) { res.str(parts[i].name); res.i4(parts[i].checksum); }
+        return res;
+      }
+
+      if (req.bytes[0] == 'f')
+      {
+        String uri;
+        try { req.u1(); req.u1(); req.str(); uri = req.str(); req.seek(0); }
+        catch (IOException e) { throw new RuntimeException(e.toString()); }
+
+        byte[] file;
+        synchronized (this)
+        {
+          uris.append(uris.length() == 0 ? "" : " ").append(uri);
+          file = (byte[])files.get(uri);
+        }
+        if (file == null)
+        {
+          Msg res = new Msg();
+          res.u1('!');
+          res.u1(req.bytes[1] & 0xff);
+          res.str("not found");
+          return res;
+        }
+        data = file;
+      }
+      return super.respond(req);
+    }
+
+    void serve(KitPart part)
+      throws Exception
+    {
+      serve("m:" + part + ".xml", xml(part));
+    }
+
+    synchronized void serve(String uri, byte[] file)
+    {
+      files.put(uri, file);
+    }
+
+    void zip(KitPart[] parts)
+      throws Exception
+    {
+      if (parts == null) { synchronized (this) { files.remove("m:m.zip"); } return; }
+      java.io.ByteArrayOutputStream buf = new java.io.ByteArrayOutputStream();
+      java.util.zip.ZipOutputStream out = new java.util.zip.ZipOutputStream(buf);
+      for (int i=0; i<parts.length; ++i)
+      {
+        out.putNextEntry(new java.util.zip.ZipEntry("manifests/" + parts[i] + ".xml"));
+        out.write(xml(parts[i]));
+        out.closeEntry();
+      }
+      out.close();
+      synchronized (this) { files.put("m:m.zip", buf.toByteArray()); }
+    }
+
+    /**
+     * Files requested since last called.
+     */
+    synchronized String uris()
+    {
+      String s = uris.toString();
+      uris.setLength(0);
+      return s;
+    }
+
+    static byte[] xml(KitPart part)
+    {
+      KitManifest km = new KitManifest(part.name);
+      km.checksum = part.checksum;
+      km.types = new sedona.manifest.TypeManifest[0];
+      java.io.ByteArrayOutputStream buf = new java.io.ByteArrayOutputStream();
+      sedona.xml.XWriter out = new sedona.xml.XWriter(buf);
+      km.encodeXml(out);
+      out.close();
+      return buf.toByteArray();
+    }
+
+    volatile KitPart[] parts = new KitPart[0];
+    private final HashMap files = new HashMap();  // uri -> byte[]
+    private final StringBuffer uris = new StringBuffer();
+  }
+
+  private static void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
 //////////////////////////////////////////////////////////////////////////
 // Fields
 //////////////////////////////////////////////////////////////////////////
@@ -1401,5 +2040,9 @@ public class SoxClient
 
   SoxUtil util;
   private final Object subscribeSyncLock = new Object();
+  private final HashMap subscribeWaits = new HashMap();  // Integer id -> ArrayList of SubscribeWait
+  private volatile SoxCoalescer coalescer;
+  volatile SoxEventDispatcher dispatcher;
+  volatile boolean compactStorage;
 
 }
@@ -0,0 +1,327 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.sox;
+
+import java.util.ArrayList;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import sedona.*;
+
+/**
+ * SoxCoalescer collects readProp and write requests issued within a
+ * short window and sends them together as one batch through the
+ * SoxExchange, then fans each response back out to its own SoxFuture.
+ * The first request into an empty queue starts the window; the queue
+ * is flushed when the window expires or it holds max requests.  It is
+ * enabled with SoxClient.setCoalescing, which routes the blocking
+ * readProp and write calls through it, or used directly for futures.
+ * Coalescing only pays off when requests overlap in time - many
+ * threads calling the client or one thread issuing futures - since a
+ * lone blocking caller just waits out the window.  Expired windows are
+ * flushed on one timer thread shared by every coalescer; that never
+ * blocks, since SoxExchange.requestAsync queues whatever can't be sent
+ * at once, so a client stuck on a slow device doesn't hold up the
+ * flushes of the others.
+ */
+public class SoxCoalescer
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Coalesce requests to the given client for up to window ms
+   * or until max requests are queued.
+   */
+  public SoxCoalescer(SoxClient client, long window, int max)
+  {
+    if (window < 0 || max < 1) throw new IllegalArgumentException("window=" + window + " max=" + max);
+    this.client = client;
+    this.window = window;
+    this.max    = max;
+  }
+
+////////////////////////////////////////////////////////////////
+// Requests
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Queue a property read, completes with its Value.
+   */
+  public SoxFuture readProp(int compId, Slot slot)
+  {
+    return enqueue(Msg.makeReadPropReq(compId, slot), AsyncSoxClient.readPropCall(slot));
+  }
+
+  /**
+   * Queue a property write, completes with null.
+   */
+  public SoxFuture write(int compId, Slot slot, Value val)
+  {
+    if (!Component.testMode) slot.assertValue(val);
+    return enqueue(Msg.makeWriteReq(compId, slot, val), new AsyncSoxClient.Check(1, 'W'));
+  }
+
+  /**
+   * Send everything queued now without waiting out the window.
+   */
+  public void flush()
+  {
+    Flush batch;
+    synchronized (this)
+    {
+      if (queue.size() == 0) return;
+      if (task != null) { task.cancel(); task = null; }
+      batch = new Flush(queue);
+      queue = new ArrayList();
+    }
+    batch.send();
+  }
+
+  /**
+   * Number of requests queued so far.
+   */
+  public synchronized int numRequests() { return numRequests; }
+
+  /**
+   * Number of batches sent, which is the number of round
+   * trips the requests took.
+   */
+  public synchronized int numFlushes() { return numFlushes; }
+
+  /**
+   * Queue a request to complete the given call.
+   */
+  SoxFuture enqueue(Msg req, AsyncSoxClient.Call call)
+  {
+    call.req = req;
+    boolean full;
+    synchronized (this)
+    {
+      numRequests++;
+      queue.add(call);
+      full = queue.size() >= max;
+      if (!full && task == null)
+      {
+        task = new TimerTask() { public void run() { flush(); } };
+        timer.schedule(task, window);
+      }
+    }
+    if (full) flush();
+    return call.future;
+  }
+
+////////////////////////////////////////////////////////////////
+// Flush
+////////////////////////////////////////////////////////////////
+
+  /**
+   * One batch of coalesced requests whose responses
+   * are handed to the call each came from.
+   */
+  final class Flush extends SoxExchange.Batch
+  {
+    Flush(ArrayList calls)
+    {
+      super(calls.size());
+      this.calls = (AsyncSoxClient.Call[])calls.toArray(new AsyncSoxClient.Call[calls.size()]);
+    }
+
+    void send()
+    {
+      synchronized (SoxCoalescer.this) { numFlushes++; }
+      Msg[] reqs = new Msg[calls.length];
+      for (int i=0; i<reqs.length; ++i) reqs[i] = calls[i].req;
+      try
+      {
+        ISoxComm comm = client.comm();
+        if (!(comm instanceof SoxExchange))
+          throw new UnsupportedOperationException("SoxCoalescer requires SoxExchange");
+        ((SoxExchange)comm).requestAsync(reqs, this);
+      }
+      catch (Exception e)
+      {
+        failed(e);
+      }
+    }
+
+    void done()
+    {
+      for (int i=0; i<calls.length; ++i)
+      {
+        calls[i].res[0] = res[i];
+        calls[i].done();
+      }
+    }
+
+    void failed(Throwable cause)
+    {
+      for (int i=0; i<calls.length; ++i)
+        calls[i].failed(cause);
+    }
+
+    final AsyncSoxClient.Call[] calls;
+  }
+
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    LoopbackSoxDevice device = new AsyncSoxClient.LinksDevice();
+    try
+    {
+      test(device);
+    }
+    finally
+    {
+      device.close();
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.println("  SoxCoalescer Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private static void test(LoopbackSoxDevice device)
+    throws Exception
+  {
+    SoxClient client = device.connect();
+
+    // 40 back to back requests flush in batches of max 16,
+    // the last 8 when the window expires
+    SoxCoalescer c = new SoxCoalescer(client, 20, 16);
+    SoxFuture[] f = new SoxFuture[40];
+    for (int i=0; i<f.length; ++i) f[i] = links(c, 100+i);
+    for (int i=0; i<f.length; ++i) verifyLinks(f[i], 100+i);
+    verify(c.numRequests() == 40);
+    verify(c.numFlushes() == 3);
+    verify(device.numRequests() == 40);
+
+    // an error fails only its own request
+    c = new SoxCoalescer(client, 5, 255);
+    SoxFuture ok1 = links(c, 7);
+    SoxFuture bad = links(c, 998);
+    SoxFuture ok2 = links(c, 8);
+    verifyLinks(ok1, 7);
+    verifyLinks(ok2, 8);
+    try { bad.join(); verify(false); } catch (SoxException e) { verify(true); }
+    verify(c.numFlushes() == 1);
+
+    // explicit flush
+    c = new SoxCoalescer(client, 60000, 255);
+    f[0] = links(c, 9);
+    verify(!f[0].isDone());
+    c.flush();
+    verifyLinks(f[0], 9);
+    c.flush();
+    verify(c.numFlushes() == 1);
+
+    // many threads blocking on their own requests share round trips
+    final SoxCoalescer shared = new SoxCoalescer(client, 5, 255);
+    final Throwable[] errors = new Throwable[8];
+    Thread[] threads = new Thread[errors.length];
+    for (int i=0; i<threads.length; ++i)
+    {
+      final int id = i;
+      threads[i] = new Thread("SoxCoalescer.test")
+      {
+        public void run()
+        {
+          try
+          {
+            for (int j=0; j<10; ++j)
+              verifyLinks(links(shared, 1000 + id*10 + j), 1000 + id*10 + j);
+          }
+          catch (Throwable e)
+          {
+            errors[id] = e;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (int i=0; i<threads.length; ++i) threads[i].join();
+    for (int i=0; i<errors.length; ++i)
+      if (errors[i] != null) throw new RuntimeException("thread " + i + " failed: " + errors[i]);
+    verify(shared.numRequests() == 80);
+    verify(shared.numFlushes() < 80);
+
+    // a client with every reply number stuck on a device which
+    // never answers doesn't hold up the window flushes of others
+    LoopbackSoxDevice mute = new SoxFleet.MuteDevice();
+    try
+    {
+      SoxClient stuck = mute.connect();
+      SoxCoalescer s = new SoxCoalescer(stuck, 1, 255);
+      SoxExchange x = (SoxExchange)stuck.comm();
+      for (int i=0; i<265; ++i) links(s, 100+i);
+      long deadline = System.currentTimeMillis() + 2000;
+      while (x.numPending() < 255 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+      Thread.sleep(20);
+      verify(x.numPending() == 255 && x.numQueued() >= 10);
+      c = new SoxCoalescer(client, 5, 255);
+      f[0] = links(c, 11);
+      try { f[0].get(2, TimeUnit.SECONDS); } catch (TimeoutException e) { verify(false); }
+      verifyLinks(f[0], 11);
+      stuck.close();
+    }
+    finally
+    {
+      mute.close();
+    }
+
+    // close fails queued requests
+    c = new SoxCoalescer(client, 60000, 255);
+    f[0] = links(c, 10);
+    client.close();
+    c.flush();
+    try { f[0].join(); verify(false); } catch (SoxException e) { verify(true); }
+  }
+
+  private static SoxFuture links(SoxCoalescer c, int compId)
+  {
+    return c.enqueue(Msg.makeUpdateReq(compId, 'l'), AsyncSoxClient.linksCall(compId));
+  }
+
+  private static void verifyLinks(SoxFuture f, int compId)
+    throws Exception
+  {
+    Link[] links = (Link[])f.join();
+    verify(links.length == 1 && links[0].toCompId == compId && links[0].fromCompId == compId+1);
+  }
+
+  private static synchronized void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  private static final Timer timer = new Timer("SoxCoalescer.Timer", true);
+
+  public final long window;  // ms
+  public final int max;      // requests per batch
+
+  private final SoxClient client;
+  private ArrayList queue = new ArrayList();  // Calls waiting to flush
+  private TimerTask task;                     // pending flush or null
+  private int numRequests;
+  private int numFlushes;
+}
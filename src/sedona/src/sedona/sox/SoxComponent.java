@@ -35,6 +35,7 @@ public class SoxComponent
     super(type);
     this.client = client;
     this.id = id;
+    if (client != null && client.compactStorage) compactStorage();
   }
 
 //////////////////////////////////////////////////////////////////////////
@@ -235,10 +236,18 @@ public class SoxComponent
   }
 
   /**
-   * Fire a changed event on the listener.
+   * Fire a changed event on the listener, handing it to
+   * the client's SoxEventDispatcher if it has one.
    */
   public void fireChanged(int mask)
   {                          
+    SoxEventDispatcher d = client != null ? client.dispatcher : null;
+    if (d != null && listener != null)
+    {
+      d.fire(this, mask);
+      return;
+    }
+
     try
     {                 
       if (listener != null)
@@ -0,0 +1,370 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.sox;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * SoxEventDispatcher delivers SoxComponentListener callbacks on a small
+ * pool of worker threads instead of the SoxReceiver thread, so a slow
+ * listener can't stall responses, acks, and file chunks.  Events are
+ * still decoded and applied to the cache by the receiver; only the
+ * changed callbacks are handed off.  Each component has at most one
+ * pending delivery: while it waits or its listener is running, further
+ * changes are merged into its mask, so a slow listener sees the latest
+ * values once instead of a backlog.  Callbacks for one component are
+ * never concurrent and never reordered.  One dispatcher may be shared
+ * by many SoxClients:
+ *
+ * <pre>
+ *   SoxEventDispatcher d = new SoxEventDispatcher(4);
+ *   client.setEventDispatcher(d);
+ * </pre>
+ */
+public class SoxEventDispatcher
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Start a dispatcher with the given number of worker threads.
+   */
+  public SoxEventDispatcher(int threads)
+  {
+    if (threads < 1) throw new IllegalArgumentException("threads=" + threads);
+    workers = new Thread[threads];
+    for (int i=0; i<threads; ++i)
+    {
+      workers[i] = new Worker(i);
+      workers[i].start();
+    }
+  }
+
+  /**
+   * Stop the worker threads, pending callbacks are dropped.
+   */
+  public void stop()
+  {
+    synchronized (this)
+    {
+      stopped = true;
+      ready.clear();
+      entries.clear();
+      notifyAll();
+    }
+    for (int i=0; i<workers.length; ++i) workers[i].interrupt();
+  }
+
+////////////////////////////////////////////////////////////////
+// Fire
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Queue a changed callback for the component's listener.
+   */
+  void fire(SoxComponent c, int mask)
+  {
+    post(c, mask, null);
+  }
+
+  /**
+   * Merge mask into the pending delivery for key, creating it
+   * with the given entry (or a ComponentEntry if null).
+   */
+  synchronized void post(Object key, int mask, Entry entry)
+  {
+    if (stopped) return;
+    numFired++;
+
+    Entry e = (Entry)entries.get(key);
+    if (e == null)
+    {
+      e = entry != null ? entry : new ComponentEntry((SoxComponent)key);
+      e.key = key;
+      entries.put(key, e);
+    }
+    else if (e.mask != 0)
+    {
+      numCoalesced++;
+    }
+
+    e.mask |= mask;
+    if (!e.queued && !e.running)
+    {
+      e.queued = true;
+      ready.addLast(e);
+      notify();
+    }
+  }
+
+  /**
+   * Number of callbacks fired.
+   */
+  public synchronized int numFired() { return numFired; }
+
+  /**
+   * Number of callbacks delivered to listeners.
+   */
+  public synchronized int numDelivered() { return numDelivered; }
+
+  /**
+   * Number of callbacks merged into one already pending.
+   */
+  public synchronized int numCoalesced() { return numCoalesced; }
+
+  /**
+   * Number of components waiting for a worker.
+   */
+  public synchronized int numReady() { return ready.size(); }
+
+////////////////////////////////////////////////////////////////
+// Worker
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Take the next ready entry, blocking until there is one;
+   * return null once stopped.
+   */
+  private synchronized Entry take()
+  {
+    while (!stopped && ready.isEmpty())
+    {
+      try { wait(); } catch (InterruptedException e) {}
+    }
+    if (stopped) return null;
+    Entry e = (Entry)ready.removeFirst();
+    e.queued  = false;
+    e.running = true;
+    return e;
+  }
+
+  /**
+   * Finish a delivery; requeue the entry if more changes
+   * came in while its listener ran, else forget it.
+   */
+  private synchronized void finish(Entry e)
+  {
+    e.running = false;
+    numDelivered++;
+    if (stopped) return;
+    if (e.mask != 0)
+    {
+      e.queued = true;
+      ready.addLast(e);
+      notify();
+    }
+    else
+    {
+      entries.remove(e.key);
+    }
+  }
+
+  final class Worker extends Thread
+  {
+    Worker(int i)
+    {
+      super("SoxEventDispatcher-" + i);
+      setDaemon(true);
+    }
+
+    public void run()
+    {
+      while (true)
+      {
+        Entry e = take();
+        if (e == null) return;
+        int mask;
+        synchronized (SoxEventDispatcher.this)
+        {
+          mask = e.mask;
+          e.mask = 0;
+        }
+        try
+        {
+          e.deliver(mask);
+        }
+        catch (Throwable x)
+        {
+          x.printStackTrace();
+        }
+        finish(e);
+      }
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// Entry
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Pending delivery for one key.
+   */
+  abstract static class Entry
+  {
+    abstract void deliver(int mask);
+
+    Object key;       // key in entries
+    int mask;         // merged changes not yet delivered
+    boolean queued;   // in ready list
+    boolean running;  // being delivered by a worker
+  }
+
+  static final class ComponentEntry extends Entry
+  {
+    ComponentEntry(SoxComponent c) { this.c = c; }
+
+    void deliver(int mask)
+    {
+      SoxComponentListener l = c.listener;
+      if (l != null) l.changed(c, mask);
+    }
+
+    final SoxComponent c;
+  }
+
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    SoxEventDispatcher d = new SoxEventDispatcher(4);
+    try
+    {
+      d.test();
+    }
+    finally
+    {
+      d.stop();
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.println("  SoxEventDispatcher Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private void test()
+    throws Exception
+  {
+    // a slow listener gets its changes merged into one callback
+    TestEntry slow = new TestEntry(50);
+    post("slow", 0x1, slow);
+    waitFor(slow, 1, true);
+    post("slow", 0x2, slow);
+    post("slow", 0x4, slow);
+    post("slow", 0x2, slow);
+    waitFor(slow, 2, false);
+    verify(slow.masks.size() == 2);
+    verify(((Integer)slow.masks.get(0)).intValue() == 0x1);
+    verify(((Integer)slow.masks.get(1)).intValue() == 0x6);
+    verify(numCoalesced() >= 2);
+    verify(slow.maxConcurrent == 1);
+
+    // and doesn't hold up other components
+    TestEntry fast = new TestEntry(0);
+    post("slow", 0x1, slow);
+    waitFor(slow, 3, true);
+    post("fast", 0x8, fast);
+    waitFor(fast, 1, false);
+    verify(slow.busy);
+    waitIdle(slow);
+
+    // many components fired concurrently are each delivered in
+    // order without overlapping themselves
+    TestEntry[] many = new TestEntry[20];
+    for (int i=0; i<many.length; ++i) many[i] = new TestEntry(1);
+    for (int j=0; j<50; ++j)
+      for (int i=0; i<many.length; ++i)
+        post("many" + i, 1 << (j % 4), many[i]);
+    for (int i=0; i<many.length; ++i)
+    {
+      waitIdle(many[i]);
+      verify(many[i].maxConcurrent == 1);
+      int all = 0;
+      for (int k=0; k<many[i].masks.size(); ++k) all |= ((Integer)many[i].masks.get(k)).intValue();
+      verify(all == 0xf);
+    }
+    synchronized (this) { verify(entries.isEmpty() && ready.isEmpty()); }
+    verify(numFired() == numDelivered() + numCoalesced());
+  }
+
+  private void waitFor(TestEntry e, int n, boolean running)
+    throws Exception
+  {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline)
+    {
+      synchronized (e) { if (e.masks.size() >= n && (!running || e.busy)) return; }
+      Thread.sleep(1);
+    }
+    verify(false);
+  }
+
+  private void waitIdle(TestEntry e)
+    throws Exception
+  {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline)
+    {
+      synchronized (this) { if (!entries.containsKey(e.key)) return; }
+      Thread.sleep(1);
+    }
+    verify(false);
+  }
+
+  static class TestEntry extends Entry
+  {
+    TestEntry(long sleep) { this.sleep = sleep; }
+
+    void deliver(int mask)
+    {
+      synchronized (this)
+      {
+        masks.add(new Integer(mask));
+        busy = true;
+        if (++concurrent > maxConcurrent) maxConcurrent = concurrent;
+      }
+      try { if (sleep > 0) Thread.sleep(sleep); } catch (InterruptedException e) {}
+      synchronized (this)
+      {
+        concurrent--;
+        busy = false;
+      }
+    }
+
+    final long sleep;
+    final java.util.ArrayList masks = new java.util.ArrayList();
+    volatile boolean busy;
+    int concurrent;
+    int maxConcurrent;
+  }
+
+  private static synchronized void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  private final Thread[] workers;
+  private final HashMap entries = new HashMap();        // key -> Entry
+  private final LinkedList ready = new LinkedList();    // Entries waiting for a worker
+  private boolean stopped;
+  private int numFired;
+  private int numDelivered;
+  private int numCoalesced;
+}
@@ -9,10 +9,13 @@
 package sedona.sox;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Properties;
 
-import sedona.dasp.DaspMsg;
+import sedona.dasp.DaspMessage;
 import sedona.dasp.DaspSession;
 import sedona.dasp.DaspSocket;
 
@@ -73,62 +76,221 @@ public class SoxExchange
    * we receive a response for each one.  The reply numbers
    * of all the requests will be automatically set (but the caller
    * must have left a one byte spacer).  The requests may be
-   * processed out of order on the other side.  There can only
-   * be one batch of requests outstanding (this entire method
-   * will block all but one caller).
+   * processed out of order on the other side.  Reply numbers
+   * are allocated from a table shared by all callers, so any
+   * number of batches may be outstanding at once; requests
+   * beyond the 255 reply numbers in flight are queued.
    */
   public Msg[] request(Msg[] req)
     throws Exception
   {
-    checkOpen();
+    Batch batch = new Batch(req.length);
+    try
+    {
+      requestAsync(req, batch);
 
-    // if we have more than 255, break it up into chunks of 255
-    if (req.length > 0xff) 
-      return chunkRequests(req);
+      // wait until we receive all the responses or timeout
+      synchronized (batch)
+      {
+        while (batch.remaining > 0)
+        {
+          // wait a bit - dispatcher thread should wake us up
+          try { batch.wait(500); } catch(InterruptedException e) {}
+          if (batch.error != null) throw new SoxException(batch.error.getMessage());
+          checkOpen();
+        }
+      }
+      return batch.res;
+    }
+    finally
+    {
+      // if we bailed out early give back our reply numbers
+      if (batch.remaining > 0) cancel(batch);
+    }
+  }
 
-    synchronized (this)
+  /**
+   * Send the specified batch of requests without waiting for
+   * the responses.  Once they have all arrived the SoxReceiver
+   * thread calls batch.done, or batch.failed if the session
+   * closes or a send fails first.  This never blocks: requests
+   * which can't go out at once because all 255 reply numbers are
+   * in flight or the send window is full are queued, and sent in
+   * order by a Sender thread as soon as they can be.  So it is
+   * safe to call from the SoxReceiver thread.
+   */
+  void requestAsync(Msg[] req, Batch batch)
+    throws Exception
+  {
+    checkOpen();
+    if (req.length == 0) { batch.done(); return; }
+
+    synchronized (sendQueue)
     {
-      // assign reply numbers, all req/res messages look like:
-      //   [0] u1 command
-      //   [1] u1 replyNum
       for (int i=0; i<req.length; ++i)
-        req[i].setReplyNum(i);  
+        sendQueue.addLast(new Queued(req[i], batch, i));
 
-      // set req/res fields and init times
-      this.requests = req;
-      this.responses = new Msg[req.length];
+      // whoever is draining the queue will send ours too
+      if (draining) return;
+      draining = true;
+    }
+    drain(false);
+  }
 
-      // send them on their way; this call will block if we fill
-      // up our send window, but that is ok because the SoxReceiver
-      // should still be pulling off the responses and sticking
-      // them into our responses array
-      for (int i=0; i<req.length; ++i)
+  /**
+   * Stop waiting on the given batch, drop its requests still
+   * queued and give back any of its reply numbers still in
+   * flight.  Return false if the batch had none outstanding.
+   */
+  boolean cancel(Batch batch)
+  {
+    batch.cancelled = true;
+    int n = unqueue(batch);
+    return freeReplyNums(batch) + n > 0;
+  }
+
+  /**
+   * Number of requests queued for a reply
+   * number or room in the send window.
+   */
+  public int numQueued()
+  {
+    synchronized (sendQueue) { return sendQueue.size(); }
+  }
+
+  /**
+   * Is a Sender thread waiting on a reply number or room in the
+   * send window, so new requests will queue up behind it.
+   */
+  public boolean isBacklogged()
+  {
+    synchronized (sendQueue) { return backlogged; }
+  }
+
+////////////////////////////////////////////////////////////////
+// Send Queue
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Send the queued requests in order until the queue is empty.
+   * If not block, stop at the first request which would block
+   * and hand the rest of the queue to a new Sender thread.  Only
+   * one thread drains at a time, which keeps requests in order.
+   */
+  private void drain(boolean block)
+  {
+    while (true)
+    {
+      Queued q;
+      synchronized (sendQueue)
       {
-        send(req[i]);
+        if (sendQueue.isEmpty()) { draining = false; backlogged = false; return; }
+        q = (Queued)sendQueue.getFirst();
       }
 
-      // wait until we receive all the responses or timeout
-      while (true)
-      {    
-        // check if we've gotten all our responses
-        boolean gotAllResponses = true;
-        for (int i=responses.length-1; i>=0; --i)
-          if (responses[i] == null) { gotAllResponses = false; break; }
-
-        // if we've gotten them all then we're done!
-        if (gotAllResponses)
+      try
+      {
+        if (!send(q, block))
         {
-          Msg[] res = this.responses;
-          this.requests  = null;
-          this.responses = null;
-          return res;
+          synchronized (sendQueue) { backlogged = true; }
+          new Sender().start();
+          return;
         }
+        synchronized (sendQueue) { sendQueue.remove(q); }
+      }
+      catch (Throwable e)
+      {
+        cancel(q.batch);
+        q.batch.failed(e);
+      }
+    }
+  }
 
-        // wait a bit - dispatcher thread should wake us up
-        try { wait(500); } catch(InterruptedException e) {}
-        checkOpen();
-      }        
-    }        
+  /**
+   * Assign the queued request a reply number and send it.
+   * Return false if not block and either would block.
+   * All req/res messages look like:
+   *   [0] u1 command
+   *   [1] u1 replyNum
+   * Each request is entered in the pending table before it
+   * is sent, so the SoxReceiver may complete it as soon as it
+   * hits the wire.
+   */
+  private boolean send(Queued q, boolean block)
+    throws Exception
+  {
+    checkOpen();
+    if (q.batch.cancelled) return true;
+    if (!q.numbered)
+    {
+      if (!allocReplyNum(q.req, q.batch, q.index, block)) return false;
+      q.numbered = true;
+    }
+
+    Msg req = q.req;
+    if (block)
+    {
+      send(req);
+      return true;
+    }
+    if (!session.trySend(req.bytes, 0, req.size)) return false;
+    if (client.traceMsg)
+      System.out.println("--> [send] " + (char)req.command() + " replyNum=" + req.replyNum());
+    return true;
+  }
+
+  /**
+   * Remove the batch's requests from the queue
+   * and return how many were removed.
+   */
+  private int unqueue(Batch batch)
+  {
+    int n = 0;
+    synchronized (sendQueue)
+    {
+      for (Iterator it = sendQueue.iterator(); it.hasNext(); )
+      {
+        if (((Queued)it.next()).batch == batch) { it.remove(); n++; }
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Request waiting in the send queue.
+   */
+  static final class Queued
+  {
+    Queued(Msg req, Batch batch, int index)
+    {
+      this.req   = req;
+      this.batch = batch;
+      this.index = index;
+    }
+
+    final Msg req;      // request to send
+    final Batch batch;  // batch it belongs to
+    final int index;    // index of req in batch
+    boolean numbered;   // reply number allocated
+  }
+
+  /**
+   * Sender drains the send queue once sending would block, so
+   * the caller of requestAsync never has to.  It is started on
+   * demand and exits once the queue is empty.
+   */
+  final class Sender extends Thread
+  {
+    Sender()
+    {
+      super("SoxExchange.Sender");
+      setDaemon(true);
+    }
+
+    public void run()
+    {
+      drain(true);
+    }
   }
 
   /**
@@ -237,6 +399,9 @@ public class SoxExchange
       e.printStackTrace();
     }
 
+    // fail anybody still waiting on a response
+    failPending(new SoxException("SoxClient closed: " + closeCause));
+
     // null out cached state
     this.session  = null;
     this.receiver = null;
@@ -284,27 +449,37 @@ public class SoxExchange
   {
     try
     {             
-      synchronized (this)
+      // parse command and reply number
+      int cmd = msg.bytes[0];
+      int replyNum = msg.bytes[1] & 0xFF;
+
+      Pending p;
+      synchronized (pendingLock)
       {
-        // parse command and reply number
-        int cmd = msg.bytes[0];
-        int replyNum = msg.bytes[1] & 0xFF;
-        int index = replyNum;
-
-        // check if replyNum is inside my current window
-        if (requests == null || responses == null ||
-            index < 0 || index >= requests.length)
-          return;
+        // check if replyNum is currently outstanding
+        if (replyNum >= pending.length) return;
+        p = pending[replyNum];
+        if (p == null) return;
 
         // verify response command code (capital of req command)
-        Msg req = requests[index];       
-        if (cmd != '!' && cmd != (req.bytes[0] & ~0x20))
-          throw new SoxException("Invalid response code " + cmd + " for " + req.bytes[0]);
+        if (cmd != '!' && cmd != (p.req.bytes[0] & ~0x20))
+          throw new SoxException("Invalid response code " + cmd + " for " + p.req.bytes[0]);
+
+        // free the reply number for the next request
+        pending[replyNum] = null;
+        numPending--;
+        if (allocWaiters > 0) pendingLock.notifyAll();
+      }
 
-        // store response and notify requestor thread
-        this.responses[index] = msg;
-        notify();           
+      // store response and notify requestor
+      Batch b = p.batch;
+      boolean done;
+      synchronized (b)
+      {
+        b.res[p.index] = msg;
+        done = --b.remaining == 0;
       }
+      if (done) b.done();
     }
     catch(Exception e)
     {
@@ -323,6 +498,8 @@ public class SoxExchange
    * specified headers.  Return the response headers.
    * Standard headers:
    *   - chunkSize: client's preference for chunk size in bytes
+   *   - retries: reopens for missing chunks after a stall (default 3)
+   *   - resume: "true" to resume from a ".part" file next to a local file
    */
   public synchronized Properties getFile(String uri, SoxFile file,
                                          Properties headers,
@@ -395,33 +572,163 @@ public class SoxExchange
     connect(null);
   }
 
+////////////////////////////////////////////////////////////////
+// Reply Numbers
+////////////////////////////////////////////////////////////////
+
   /**
-   * Break a big request into 255 request chunks since 
-   * we only have a one byte reply number.
+   * Allocate a free reply number for the given request and enter
+   * it in the pending table.  Numbers are handed out round robin
+   * so a late response to an abandoned request is unlikely to be
+   * matched to a new one.  We never use 0xff since that is what
+   * unassigned requests carry.  Block while every number is in
+   * flight, or return false if not block; since a batch bigger
+   * than the table frees its own numbers as its responses arrive,
+   * this also transparently breaks big batches into chunks of 255.
    */
-  private Msg[] chunkRequests(Msg[] req)
+  private boolean allocReplyNum(Msg req, Batch batch, int index, boolean block)
     throws Exception
-  {                       
-    int total = req.length;
-    Msg[] res = new Msg[total];
-    for (int i=0; i < total;)
-    {
-      Msg[] chunkReq = new Msg[Math.min(0xff, total-i)];
-      System.arraycopy(req, i, chunkReq, 0, chunkReq.length);
-      Msg[] chunkRes = request(chunkReq);
-      System.arraycopy(chunkRes, 0, res, i, chunkRes.length);      
-      i += chunkReq.length;
-    } 
-    return res;
-  }                   
+  {
+    synchronized (pendingLock)
+    {
+      while (numPending >= pending.length)
+      {
+        if (!block) return false;
+        allocWaiters++;
+        try { pendingLock.wait(500); } catch(InterruptedException e) {}
+        finally { allocWaiters--; }
+        checkOpen();
+      }
+
+      int replyNum = nextReplyNum;
+      while (pending[replyNum] != null)
+        replyNum = (replyNum + 1) % pending.length;
+      nextReplyNum = (replyNum + 1) % pending.length;
+
+      Pending p = new Pending();
+      p.req   = req;
+      p.batch = batch;
+      p.index = index;
+      pending[replyNum] = p;
+      numPending++;
+      req.setReplyNum(replyNum);
+    }
+    return true;
+  }
+
+  /**
+   * Free any reply numbers still held by a batch which
+   * gave up waiting on its responses, return the number freed.
+   */
+  private int freeReplyNums(Batch batch)
+  {
+    int n = 0;
+    synchronized (pendingLock)
+    {
+      for (int i=0; i<pending.length; ++i)
+      {
+        if (pending[i] != null && pending[i].batch == batch)
+        {
+          pending[i] = null;
+          numPending--;
+          n++;
+        }
+      }
+      if (allocWaiters > 0) pendingLock.notifyAll();
+    }
+    return n;
+  }
+
+  /**
+   * Free every reply number and fail the batches
+   * which held them or had requests queued.
+   */
+  private void failPending(Throwable cause)
+  {
+    ArrayList failed = new ArrayList();
+    synchronized (sendQueue)
+    {
+      for (Iterator it = sendQueue.iterator(); it.hasNext(); )
+      {
+        Batch b = ((Queued)it.next()).batch;
+        if (!failed.contains(b)) failed.add(b);
+      }
+      sendQueue.clear();
+    }
+    synchronized (pendingLock)
+    {
+      for (int i=0; i<pending.length; ++i)
+      {
+        Pending p = pending[i];
+        if (p == null) continue;
+        if (!failed.contains(p.batch)) failed.add(p.batch);
+        pending[i] = null;
+        numPending--;
+      }
+      if (allocWaiters > 0) pendingLock.notifyAll();
+    }
+    for (int i=0; i<failed.size(); ++i)
+      ((Batch)failed.get(i)).failed(cause);
+  }
+
+  /**
+   * Number of requests currently awaiting a response.
+   */
+  public int numPending()
+  {
+    synchronized (pendingLock) { return numPending; }
+  }
+
+  /**
+   * Request entered in the pending table under its reply number.
+   */
+  static final class Pending
+  {
+    Msg req;       // request sent
+    Batch batch;   // batch to complete
+    int index;     // index of req in batch
+  }
+
+  /**
+   * Responses for one batch of requests.  By default the monitor
+   * is used to wake up the thread blocked in request(Msg[]);
+   * asynchronous callers override done and failed.
+   */
+  static class Batch
+  {
+    Batch(int n) { res = new Msg[n]; remaining = n; }
+
+    /**
+     * Called once every response has arrived.
+     */
+    void done()
+    {
+      synchronized (this) { notifyAll(); }
+    }
+
+    /**
+     * Called if the session closed before every response arrived.
+     */
+    void failed(Throwable cause)
+    {
+      synchronized (this) { error = cause; notifyAll(); }
+    }
+
+    final Msg[] res;             // responses by request index
+    int remaining;               // responses not yet received
+    Throwable error;             // set by failed
+    volatile boolean cancelled;  // set by cancel
+  }
+
 
   Msg receive(long timeout)
     throws Exception
   {
-    DaspMsg rec = session.receive(timeout);
+    DaspMessage rec = session.receive(timeout);
     if (rec == null) return null;
 
     Msg msg = new Msg(rec.payload());
+    rec.release();
     if (client.traceMsg)
       System.out.println("<-- [recv] " + (char)msg.command() + " replyNum=" + msg.replyNum());
     return msg;
@@ -432,13 +739,129 @@ public class SoxExchange
     if (isClosed()) throw new SoxException("SoxClient closed: " + closeCause);
   }
 
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    LoopbackSoxDevice device = new LoopbackSoxDevice();
+    try
+    {
+      test(device);
+    }
+    finally
+    {
+      device.close();
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.println("  SoxExchange Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private static void test(LoopbackSoxDevice device)
+    throws Exception
+  {
+    final SoxClient client = device.connect();
+    final SoxExchange x = (SoxExchange)client.comm();
+
+    // single round trip
+    verifyEcho(x.request(new Msg[] { echo(7) }), 7, 1);
+    verify(x.numPending() == 0);
+
+    // batch bigger than the reply number space
+    verifyEcho(x.request(echos(1000, 600)), 1000, 600);
+    verify(x.numPending() == 0);
+
+    // many callers with batches outstanding at once which
+    // the device answers out of order
+    device.setDelay(20);
+    final Throwable[] errors = new Throwable[8];
+    Thread[] threads = new Thread[errors.length];
+    for (int i=0; i<threads.length; ++i)
+    {
+      final int id = i;
+      threads[i] = new Thread("SoxExchange.test")
+      {
+        public void run()
+        {
+          try
+          {
+            for (int j=0; j<10; ++j)
+            {
+              int tag = 100000 * (id+1) + j * 100;
+              verifyEcho(x.request(echos(tag, 10)), tag, 10);
+            }
+          }
+          catch (Throwable e)
+          {
+            errors[id] = e;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (int i=0; i<threads.length; ++i) threads[i].join();
+    for (int i=0; i<errors.length; ++i)
+      if (errors[i] != null) throw new RuntimeException("thread " + i + " failed: " + errors[i]);
+    verify(x.numPending() == 0);
+    verify(device.peakOutstanding() > 10);
+    verify(device.numRequests() == 1 + 600 + 8*10*10);
+
+    // close fails outstanding callers
+    device.setDelay(0);
+    client.close();
+    try { x.request(echo(1)); verify(false); } catch (SoxException e) { verify(true); }
+  }
+
+  private static Msg echo(int tag)
+  {
+    Msg req = Msg.prepareRequest('v');
+    req.i4(tag);
+    return req;
+  }
+
+  private static Msg[] echos(int tag, int n)
+  {
+    Msg[] req = new Msg[n];
+    for (int i=0; i<n; ++i) req[i] = echo(tag+i);
+    return req;
+  }
+
+  private static void verifyEcho(Msg[] res, int tag, int n)
+    throws Exception
+  {
+    verify(res.length == n);
+    for (int i=0; i<n; ++i)
+    {
+      res[i].checkResponse('V');
+      verify(res[i].i4() == tag+i);
+    }
+  }
+
+  private static synchronized void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
 ////////////////////////////////////////////////////////////////
 // Fields
 ////////////////////////////////////////////////////////////////
 
   SoxClient client;         // parent client
-  Msg[] requests;           // current batch of requests
-  Msg[] responses;          // current batch of responses
+
+  private final Object pendingLock = new Object();      // guards reply numbers
+  private final Pending[] pending = new Pending[0xff];  // by replyNum, 0xff unused
+  private int numPending;                                // num non-null in pending
+  private int nextReplyNum;                              // round robin allocation
+  private int allocWaiters;                              // senders blocked for a replyNum
+  private final LinkedList sendQueue = new LinkedList(); // Queued in send order
+  private boolean draining;                              // a thread is draining sendQueue
+  private boolean backlogged;                            // a Sender is draining sendQueue
 
   public final DaspSocket socket;
   public final InetAddress addr;
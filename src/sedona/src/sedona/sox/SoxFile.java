@@ -35,6 +35,17 @@ public abstract class SoxFile
     return new LocalFile(f);
   }
   
+  /**
+   * Make a SoxFile to read/write to a file on the local
+   * file system through a memory mapping.  Best for large
+   * transfers since chunks are copied straight to and from
+   * the page cache.
+   */
+  public static SoxFile makeMapped(File f)
+  {
+    return new MappedSoxFile(f);
+  }
+
   /**
    * Make a SoxFile to read/write to the given Buf. This Buf remains
    * in memory at all times.
@@ -54,8 +65,9 @@ public abstract class SoxFile
   public abstract int size();
 
   /**
-   * Open this file for I/O.  Mode is "r" for
-   * reading and "w" for writing.
+   * Open this file for I/O.  Mode is "r" for reading,
+   * "w" for writing, and "m" for writing without first
+   * truncating the file.
    */
   public abstract void open(String mode)
     throws IOException;
@@ -77,6 +89,15 @@ public abstract class SoxFile
    */
   public abstract void close();
 
+  /**
+   * Hint that a get will write size bytes once the file
+   * is open, so implementations can allocate up front.
+   */
+  void reserve(int size)
+    throws IOException
+  {
+  }
+
 ////////////////////////////////////////////////////////////////
 // LocalFile
 ////////////////////////////////////////////////////////////////
@@ -93,9 +114,10 @@ public abstract class SoxFile
     public void open(String mode)
       throws IOException
     {
-      if (mode.equals("w")) mode = "rw";
+      boolean truncate = mode.equals("w");
+      if (!mode.equals("r")) mode = "rw";
       fp = new RandomAccessFile(file, mode);
-      if (mode.indexOf('w') >= 0) fp.setLength(0);
+      if (truncate) fp.setLength(0);
     }
 
     public void read(int pos, Buf buf, int n)
@@ -0,0 +1,950 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.sox;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import sedona.Slot;
+import sedona.dasp.DaspSocket;
+import sedona.dasp.LoopbackDaspSocketInterface;
+
+/**
+ * SoxFleet polls many devices as one subsystem.  Every device gets a
+ * SoxClient session on one shared DaspSocket, which must be opened
+ * with SESSION_QUEUING.  Periodic polls are run from a single timer
+ * through AsyncSoxClient, so no thread is tied up per device, and
+ * each run is rescheduled with a random jitter so devices added
+ * together don't poll in lock step.  At most maxInFlight polls are
+ * outstanding across the fleet; polls due beyond that wait their
+ * turn.  Since the timer is shared, Poll.poll must not block; work
+ * which may, like reading the schema, goes in Poll.connected which
+ * runs on the connector thread before the session's first poll.  A
+ * device whose requests are stuck behind a full send window has its
+ * due polls failed rather than queued deeper.  Devices connect on a
+ * few connector threads and reconnect with exponential backoff when
+ * their session closes or polls keep failing.  Each device keeps
+ * poll latency and error counts.
+ *
+ * <pre>
+ *   SoxFleet fleet = new SoxFleet(socket, 16);
+ *   fleet.add(addr, 1876, "admin", "").poll(SoxFleet.Poll.update(ids, SoxComponent.RUNTIME), 5000);
+ * </pre>
+ */
+public class SoxFleet
+{
+
+////////////////////////////////////////////////////////////////
+// Constructor
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Poll devices over the given socket with at most
+   * maxInFlight polls outstanding at once.
+   */
+  public SoxFleet(DaspSocket socket, int maxInFlight)
+  {
+    this(socket, maxInFlight, DEFAULT_CONNECTORS);
+  }
+
+  /**
+   * Poll devices over the given socket with at most maxInFlight
+   * polls outstanding and the given number of connector threads.
+   */
+  public SoxFleet(DaspSocket socket, int maxInFlight, int connectors)
+  {
+    if (maxInFlight < 1 || connectors < 1)
+      throw new IllegalArgumentException("maxInFlight=" + maxInFlight + " connectors=" + connectors);
+    this.socket = socket;
+    this.maxInFlight = maxInFlight;
+    this.connectors = new Thread[connectors];
+    for (int i=0; i<connectors; ++i)
+    {
+      this.connectors[i] = new Connector(i);
+      this.connectors[i].start();
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// Config
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Set the timeout in ms of each poll, default 10sec.
+   */
+  public SoxFleet setPollTimeout(long ms) { pollTimeout = ms; return this; }
+
+  /**
+   * Set the fraction by which each poll interval is randomly
+   * stretched or shrunk, default 0.1.
+   */
+  public SoxFleet setJitter(double jitter) { this.jitter = jitter; return this; }
+
+  /**
+   * Set the reconnect backoff, which starts at min ms and
+   * doubles after each failed attempt up to max ms.
+   */
+  public SoxFleet setBackoff(long min, long max) { backoffMin = min; backoffMax = max; return this; }
+
+  /**
+   * Set how many polls in a row may fail before the
+   * session is dropped and reconnected, default 3.
+   */
+  public SoxFleet setMaxFailures(int n) { maxFailures = n; return this; }
+
+////////////////////////////////////////////////////////////////
+// Devices
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Add a device and start connecting to it.
+   */
+  public Device add(InetAddress addr, int port, String username, String password)
+  {
+    Device d = new Device(addr, port, username, password);
+    synchronized (this)
+    {
+      if (stopped) throw new IllegalStateException("stopped");
+      devices.add(d);
+    }
+    connectLater(d, 0);
+    return d;
+  }
+
+  /**
+   * Stop polling the device and close its session.
+   */
+  public void remove(Device d)
+  {
+    synchronized (this) { devices.remove(d); }
+    d.shutdown();
+  }
+
+  /**
+   * Get the devices in the fleet.
+   */
+  public synchronized Device[] devices()
+  {
+    return (Device[])devices.toArray(new Device[devices.size()]);
+  }
+
+  /**
+   * Stop all polling and close every device session; the
+   * shared socket is left open for its owner to close.
+   */
+  public void stop()
+  {
+    Device[] list;
+    synchronized (this)
+    {
+      stopped = true;
+      list = (Device[])devices.toArray(new Device[devices.size()]);
+      devices.clear();
+      waiting.clear();
+      connectQueue.clear();
+      notifyAll();
+    }
+    timer.cancel();
+    for (int i=0; i<connectors.length; ++i) connectors[i].interrupt();
+    for (int i=0; i<list.length; ++i) list[i].shutdown();
+  }
+
+  /**
+   * Number of polls outstanding now.
+   */
+  public synchronized int inFlight() { return inFlight; }
+
+  /**
+   * Most polls outstanding at once.
+   */
+  public synchronized int peakInFlight() { return peakInFlight; }
+
+////////////////////////////////////////////////////////////////
+// Scheduling
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Run the poll after delay ms unless the device has
+   * reconnected or shut down since gen.
+   */
+  private void schedule(final Entry e, final int gen, long delay)
+  {
+    TimerTask task = new TimerTask() { public void run() { due(e, gen); } };
+    synchronized (this)
+    {
+      if (stopped) return;
+      timer.schedule(task, Math.max(0, delay));
+    }
+  }
+
+  /**
+   * A poll is due, start it now or queue it behind the
+   * polls in flight.
+   */
+  private void due(Entry e, int gen)
+  {
+    synchronized (this)
+    {
+      if (stopped) return;
+      if (inFlight >= maxInFlight)
+      {
+        waiting.addLast(new Object[] { e, new Integer(gen) });
+        return;
+      }
+      inFlight++;
+      if (inFlight > peakInFlight) peakInFlight = inFlight;
+    }
+    start(e, gen);
+  }
+
+  /**
+   * Start polls queued for a free slot.
+   */
+  private void drain()
+  {
+    while (true)
+    {
+      Object[] next;
+      synchronized (this)
+      {
+        if (stopped || waiting.isEmpty() || inFlight >= maxInFlight) return;
+        next = (Object[])waiting.removeFirst();
+        inFlight++;
+        if (inFlight > peakInFlight) peakInFlight = inFlight;
+      }
+      start((Entry)next[0], ((Integer)next[1]).intValue());
+    }
+  }
+
+  private void start(final Entry e, final int gen)
+  {
+    AsyncSoxClient async = e.device.async(gen);
+    if (async == null) { finished(e, gen, null, 0); return; }
+
+    final long t0 = System.currentTimeMillis();
+    SoxFuture f;
+    try
+    {
+      ISoxComm comm = async.client().comm();
+      if (comm instanceof SoxExchange && ((SoxExchange)comm).isBacklogged())
+        throw new SoxException("Device not taking requests, poll skipped");
+      f = e.poll.poll(async);
+    }
+    catch (Throwable x)
+    {
+      f = new SoxFuture();
+      f.fail(x);
+    }
+    f.onComplete(new SoxFuture.Listener()
+    {
+      public void completed(SoxFuture f)
+      {
+        finished(e, gen, f, System.currentTimeMillis() - t0);
+      }
+    });
+  }
+
+  /**
+   * A poll completed, possibly on the SoxReceiver thread, so
+   * everything which may block is handed to the timer.
+   */
+  private void finished(final Entry e, final int gen, SoxFuture f, long latency)
+  {
+    boolean drain;
+    synchronized (this)
+    {
+      inFlight--;
+      drain = !waiting.isEmpty();
+    }
+    if (drain) timer(new TimerTask() { public void run() { drain(); } });
+
+    // stale poll from an earlier session
+    if (f == null) return;
+    final Device d = e.device;
+
+    try
+    {
+      e.poll.completed(d, f);
+    }
+    catch (Throwable x)
+    {
+      x.printStackTrace();
+    }
+
+    if (!d.record(gen, f.error() == null, latency))
+      return;
+
+    if (f.error() == null)
+    {
+      schedule(e, gen, jittered(e.interval));
+      return;
+    }
+
+    // closing the session can't happen on its own receiver
+    timer(new TimerTask()
+    {
+      public void run()
+      {
+        if (!d.dropIfFailing(gen, maxFailures))
+          schedule(e, gen, jittered(e.interval));
+      }
+    });
+  }
+
+  private void timer(TimerTask task)
+  {
+    synchronized (this)
+    {
+      if (!stopped) timer.schedule(task, 0);
+    }
+  }
+
+  private long jittered(long interval)
+  {
+    double r;
+    synchronized (rand) { r = rand.nextDouble(); }
+    return (long)(interval * (1 + jitter*(2*r - 1)));
+  }
+
+  private long random(long max)
+  {
+    synchronized (rand) { return max <= 0 ? 0 : (long)(rand.nextDouble() * max); }
+  }
+
+////////////////////////////////////////////////////////////////
+// Connect
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Queue the device to connect after delay ms.
+   */
+  private void connectLater(final Device d, long delay)
+  {
+    TimerTask task = new TimerTask()
+    {
+      public void run()
+      {
+        synchronized (SoxFleet.this)
+        {
+          if (stopped) return;
+          connectQueue.addLast(d);
+          SoxFleet.this.notifyAll();
+        }
+      }
+    };
+    synchronized (this)
+    {
+      if (!stopped) timer.schedule(task, delay);
+    }
+  }
+
+  private synchronized Device takeConnect()
+  {
+    while (!stopped && connectQueue.isEmpty())
+    {
+      try { wait(); } catch (InterruptedException e) {}
+    }
+    if (stopped) return null;
+    return (Device)connectQueue.removeFirst();
+  }
+
+  final class Connector extends Thread
+  {
+    Connector(int i)
+    {
+      super("SoxFleet.Connector-" + i);
+      setDaemon(true);
+    }
+
+    public void run()
+    {
+      while (true)
+      {
+        Device d = takeConnect();
+        if (d == null) return;
+        d.connect();
+      }
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// Poll
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Poll is one periodic request made to a device.  Subclasses
+   * may issue any AsyncSoxClient call and override completed to
+   * look at the result.
+   */
+  public abstract static class Poll
+  {
+    /**
+     * Called once a session is open, before the poll is issued on
+     * it.  This runs on a connector thread, or the thread calling
+     * Device.poll if the session is already open, so it may block
+     * for up to the poll timeout after which the session is closed.
+     * Default does nothing.
+     */
+    public void connected(SoxClient client)
+      throws Exception
+    {
+    }
+
+    /**
+     * Issue the request on the device's current session.  This
+     * runs on the fleet's shared timer, so it must not block.
+     */
+    public abstract SoxFuture poll(AsyncSoxClient client)
+      throws Exception;
+
+    /**
+     * Called when a poll completes.  This may run on the
+     * SoxReceiver thread, so it must not block.
+     */
+    public void completed(Device device, SoxFuture future)
+    {
+    }
+
+    /**
+     * Poll the components with SoxClient.update, loading
+     * them first when they aren't cached yet.
+     */
+    public static Poll update(final int[] compIds, final int mask)
+    {
+      return new Poll()
+      {
+        public void connected(SoxClient client)
+          throws Exception
+        {
+          client.readSchema();
+        }
+
+        public SoxFuture poll(AsyncSoxClient client)
+        {
+          SoxComponent[] comps = new SoxComponent[compIds.length];
+          for (int i=0; i<comps.length; ++i)
+          {
+            comps[i] = client.client().cache(compIds[i]);
+            if (comps[i] == null) return client.load(compIds);
+          }
+          return client.update(comps, mask);
+        }
+      };
+    }
+
+    /**
+     * Poll one property with SoxClient.readProp.
+     */
+    public static Poll readProp(final int compId, final Slot slot)
+    {
+      return new Poll()
+      {
+        public SoxFuture poll(AsyncSoxClient client)
+        {
+          return client.readProp(compId, slot);
+        }
+      };
+    }
+  }
+
+  /**
+   * A poll scheduled on a device.
+   */
+  static final class Entry
+  {
+    Entry(Device device, Poll poll, long interval)
+    {
+      this.device   = device;
+      this.poll     = poll;
+      this.interval = interval;
+    }
+
+    final Device device;
+    final Poll poll;
+    final long interval;  // ms
+  }
+
+////////////////////////////////////////////////////////////////
+// Device
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Device is one remote Sedona device in the fleet.
+   */
+  public final class Device
+  {
+    Device(InetAddress addr, int port, String username, String password)
+    {
+      this.addr     = addr;
+      this.port     = port;
+      this.username = username;
+      this.password = password;
+      this.backoff  = backoffMin;
+    }
+
+    /**
+     * Poll every interval ms, give or take the jitter.
+     */
+    public Device poll(Poll poll, long interval)
+    {
+      if (interval <= 0) throw new IllegalArgumentException("interval=" + interval);
+      Entry e = new Entry(this, poll, interval);
+      SoxClient c;
+      int g;
+      synchronized (this)
+      {
+        polls.add(e);
+        if (client == null) return this;
+        c = client;
+        g = gen;
+      }
+
+      // the session is already open, so prepare it here
+      if (!prepare(c, new Entry[] { e }, 0))
+      {
+        dropIfFailing(g, 0);
+        return this;
+      }
+      schedule(e, g, random(interval));
+      return this;
+    }
+
+    /**
+     * Get the current session's client or null if not connected.
+     */
+    public synchronized SoxClient client() { return client; }
+
+    /**
+     * Is there a session open to the device.
+     */
+    public synchronized boolean isConnected() { return client != null && !client.isClosed(); }
+
+    /**
+     * Number of polls completed, successful or not.
+     */
+    public synchronized int numPolls() { return numPolls; }
+
+    /**
+     * Number of polls which failed.
+     */
+    public synchronized int numErrors() { return numErrors; }
+
+    /**
+     * Number of sessions opened.
+     */
+    public synchronized int numConnects() { return numConnects; }
+
+    /**
+     * Number of connect attempts which failed.
+     */
+    public synchronized int numConnectFailures() { return numConnectFailures; }
+
+    /**
+     * Mean ms of successful polls, or -1 if none.
+     */
+    public synchronized long avgLatency() { return numPolls == numErrors ? -1 : totalLatency / (numPolls - numErrors); }
+
+    /**
+     * Slowest ms of a successful poll.
+     */
+    public synchronized long maxLatency() { return maxLatency; }
+
+    /**
+     * Ms of the most recent successful poll.
+     */
+    public synchronized long lastLatency() { return lastLatency; }
+
+    /**
+     * Get the error of the most recent failed poll or connect.
+     */
+    public synchronized Throwable lastError() { return lastError; }
+
+    public String toString() { return addr.getHostAddress() + ":" + port; }
+
+  //////////////////////////////////////////////////////////////
+  // Lifecycle
+  //////////////////////////////////////////////////////////////
+
+    /**
+     * Open a session, run on a connector thread.
+     */
+    void connect()
+    {
+      synchronized (this) { if (shutdown) return; }
+
+      SoxClient c = new SoxClient(socket, addr, port, username, password);
+      try
+      {
+        c.connect();
+      }
+      catch (Throwable e)
+      {
+        connectFailed(e);
+        return;
+      }
+
+      // let the polls do their blocking setup here rather than on
+      // the timer where their first run would be, including polls
+      // added meanwhile since those don't see the session yet
+      Entry[] toSchedule;
+      int g;
+      int prepared = 0;
+      while (true)
+      {
+        synchronized (this) { toSchedule = (Entry[])polls.toArray(new Entry[polls.size()]); }
+        if (!prepare(c, toSchedule, prepared))
+        {
+          c.close();
+          connectFailed(lastError());
+          return;
+        }
+        prepared = toSchedule.length;
+
+        synchronized (this)
+        {
+          if (shutdown) { c.close(); return; }
+          if (polls.size() != prepared) continue;
+          client = c;
+          async = new AsyncSoxClient(c, pollTimeout);
+          failures = 0;
+          backoff = backoffMin;
+          numConnects++;
+          g = ++gen;
+          break;
+        }
+      }
+
+      // spread the first polls out over their interval
+      for (int i=0; i<toSchedule.length; ++i)
+        schedule(toSchedule[i], g, random(toSchedule[i].interval));
+    }
+
+    /**
+     * Call Poll.connected for the entries from index start on
+     * session c, closing the session if they take longer than the
+     * poll timeout.  Return false and record the error if any of
+     * them failed.
+     */
+    private boolean prepare(final SoxClient c, Entry[] entries, int start)
+    {
+      if (start >= entries.length) return !c.isClosed();
+      TimerTask watchdog = new TimerTask() { public void run() { c.close(); } };
+      synchronized (SoxFleet.this)
+      {
+        if (stopped) return false;
+        timer.schedule(watchdog, pollTimeout);
+      }
+      try
+      {
+        for (int i=start; i<entries.length; ++i)
+          entries[i].poll.connected(c);
+        watchdog.cancel();
+        if (c.isClosed()) throw new SoxException("Session closed preparing polls");
+        return true;
+      }
+      catch (Throwable e)
+      {
+        watchdog.cancel();
+        synchronized (this) { lastError = e; }
+        return false;
+      }
+    }
+
+    /**
+     * A connect attempt failed, try again after the backoff.
+     */
+    private void connectFailed(Throwable e)
+    {
+      long delay;
+      synchronized (this)
+      {
+        numConnectFailures++;
+        lastError = e;
+        delay = backoff;
+        backoff = Math.min(backoff*2, backoffMax);
+      }
+      connectLater(this, jittered(delay));
+    }
+
+    /**
+     * Get the client for a poll of the given session or
+     * null if it has since been dropped.
+     */
+    synchronized AsyncSoxClient async(int g)
+    {
+      return g == gen ? async : null;
+    }
+
+    /**
+     * Record a poll of session g, return false if the
+     * session has since been dropped.
+     */
+    synchronized boolean record(int g, boolean ok, long latency)
+    {
+      if (g != gen || shutdown) return false;
+      numPolls++;
+      if (ok)
+      {
+        failures = 0;
+        totalLatency += latency;
+        lastLatency = latency;
+        if (latency > maxLatency) maxLatency = latency;
+      }
+      else
+      {
+        numErrors++;
+        failures++;
+      }
+      return true;
+    }
+
+    /**
+     * If session g has closed or failed too many polls in a row,
+     * drop it and queue a reconnect after the backoff.  Return
+     * false if its polls should carry on.
+     */
+    boolean dropIfFailing(int g, int maxFailures)
+    {
+      SoxClient old;
+      long delay;
+      synchronized (this)
+      {
+        if (g != gen || client == null) return true;
+        if (!client.isClosed() && failures < maxFailures) return false;
+        old = client;
+        client = null;
+        async = null;
+        gen++;
+        delay = backoff;
+        backoff = Math.min(backoff*2, backoffMax);
+      }
+      old.close();
+      connectLater(this, jittered(delay));
+      return true;
+    }
+
+    /**
+     * Stop for good and close the session.
+     */
+    void shutdown()
+    {
+      SoxClient old;
+      synchronized (this)
+      {
+        shutdown = true;
+        gen++;
+        old = client;
+        client = null;
+        async = null;
+      }
+      if (old != null) old.close();
+    }
+
+    public final InetAddress addr;
+    public final int port;
+    final String username;
+    final String password;
+    private final ArrayList polls = new ArrayList();  // Entries
+    private SoxClient client;        // current session or null
+    private AsyncSoxClient async;    // wraps client
+    private int gen;                 // bumped on every connect and drop
+    private boolean shutdown;
+    private long backoff;            // ms before next reconnect
+    private int failures;            // polls failed in a row
+    private int numPolls;
+    private int numErrors;
+    private int numConnects;
+    private int numConnectFailures;
+    private long totalLatency;
+    private long maxLatency;
+    private long lastLatency;
+    private Throwable lastError;
+  }
+
+////////////////////////////////////////////////////////////////
+// Test
+////////////////////////////////////////////////////////////////
+
+  public static void main(String[] args)
+    throws Exception
+  {
+    long t1 = System.currentTimeMillis();
+    LoopbackSoxDevice[] devices = new LoopbackSoxDevice[3];
+    for (int i=0; i<devices.length; ++i) devices[i] = new AsyncSoxClient.LinksDevice().setDelay(5);
+    DaspSocket socket = DaspSocket.open(new LoopbackDaspSocketInterface(-1), null, DaspSocket.SESSION_QUEUING);
+    SoxFleet fleet = new SoxFleet(socket, 2);
+    try
+    {
+      fleet.test(devices);
+    }
+    finally
+    {
+      fleet.stop();
+      socket.close();
+      for (int i=0; i<devices.length; ++i) devices[i].close();
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.println("  SoxFleet Success: " + verifies + " verifies [" + (t2-t1) + "ms]");
+  }
+
+  private void test(LoopbackSoxDevice[] devices)
+    throws Exception
+  {
+    setPollTimeout(100).setBackoff(20, 40).setMaxFailures(2);
+    InetAddress addr = LoopbackDaspSocketInterface.address();
+    String user = LoopbackSoxDevice.USER;
+    String pass = LoopbackSoxDevice.PASS;
+
+    // three devices polled twice each on one socket, never
+    // more than two polls outstanding
+    Device[] d = new Device[devices.length];
+    TestPoll[] polls = new TestPoll[devices.length];
+    for (int i=0; i<d.length; ++i)
+    {
+      polls[i] = new TestPoll(5);
+      d[i] = add(addr, devices[i].iface.localPort(), user, pass).poll(polls[i], 10).poll(new TestPoll(6), 25);
+    }
+    for (int i=0; i<d.length; ++i) waitFor(polls[i], 10);
+    for (int i=0; i<d.length; ++i)
+    {
+      verify(d[i].isConnected() && d[i].numConnects() == 1);
+      verify(d[i].numErrors() == 0 && polls[i].failed == 0);
+      verify(d[i].avgLatency() >= 0 && d[i].maxLatency() >= d[i].avgLatency());
+    }
+    verify(peakInFlight() <= 2);
+    verify(devices().length == 3);
+
+    // a device which refuses the login backs off and retries
+    Device bad = add(addr, devices[0].iface.localPort(), user, "wrong");
+    long deadline = System.currentTimeMillis() + 5000;
+    while (bad.numConnectFailures() < 3 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+    verify(bad.numConnectFailures() >= 3 && !bad.isConnected());
+    verify(bad.lastError() != null);
+    remove(bad);
+
+    // polls which keep timing out drop the session and reconnect
+    TestPoll lost = new TestPoll(999);
+    Device flaky = add(addr, devices[1].iface.localPort(), user, pass).poll(lost, 10);
+    deadline = System.currentTimeMillis() + 5000;
+    while (flaky.numConnects() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+    verify(flaky.numConnects() >= 2);
+    verify(flaky.numErrors() >= 2 && lost.ok == 0);
+
+    // a device which opens the session but never answers stalls
+    // in its connector while preparing Poll.update, and doesn't
+    // hold up the polls of the others
+    LoopbackSoxDevice mute = new MuteDevice();
+    try
+    {
+      int before0 = polls[0].count();
+      int before1 = polls[1].count();
+      Device stalled = add(addr, mute.iface.localPort(), user, pass).poll(Poll.update(new int[] { 0 }, SoxComponent.RUNTIME), 10);
+      deadline = System.currentTimeMillis() + 5000;
+      while (stalled.numConnectFailures() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+      verify(stalled.numConnectFailures() >= 2 && !stalled.isConnected());
+      verify(stalled.lastError() != null && stalled.numPolls() == 0);
+      verify(polls[0].count() - before0 >= 10);
+      verify(polls[1].count() - before1 >= 10);
+      remove(stalled);
+    }
+    finally
+    {
+      mute.close();
+    }
+
+    // removed devices stop polling
+    remove(flaky);
+    remove(d[2]);
+    verify(!d[2].isConnected());
+    Thread.sleep(50);
+    int n = polls[2].count();
+    Thread.sleep(100);
+    verify(polls[2].count() == n);
+    verify(d[0].numPolls() > 10);
+    verify(devices().length == 2);
+  }
+
+  private static void waitFor(TestPoll p, int n)
+    throws Exception
+  {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (p.count() < n && System.currentTimeMillis() < deadline) Thread.sleep(5);
+    verify(p.count() >= n);
+  }
+
+  /**
+   * Device which accepts sessions and drops every request.
+   */
+  static class MuteDevice extends LoopbackSoxDevice
+  {
+    MuteDevice() throws Exception {}
+
+    Msg respond(Msg req) { return null; }
+  }
+
+  /**
+   * Polls the links of one component of a LinksDevice.
+   */
+  static class TestPoll extends Poll
+  {
+    TestPoll(int compId) { this.compId = compId; }
+
+    public SoxFuture poll(AsyncSoxClient client)
+    {
+      return client.links(compId);
+    }
+
+    public synchronized void completed(Device device, SoxFuture future)
+    {
+      if (future.error() == null) ok++; else failed++;
+    }
+
+    synchronized int count() { return ok + failed; }
+
+    final int compId;
+    int ok;
+    int failed;
+  }
+
+  private static synchronized void verify(boolean x)
+  {
+    if (!x) throw new RuntimeException();
+    verifies++;
+  }
+
+  private static int verifies;
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  public static final int DEFAULT_CONNECTORS = 4;
+
+  public final DaspSocket socket;
+  public final int maxInFlight;
+
+  private final Timer timer = new Timer("SoxFleet.Timer", true);
+  private final Thread[] connectors;
+  private final Random rand = new Random();
+  private final ArrayList devices = new ArrayList();          // Devices
+  private final LinkedList waiting = new LinkedList();        // [Entry, Integer gen] due but over the limit
+  private final LinkedList connectQueue = new LinkedList();   // Devices to connect
+  private volatile long pollTimeout = 10000;
+  private volatile double jitter = 0.1;
+  private volatile long backoffMin = 1000;
+  private volatile long backoffMax = 60000;
+  private volatile int maxFailures = 3;
+  private boolean stopped;
+  private int inFlight;
+  private int peakInFlight;
+}
@@ -0,0 +1,220 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.sox;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * SoxFuture is the pending result of an AsyncSoxClient call.  It
+ * completes exactly once: with a result, with an error, or by being
+ * cancelled.  Callers may block on get or register a Listener which
+ * is called as soon as the future completes.
+ */
+public class SoxFuture
+  implements Future
+{
+
+////////////////////////////////////////////////////////////////
+// Future
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Cancel the call if it has not completed yet.  Any responses
+   * which arrive later are dropped.  The interrupt flag is ignored
+   * since no thread is ever blocked on behalf of the call.
+   */
+  public boolean cancel(boolean mayInterruptIfRunning)
+  {
+    if (!finish(CANCELLED, null, null)) return false;
+    cancelled();
+    return true;
+  }
+
+  public synchronized boolean isCancelled()
+  {
+    return state == CANCELLED;
+  }
+
+  public synchronized boolean isDone()
+  {
+    return state != PENDING;
+  }
+
+  /**
+   * Wait for the result; an error is wrapped in ExecutionException.
+   */
+  public synchronized Object get()
+    throws InterruptedException, ExecutionException
+  {
+    while (state == PENDING) wait();
+    return result();
+  }
+
+  /**
+   * Wait up to the given time for the result.
+   */
+  public synchronized Object get(long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (state == PENDING)
+    {
+      long left = deadline - System.nanoTime();
+      if (left <= 0) throw new TimeoutException();
+      TimeUnit.NANOSECONDS.timedWait(this, left);
+    }
+    return result();
+  }
+
+  /**
+   * Wait for the result rethrowing an error as is, for
+   * blocking wrappers which want the synchronous behavior.
+   */
+  Object join()
+    throws Exception
+  {
+    try
+    {
+      return get();
+    }
+    catch (ExecutionException e)
+    {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) throw (Exception)cause;
+      if (cause instanceof Error) throw (Error)cause;
+      throw e;
+    }
+  }
+
+  private Object result()
+    throws ExecutionException
+  {
+    if (state == CANCELLED) throw new CancellationException();
+    if (state == FAILED) throw new ExecutionException(error);
+    return value;
+  }
+
+////////////////////////////////////////////////////////////////
+// Completion
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Get the error if the call failed, otherwise null.
+   */
+  public synchronized Throwable error()
+  {
+    return error;
+  }
+
+  /**
+   * Register a listener to call once this future completes.
+   * If it has already completed the listener is called right
+   * away on this thread; otherwise it is called on the thread
+   * which completes the future, typically the SoxReceiver,
+   * so it must not block.
+   */
+  public SoxFuture onComplete(Listener listener)
+  {
+    synchronized (this)
+    {
+      if (state == PENDING)
+      {
+        if (listeners == null) listeners = new ArrayList();
+        listeners.add(listener);
+        return this;
+      }
+    }
+    fire(listener);
+    return this;
+  }
+
+  /**
+   * Complete with the given result, return false
+   * if this future was already complete.
+   */
+  boolean complete(Object value)
+  {
+    return finish(DONE, value, null);
+  }
+
+  /**
+   * Complete with the given error, return false
+   * if this future was already complete.
+   */
+  boolean fail(Throwable error)
+  {
+    return finish(FAILED, null, error);
+  }
+
+  /**
+   * Hook called when this future is cancelled.
+   */
+  void cancelled()
+  {
+  }
+
+  private boolean finish(int state, Object value, Throwable error)
+  {
+    ArrayList toFire;
+    synchronized (this)
+    {
+      if (this.state != PENDING) return false;
+      this.state = state;
+      this.value = value;
+      this.error = error;
+      toFire = listeners;
+      listeners = null;
+      notifyAll();
+    }
+    if (toFire != null)
+      for (int i=0; i<toFire.size(); ++i)
+        fire((Listener)toFire.get(i));
+    return true;
+  }
+
+  private void fire(Listener listener)
+  {
+    try
+    {
+      listener.completed(this);
+    }
+    catch (Throwable e)
+    {
+      e.printStackTrace();
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// Listener
+////////////////////////////////////////////////////////////////
+
+  public static interface Listener
+  {
+    public void completed(SoxFuture future);
+  }
+
+////////////////////////////////////////////////////////////////
+// Fields
+////////////////////////////////////////////////////////////////
+
+  static final int PENDING   = 0;
+  static final int DONE      = 1;
+  static final int FAILED    = 2;
+  static final int CANCELLED = 3;
+
+  private int state;            // PENDING, DONE, FAILED, CANCELLED
+  private Object value;         // result if DONE
+  private Throwable error;      // cause if FAILED
+  private ArrayList listeners;  // Listeners waiting on completion
+}
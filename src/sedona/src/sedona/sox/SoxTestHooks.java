@@ -0,0 +1,40 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.sox;
+
+/**
+ * SoxTestHooks runs the package scoped white-box tests of the
+ * client stack against a LoopbackSoxDevice, so they need no
+ * real device.
+ */
+public class SoxTestHooks
+{
+
+////////////////////////////////////////////////////////////////
+// Methods
+////////////////////////////////////////////////////////////////
+
+  /**
+   * Run the white-box tests which are package scoped.
+   */
+  public static void runWhiteboxTests()
+    throws Exception
+  {
+    SoxExchange.main(null);
+    SoxClient.main(null);
+    AsyncSoxClient.main(null);
+    SoxCoalescer.main(null);
+    SoxEventDispatcher.main(null);
+    FileTransfer.main(null);
+    MappedSoxFile.main(null);
+    SoxFleet.main(null);
+    SoxAppSnapshot.main(null);
+  }
+
+}
@@ -132,8 +132,7 @@ public class SoxUtil
       if (!slot.isProp()) continue;
       if (operatorOnly && !slot.isOperator()) continue;
       if (what == 'c' ? slot.isRuntime() : slot.isConfig()) continue;
-      Value val = c.get(slot).decodeBinary(msg);
-      c.set(slot, val);
+      c.decodeBinary(slot, msg);
     }
 
     c.fireChanged(what == 'c' ? SoxComponent.CONFIG : SoxComponent.RUNTIME);
@@ -0,0 +1,286 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedona.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache is a thread safe map bounded by both entry count and total
+ * weight which evicts its least recently used entries.  Values are
+ * computed by a Loader outside of the cache's lock, so a slow load
+ * only blocks the threads asking for that same key: they wait for
+ * the one load in flight rather than each starting their own.  Null
+ * results and failed loads are not cached.
+ */
+public class Cache
+{
+
+//////////////////////////////////////////////////////////////////////////
+// Loader
+//////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Loader computes the value for a key missing from the cache,
+   * or returns null if there is none.
+   */
+  public static interface Loader
+  {
+    public Object load(Object key) throws Exception;
+  }
+
+//////////////////////////////////////////////////////////////////////////
+// Constructor
+//////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Construct a cache which holds at most maxSize entries
+   * and maxWeight total weight as computed by weigh().
+   */
+  public Cache(String name, int maxSize, long maxWeight)
+  {
+    if (maxSize < 1 || maxWeight < 1)
+      throw new IllegalArgumentException("Invalid bounds: " + maxSize + ", " + maxWeight);
+    this.name      = name;
+    this.maxSize   = maxSize;
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * Construct a cache bounded only by entry count.
+   */
+  public Cache(String name, int maxSize)
+  {
+    this(name, maxSize, java.lang.Long.MAX_VALUE);
+  }
+
+  /**
+   * Return the weight of an entry, default is one.
+   */
+  protected long weigh(Object key, Object val)
+  {
+    return 1;
+  }
+
+//////////////////////////////////////////////////////////////////////////
+// Access
+//////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Get the cached value for key or null if not cached.
+   * This doesn't load or wait for a load in progress.
+   */
+  public synchronized Object get(Object key)
+  {
+    Entry e = (Entry)map.get(key);
+    return e == null ? null : e.val;
+  }
+
+  /**
+   * Get the cached value for key, loading it with loader if
+   * not cached.  If another thread is already loading the key
+   * then block until it completes and share its result or
+   * exception.
+   */
+  public Object get(Object key, Loader loader)
+    throws Exception
+  {
+    Pending p;
+    boolean owner = false;
+    synchronized (this)
+    {
+      Entry e = (Entry)map.get(key);
+      if (e != null) { hits++; return e.val; }
+
+      p = (Pending)pending.get(key);
+      if (p != null)
+      {
+        if (p.owner == Thread.currentThread())
+          throw new IllegalStateException("Recursive load of " + key + " in " + name);
+        joins++;
+      }
+      else
+      {
+        misses++;
+        p = new Pending();
+        p.owner = Thread.currentThread();
+        pending.put(key, p);
+        owner = true;
+      }
+    }
+
+    // another thread is loading this key
+    if (!owner) return p.await();
+
+    // we own the load, run it outside the lock
+    Object val = null;
+    Throwable err = null;
+    try
+    {
+      val = loader.load(key);
+    }
+    catch (Throwable x)
+    {
+      err = x;
+    }
+
+    synchronized (this)
+    {
+      pending.remove(key);
+      if (err != null) loadFailures++;
+      else if (val != null) doPut(key, val);
+    }
+    p.done(val, err);
+    return p.result();
+  }
+
+  /**
+   * Put a value in the cache, evicting older entries as needed.
+   */
+  public synchronized void put(Object key, Object val)
+  {
+    if (val == null) throw new NullPointerException();
+    doPut(key, val);
+  }
+
+  /**
+   * Remove the entry for key and return its value or null.
+   */
+  public synchronized Object remove(Object key)
+  {
+    Entry e = (Entry)map.remove(key);
+    if (e == null) return null;
+    weight -= e.weight;
+    return e.val;
+  }
+
+  /**
+   * Remove all entries.  Loads in progress are unaffected.
+   */
+  public synchronized void clear()
+  {
+    map.clear();
+    weight = 0;
+  }
+
+  private void doPut(Object key, Object val)
+  {
+    Entry e = new Entry(val, weigh(key, val));
+    Entry old = (Entry)map.put(key, e);
+    if (old != null) weight -= old.weight;
+    weight += e.weight;
+
+    // evict eldest first, but always keep the entry just added
+    Iterator it = map.entrySet().iterator();
+    while ((map.size() > maxSize || weight > maxWeight) && it.hasNext())
+    {
+      Map.Entry eldest = (Map.Entry)it.next();
+      if (eldest.getValue() == e) break;
+      weight -= ((Entry)eldest.getValue()).weight;
+      it.remove();
+      evictions++;
+    }
+  }
+
+//////////////////////////////////////////////////////////////////////////
+// Statistics
+//////////////////////////////////////////////////////////////////////////
+
+  /** Number of entries currently cached */
+  public synchronized int size() { return map.size(); }
+
+  /** Total weight of entries currently cached */
+  public synchronized long weight() { return weight; }
+
+  /** Gets answered from the cache */
+  public synchronized long hits() { return hits; }
+
+  /** Gets which had to start a load */
+  public synchronized long misses() { return misses; }
+
+  /** Gets which waited on another thread's load */
+  public synchronized long joins() { return joins; }
+
+  /** Loads which raised an exception */
+  public synchronized long loadFailures() { return loadFailures; }
+
+  /** Entries evicted to stay within bounds */
+  public synchronized long evictions() { return evictions; }
+
+  public synchronized String toString()
+  {
+    return name + " [size=" + map.size() + "/" + maxSize +
+      " weight=" + weight + (maxWeight == java.lang.Long.MAX_VALUE ? "" : "/" + maxWeight) +
+      " hits=" + hits + " misses=" + misses + " joins=" + joins +
+      " failures=" + loadFailures + " evictions=" + evictions + "]";
+  }
+
+//////////////////////////////////////////////////////////////////////////
+// Entry
+//////////////////////////////////////////////////////////////////////////
+
+  static class Entry
+  {
+    Entry(Object val, long weight) { this.val = val; this.weight = weight; }
+    final Object val;
+    final long weight;
+  }
+
+  static class Pending
+  {
+    synchronized void done(Object val, Throwable err)
+    {
+      this.val  = val;
+      this.err  = err;
+      this.done = true;
+      notifyAll();
+    }
+
+    synchronized Object await()
+      throws Exception
+    {
+      while (!done) wait();
+      return result();
+    }
+
+    synchronized Object result()
+      throws Exception
+    {
+      if (err instanceof Exception) throw (Exception)err;
+      if (err instanceof Error) throw (Error)err;
+      if (err != null) throw new RuntimeException(err.toString());
+      return val;
+    }
+
+    Thread owner;      // thread running the load
+    boolean done;      // load has completed
+    Object val;        // loaded value or null
+    Throwable err;     // load failure or null
+  }
+
+//////////////////////////////////////////////////////////////////////////
+// Fields
+//////////////////////////////////////////////////////////////////////////
+
+  public final String name;
+  public final int maxSize;
+  public final long maxWeight;
+
+  private final LinkedHashMap map = new LinkedHashMap(16, 0.75f, true);  // key -> Entry, eldest access first
+  private final HashMap pending = new HashMap();                          // key -> Pending load
+  private long weight;
+  private long hits;
+  private long misses;
+  private long joins;
+  private long loadFailures;
+  private long evictions;
+
+}
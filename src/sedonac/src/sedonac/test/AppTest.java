@@ -92,6 +92,117 @@ public class AppTest
     verify(ex != null);
   }
   
+  public void testCompactStorage()
+    throws Exception
+  {
+    buildApp();
+    Type t = schema.type("sys::TestComp");
+    String[] names = { "z1", "z2", "b1", "b2", "s1", "s2", "i1", "i2", "j1", "j2", "f1", "f2", "d1", "d2" };
+    Value[] vals =
+    {
+      Bool.NULL, Bool.FALSE,
+      sedona.Byte.make(0xff), sedona.Byte.make(0),
+      sedona.Short.make(0xffff), sedona.Short.make(0x8000),
+      Int.make(Integer.MIN_VALUE), Int.make(-1),
+      sedona.Long.make(java.lang.Long.MIN_VALUE), sedona.Long.make(-1),
+      sedona.Float.NULL, sedona.Float.make(-0.5f),
+      sedona.Double.make(java.lang.Double.NaN), sedona.Double.make(1e300),
+    };
+
+    // defaults read back the same as boxed storage, including
+    // null bool and float and unsigned byte and short
+    OfflineComponent boxed = new OfflineComponent(t, "boxed");
+    OfflineComponent x = new OfflineComponent(t, "x");
+    x.compactStorage();
+    verify(x.isCompactStorage() && !boxed.isCompactStorage());
+    for (int i=0; i<names.length; ++i)
+      verifyProp(x, t.slot(names[i]), boxed.get(names[i]));
+    verify(x.get("z1") == Bool.NULL);
+    verify(java.lang.Float.isNaN(x.getFloat("f1")));
+    verifyEq(x.getInt("b2"), 0xab);
+    verifyEq(x.getInt("s2"), 0xbeef);
+
+    // set(Value), typed setters, and decodeBinary in
+    // both storages all read back the same values
+    OfflineComponent y = new OfflineComponent(t, "y");
+    OfflineComponent z = new OfflineComponent(t, "z");
+    y.compactStorage();
+    z.compactStorage();
+    for (int i=0; i<names.length; ++i)
+    {
+      Slot slot = t.slot(names[i]);
+      Value v = vals[i];
+      x.set(slot, v);
+      setTyped(y, slot, v);
+      Buf buf = new Buf();
+      v.encodeBinary(buf);
+      buf.flip();
+      z.decodeBinary(slot, buf);
+      buf.seek(0);
+      boxed.decodeBinary(slot, buf);
+      verifyProp(x, slot, v);
+      verifyProp(y, slot, v);
+      verifyProp(z, slot, v);
+      verifyProp(boxed, slot, v);
+    }
+
+    // compact setters check unsigned ranges like boxing does
+    Exception ex = null; try { y.setInt("b1", 0x100); } catch (IllegalArgumentException e) { ex = e; }
+    verify(ex != null);
+    ex = null; try { y.setInt("s1", -1); } catch (IllegalArgumentException e) { ex = e; }
+    verify(ex != null);
+    verifyEq(y.getInt("b1"), 0xff);
+
+    // compactAll covers the app and children added later
+    app.compactAll();
+    verify(app.isCompactStorage() && a.isCompactStorage() && b.isCompactStorage() && c.isCompactStorage());
+    verifyEq(a.getInt("b1"), 0xf0);
+    verifyEq(a.getInt("i1"), 0xfedcba08);
+    verifyEq(c.getInt("si"), 1972);
+    OfflineComponent d = new OfflineComponent(t, "d");
+    app.add(a, d);
+    app.assignIds();
+    verify(d.isCompactStorage());
+    d.setInt("s1", 0xbeef);
+    verifyEq(d.get("s1"), sedona.Short.make(0xbeef));
+
+    // and round trips through the binary app format
+    Buf buf = app.encodeAppBinary();
+    buf.flip();
+    verify(app.equivalent(OfflineApp.decodeAppBinary(buf)));
+  }
+
+  private void setTyped(Component c, Slot slot, Value v)
+  {
+    switch (v.typeId())
+    {
+      case Type.boolId:
+        if (v.isNull()) c.set(slot, v); else c.setBool(slot, ((Bool)v).val);
+        break;
+      case Type.byteId:   c.setInt(slot, ((sedona.Byte)v).val); break;
+      case Type.shortId:  c.setInt(slot, ((sedona.Short)v).val); break;
+      case Type.intId:    c.setInt(slot, ((Int)v).val); break;
+      case Type.longId:   c.setLong(slot, ((sedona.Long)v).val); break;
+      case Type.floatId:  c.setFloat(slot, ((sedona.Float)v).val); break;
+      default:            c.setDouble(slot, ((sedona.Double)v).val); break;
+    }
+  }
+
+  private void verifyProp(Component c, Slot slot, Value v)
+  {
+    verifyEq(c.get(slot), v);
+    switch (v.typeId())
+    {
+      case Type.boolId:   verifyEq(c.getBool(slot), ((Bool)v).val); break;
+      case Type.byteId:   verifyEq(c.getInt(slot), ((sedona.Byte)v).val); break;
+      case Type.shortId:  verifyEq(c.getInt(slot), ((sedona.Short)v).val); break;
+      case Type.intId:    verifyEq(c.getInt(slot), ((Int)v).val); break;
+      case Type.longId:   verifyEq(c.getLong(slot), ((sedona.Long)v).val); break;
+      case Type.floatId:  verify(sedona.Float.equals(c.getFloat(slot), ((sedona.Float)v).val)); break;
+      default:            verify(sedona.Double.equals(c.getDouble(slot), ((sedona.Double)v).val)); break;
+    }
+  }
+
   public void buildApp()          
     throws Exception
   {
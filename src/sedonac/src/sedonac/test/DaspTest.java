@@ -38,6 +38,7 @@ public class DaspTest
       startServer(DaspSocket.SESSION_QUEUING);
       verifyConnect();
       verifyDatagrams();
+      verifyConcurrentSends();
       verifyClose();
       
       startServer(DaspSocket.SOCKET_QUEUING);
@@ -49,6 +50,56 @@ public class DaspTest
     {
       stopServer();
     }
+
+    // run the same tests with a selector based interface
+    System.out.println();
+    try
+    {
+      startServer(new NioDaspSocketInterface(-1), DaspSocket.SESSION_QUEUING);
+      verifyConnect();
+      verifyDatagrams();
+      verifyClose();
+    }
+    finally
+    {
+      stopServer();
+    }
+    pause();
+    verifyEq(NioDaspEventLoop.shared().isRunning(), false);
+
+    // and over an in memory loopback which reorders and duplicates
+    System.out.println();
+    try
+    {
+      LoopbackDaspSocketInterface loopback = new LoopbackDaspSocketInterface(-1, 1);
+      loopback.setReorder(0.1).setDuplicate(0.1).setLatency(1);
+      startServer(loopback, DaspSocket.SESSION_QUEUING);
+      verifyConnect();
+      verifyDatagrams();
+      verifyClose();
+      verify(loopback.numReordered() > 0);
+      verify(loopback.numDuplicated() > 0);
+    }
+    finally
+    {
+      stopServer();
+    }
+
+    // two receiver threads sharing one socket's message pool
+    System.out.println();
+    verifySharedPool();
+
+    // small benchmark run over an impaired link
+    DaspBenchmark bench = new DaspBenchmark();
+    bench.sessions  = 2;
+    bench.msgs      = 100;
+    bench.reorder   = 0.05;
+    bench.duplicate = 0.05;
+    bench.seed      = 7;
+    bench.run();
+    verifyEq(bench.received(), 200);
+    verify(bench.msgsPerSec() > 0);
+    verify(bench.latency(0.5) <= bench.latency(0.99));
   }
 
 //////////////////////////////////////////////////////////////////////////
@@ -130,6 +181,12 @@ public class DaspTest
       client.send(msg);                    
       verifyEq(receive(100), msg); 
     }                         
+
+    // acks from the straight messages give us round trip times
+    Thread.sleep(300);
+    verify(client.smoothedRtt() >= 0);
+    verify(client.rttVariance() >= 0);
+    verify(client.retransmitTimeout() >= 100);
     
     // send some messages with drops
     ArrayList toSend = new ArrayList();
@@ -146,8 +203,180 @@ public class DaspTest
       toSend.remove(s);
     }             
     verify(true);            
+
+    // drops should have backed off the congestion window
+    verify(client.numCwndLosses() > 0);
+    verify(client.congestionWindow() >= 1);
+    verify(client.congestionWindow() <= client.remoteReceiveMax());
   }                    
   
+  private void verifyConcurrentSends()
+    throws Exception
+  {
+    // many sessions sending at once on their own threads
+    // share one interface without sharing a send lock
+    trace("Concurrent sends...");
+    final int numSessions = 4;
+    final int numMsgs = 40;
+    final DaspSession[] clients = new DaspSession[numSessions];
+    final boolean[] failed = new boolean[1];
+    Thread[] threads = new Thread[numSessions];
+    for (int i=0; i<numSessions; ++i)
+    {
+      clients[i] = socket.connect(local, socket.port(), "bob", "secret");
+      final DaspSession c = clients[i];
+      threads[i] = new Thread("concurrent send " + i)
+      {
+        public void run()
+        {
+          try
+          {
+            for (int j=0; j<numMsgs; ++j)
+              c.send(("c" + c.id + " " + j).getBytes("UTF-8"));
+          }
+          catch (Exception e)
+          {
+            e.printStackTrace();
+            failed[0] = true;
+          }
+        }
+      };
+    }
+    for (int i=0; i<numSessions; ++i) threads[i].start();
+
+    // each server session gets its own messages in order
+    for (int i=0; i<numSessions; ++i)
+    {
+      DaspSession s = socket.session(clients[i].remoteId());
+      for (int j=0; j<numMsgs; ++j)
+      {
+        DaspMessage msg = s.receive(5000);
+        verify(msg != null);
+        verifyEq(new String(msg.payload(), "UTF-8"), "c" + clients[i].id + " " + j);
+        msg.release();
+      }
+      verify(s.receiveQueuePeak() >= 1);
+      verifyEq(s.receiveQueueDrops(), 0);
+    }
+    for (int i=0; i<numSessions; ++i) threads[i].join();
+    verify(!failed[0]);
+    for (int i=0; i<numSessions; ++i) clients[i].close();
+  }
+
+  private void verifySharedPool()
+    throws Exception
+  {
+    // a UDP and a loopback interface on one socket each have their
+    // own receiver thread but share the socket's message pool; kept
+    // small so messages are recycled constantly, a message must never
+    // be handed out again while a consumer still holds it
+    trace("Shared message pool...");
+    final int numMsgs = 500;
+    LoopbackDaspSocketInterface loopback = new LoopbackDaspSocketInterface(-1);
+    DaspSocket s = DaspSocket.open(new DefaultDaspSocketInterface(-1), new DaspAcceptor()
+    {
+      public byte[] credentials(String u) { return UserUtil.credentials("bob", "secret"); }
+      public Hashtable options()
+      {
+        Hashtable options = new Hashtable();
+        options.put("dasp.messagePoolMax", "2");
+        return options;
+      }
+    }, DaspSocket.SESSION_QUEUING);
+    s.addInterface(loopback);
+    DaspSocket udp = DaspSocket.open(-1, null, DaspSocket.SESSION_QUEUING);
+    DaspSocket mem = DaspSocket.open(new LoopbackDaspSocketInterface(-1), null, DaspSocket.SESSION_QUEUING);
+    try
+    {
+      final DaspSession[] clients =
+      {
+        udp.connect(local, s.port(), "bob", "secret"),
+        mem.connect(LoopbackDaspSocketInterface.address(), loopback.localPort(), "bob", "secret"),
+      };
+      final Map held = Collections.synchronizedMap(new IdentityHashMap());
+      final int[] counts = new int[3];  // received per client, failures
+      Thread[] threads = new Thread[4];
+      for (int i=0; i<clients.length; ++i)
+      {
+        final int k = i;
+        final DaspSession c = clients[i];
+        final DaspSession r = s.session(c.remoteId());
+        threads[i*2] = new Thread("shared pool send " + i)
+        {
+          public void run()
+          {
+            try
+            {
+              for (int j=0; j<numMsgs; ++j) c.send(sharedPoolMsg(k, j));
+            }
+            catch (Exception e)
+            {
+              e.printStackTrace();
+              synchronized (counts) { counts[2]++; }
+            }
+          }
+        };
+        threads[i*2+1] = new Thread("shared pool receive " + i)
+        {
+          public void run()
+          {
+            try
+            {
+              for (int j=0; j<numMsgs; ++j)
+              {
+                DaspMessage m = r.receive(5000);
+                if (m == null) throw new Exception("timeout");
+                if (held.put(m, m) != null) throw new Exception("message handed out twice");
+                byte[] expected = sharedPoolMsg(k, j);
+                boolean ok = sharedPoolMatches(m, expected);
+                Thread.yield();
+                ok &= sharedPoolMatches(m, expected);
+                held.remove(m);
+                m.release();
+                if (!ok) throw new Exception("payload overwritten " + k + "/" + j);
+                synchronized (counts) { counts[k]++; }
+              }
+            }
+            catch (Exception e)
+            {
+              e.printStackTrace();
+              synchronized (counts) { counts[2]++; }
+            }
+          }
+        };
+      }
+      for (int i=0; i<threads.length; ++i) threads[i].start();
+      for (int i=0; i<threads.length; ++i) threads[i].join();
+      verifyEq(counts[2], 0);
+      verifyEq(counts[0], numMsgs);
+      verifyEq(counts[1], numMsgs);
+      verify(held.isEmpty());
+    }
+    finally
+    {
+      udp.close();
+      mem.close();
+      s.close();
+    }
+  }
+
+  private static byte[] sharedPoolMsg(int k, int j)
+  {
+    byte[] b = new byte[64 + j % 64];
+    for (int i=0; i<b.length; ++i) b[i] = (byte)(k*31 + j + i);
+    return b;
+  }
+
+  private static boolean sharedPoolMatches(DaspMessage m, byte[] expected)
+  {
+    byte[] buf = m.payloadBuf();
+    int off = m.payloadOff();
+    if (m.payloadLen() != expected.length) return false;
+    for (int i=0; i<expected.length; ++i)
+      if (buf[off+i] != expected[i]) return false;
+    return true;
+  }
+
   private byte[] receive(long timeout)
     throws Exception
   {   
@@ -215,7 +444,13 @@ public class DaspTest
   void startServer(int qMode)
     throws Exception
   {                  
-    socket = DaspSocket.open(-1, new DaspAcceptor() 
+    startServer(new DefaultDaspSocketInterface(-1), qMode);
+  }
+
+  void startServer(DaspSocketInterface iface, int qMode)
+    throws Exception
+  {                  
+    socket = DaspSocket.open(iface, new DaspAcceptor() 
     {  
       public byte[] credentials(String u)
       {                                
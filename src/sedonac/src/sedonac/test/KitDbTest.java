@@ -278,6 +278,52 @@ public class KitDbTest
     }                    
   }          
 
+  public void testKitDbIndex()
+    throws Exception
+  {
+    File dir = new File(KitDb.dir, "testKitDbIndex");
+    dir.mkdirs();
+    try
+    {
+      // freshly modified directories are always rescanned
+      makeKitFile(dir, 0x12345678, "1.0.1");
+      verifyEq(KitDb.list("testKitDbIndex").length, 1);
+      makeKitFile(dir, 0x12345678, "1.0.2");
+      verifyEq(KitDb.list("testKitDbIndex").length, 2);
+
+      // once old enough, the index is used until the
+      // directory's modified time changes
+      long old = System.currentTimeMillis() - 60000L;
+      verify(dir.setLastModified(old));
+      verifyEq(KitDb.list("testKitDbIndex").length, 2);
+      makeKitFile(dir, 0x12345678, "1.0.3");
+      verify(dir.setLastModified(old));
+      verifyEq(KitDb.list("testKitDbIndex").length, 2);
+      verifyEq(KitDb.matchBest("testKitDbIndex").version.toString(), "1.0.2");
+
+      verify(dir.setLastModified(old + 1000L));
+      verifyEq(KitDb.list("testKitDbIndex").length, 3);
+      verifyEq(KitDb.matchBest("testKitDbIndex").version.toString(), "1.0.3");
+
+      // refresh drops the index
+      new File(dir, "testKitDbIndex-12345678-1.0.1.kit").delete();
+      verify(dir.setLastModified(old + 1000L));
+      verifyEq(KitDb.list("testKitDbIndex").length, 3);
+      KitDb.refresh();
+      verifyEq(KitDb.list("testKitDbIndex").length, 2);
+
+      // returned arrays are copies of the index
+      KitFile[] kits = KitDb.list("testKitDbIndex");
+      kits[0] = null;
+      verify(KitDb.list("testKitDbIndex")[0] != null);
+    }
+    finally
+    {
+      FileUtil.delete(dir, null);
+    }
+    verifyEq(KitDb.list("testKitDbIndex").length, 0);
+  }
+
   void verifyKitFile(KitFile kitFile, int checksum, String version)
   {
     verifyEq(kitFile.name, "testKitDb");
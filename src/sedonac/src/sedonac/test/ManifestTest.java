@@ -8,7 +8,17 @@
 
 package sedonac.test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
 import sedona.*;
+import sedona.manifest.*;
+import sedona.util.Cache;
+import sedona.util.Abstime;
+import sedona.util.FileUtil;
+import sedona.util.Version;
+import sedona.xml.XWriter;
 
 /**
  * ManifestTest
@@ -53,4 +63,243 @@ public class ManifestTest
     verifyEq(tc.slot("str").facets.geti("max"), 5);
   }
 
+////////////////////////////////////////////////////////////////
+// Cache
+////////////////////////////////////////////////////////////////
+
+  public void testCache()
+    throws Exception
+  {
+    Cache c = new Cache("test", 3, 10)
+    {
+      protected long weigh(Object key, Object val) { return ((Integer)val).intValue(); }
+    };
+
+    // least recently used is evicted by count
+    c.put("a", new Integer(1));
+    c.put("b", new Integer(1));
+    c.put("c", new Integer(1));
+    verify(c.get("a") != null);
+    c.put("d", new Integer(1));
+    verifyEq(c.size(), 3);
+    verify(c.get("b") == null);
+    verify(c.get("a") != null);
+    verifyEq(c.evictions(), 1);
+
+    // and by weight, but never the entry just added
+    c.put("e", new Integer(8));
+    verifyEq(c.size(), 3);
+    verifyEq(c.weight(), 10);
+    verify(c.get("c") == null);
+    c.put("e", new Integer(9));
+    verifyEq(c.size(), 2);
+    verify(c.get("d") == null);
+    verify(c.get("a") != null && c.get("e") != null);
+    c.put("f", new Integer(20));
+    verifyEq(c.size(), 1);
+    verifyEq(c.weight(), 20);
+    verify(c.remove("f") != null);
+    verifyEq(c.weight(), 0);
+
+    // hits, misses, and nulls are not cached
+    final int[] loads = new int[1];
+    Cache.Loader loader = new Cache.Loader()
+    {
+      public Object load(Object key)
+      {
+        loads[0]++;
+        return key.equals("none") ? null : new Integer(2);
+      }
+    };
+    verifyEq(c.get("x", loader), new Integer(2));
+    verifyEq(c.get("x", loader), new Integer(2));
+    verify(c.get("none", loader) == null);
+    verify(c.get("none", loader) == null);
+    verifyEq(loads[0], 3);
+    verifyEq(c.hits(), 1);
+    verifyEq(c.misses(), 3);
+
+    // concurrent gets share one load and its failure
+    final Cache cc = new Cache("test", 10);
+    final Object gate = new Object();
+    final boolean[] open = new boolean[1];
+    final Cache.Loader failing = new Cache.Loader()
+    {
+      public Object load(Object key) throws Exception
+      {
+        synchronized (gate) { while (!open[0]) gate.wait(); }
+        loads[0]++;
+        throw new Exception("boom");
+      }
+    };
+    loads[0] = 0;
+    final Object[] results = new Object[8];
+    Thread[] threads = new Thread[results.length];
+    for (int i=0; i<threads.length; ++i)
+    {
+      final int n = i;
+      threads[i] = new Thread()
+      {
+        public void run()
+        {
+          try { results[n] = cc.get("k", failing); }
+          catch (Exception e) { results[n] = e; }
+        }
+      };
+      threads[i].start();
+    }
+    for (int i=0; i<500 && cc.joins() < threads.length-1; ++i) Thread.sleep(10);
+    verifyEq(cc.joins(), threads.length-1);
+    synchronized (gate) { open[0] = true; gate.notifyAll(); }
+    for (int i=0; i<threads.length; ++i) threads[i].join(5000);
+    verifyEq(loads[0], 1);
+    verifyEq(cc.loadFailures(), 1);
+    for (int i=0; i<results.length; ++i)
+      verify(results[i] instanceof Exception && ((Exception)results[i]).getMessage().equals("boom"));
+    verifyEq(cc.size(), 0);
+
+    // failure isn't cached, next get loads again
+    verifyEq(cc.get("k", loader), new Integer(2));
+    verifyEq(cc.size(), 1);
+  }
+
+  public void testManifestDbCache()
+    throws Exception
+  {
+    KitManifest km = new KitManifest("testManifestDb");
+    km.checksum = 0x1234abcd;
+    km.types = new TypeManifest[0];
+    final KitPart part = km.part();
+    File dir = new File(ManifestDb.dir, km.name);
+    try
+    {
+      verify(ManifestDb.save(km));
+      verify(ManifestDb.toFile(part).exists());
+
+      // parallel loads of the same part parse it once
+      long misses = ManifestDb.cache().misses();
+      final KitManifest[] results = new KitManifest[6];
+      Thread[] threads = new Thread[results.length];
+      for (int i=0; i<threads.length; ++i)
+      {
+        final int n = i;
+        threads[i] = new Thread()
+        {
+          public void run()
+          {
+            try { results[n] = ManifestDb.load(part); }
+            catch (Exception e) { e.printStackTrace(); }
+          }
+        };
+        threads[i].start();
+      }
+      for (int i=0; i<threads.length; ++i) threads[i].join(5000);
+      verifyEq(ManifestDb.cache().misses(), misses+1);
+      for (int i=0; i<results.length; ++i)
+      {
+        verify(results[i] == results[0]);
+        verifyEq(results[i].checksum, 0x1234abcd);
+      }
+      verify(ManifestDb.cache().get(part.key) == results[0]);
+
+      // unknown parts aren't cached
+      KitPart missing = new KitPart(km.name, 0x1234abce);
+      verify(ManifestDb.load(missing) == null);
+      verify(ManifestDb.cache().get(missing.key) == null);
+    }
+    finally
+    {
+      ManifestDb.cache().remove(part.key);
+      FileUtil.delete(dir, null);
+    }
+  }
+
+////////////////////////////////////////////////////////////////
+// Binary Manifest
+////////////////////////////////////////////////////////////////
+
+  public void testBinaryManifest()
+    throws Exception
+  {
+    KitManifest km = new KitManifest("testBinManifest");
+    km.checksum    = 0xcafe0001;
+    km.version     = new Version("1.2.3");
+    km.vendor      = "Sedona";
+    km.description = "caf\u00e9 <test>";
+    km.hasNatives  = true;
+    km.buildTime   = Abstime.now();
+    km.buildHost   = "host";
+    km.depends     = new Depend[] { Depend.parse("sys 1.0"), Depend.parse("inet 1.1+") };
+
+    TypeManifest a = new TypeManifest(km, 0, "A", new Facets().setb("testonly", true), null, 12, Type.PUBLIC);
+    a.slots = new SlotManifest[]
+    {
+      new SlotManifest(a, 0, "i", new Facets().seti("min", -3).sets("unit", "sec"), "int", Slot.CONFIG, Int.make(7)),
+      new SlotManifest(a, 1, "f", null, "float", 0, sedona.Float.make(1.5f)),
+      new SlotManifest(a, 2, "s", new Facets().seti("max", 8), "sys::Buf", Slot.CONFIG|Slot.AS_STR, Str.make("hi")),
+      new SlotManifest(a, 3, "go", null, "void", Slot.ACTION, null),
+    };
+    TypeManifest b = new TypeManifest(km, 1, "B", null, "testBinManifest::A", -1, Type.ABSTRACT);
+    b.slots = new SlotManifest[]
+    {
+      new SlotManifest(b, 0, "on", null, "bool", 0, Bool.make(true)),
+    };
+    km.types = new TypeManifest[] { a, b };
+
+    KitPart part = km.part();
+    File dir = new File(ManifestDb.dir, km.name);
+    File xml = ManifestDb.toFile(part);
+    File bin = new File(xml.getParentFile(), part.key + ".bin");
+    try
+    {
+      // first load parses XML and writes the binary manifest
+      verify(ManifestDb.save(km));
+      verify(!bin.exists());
+      KitManifest x = ManifestDb.load(part);
+      verify(bin.exists());
+      verifyEq(toXml(x), toXml(km));
+
+      // next load uses the binary manifest, not the XML
+      ManifestDb.cache().remove(part.key);
+      FileOutputStream out = new FileOutputStream(xml);
+      out.write("garbage".getBytes());
+      out.close();
+      xml.setLastModified(bin.lastModified() - 10000L);
+      KitManifest y = ManifestDb.load(part);
+      verify(x != y);
+      verifyEq(toXml(y), toXml(km));
+      verifyEq(y.types[1].base, "testBinManifest::A");
+      verifyEq(y.types[0].slots[2].def.encodeString(), "hi");
+      verify(y.types[0].slots[3].def == null);
+      verifyEq(y.types[0].slots[0].facets.geti("min"), -3);
+
+      // a binary manifest older than the XML is ignored
+      ManifestDb.cache().remove(part.key);
+      xml.setLastModified(bin.lastModified() + 10000L);
+      try { ManifestDb.load(part); fail(); } catch (Exception e) { verify(true); }
+
+      // saving removes the binary manifest
+      ManifestDb.cache().remove(part.key);
+      verify(ManifestDb.save(km));
+      verify(!bin.exists());
+      verifyEq(toXml(ManifestDb.load(part)), toXml(km));
+      verify(bin.exists());
+    }
+    finally
+    {
+      ManifestDb.cache().remove(part.key);
+      FileUtil.delete(dir, null);
+    }
+  }
+
+  static String toXml(KitManifest km)
+    throws Exception
+  {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    XWriter out = new XWriter(buf);
+    km.encodeXml(out);
+    out.close();
+    return new String(buf.toByteArray(), "UTF-8");
+  }
+
 }
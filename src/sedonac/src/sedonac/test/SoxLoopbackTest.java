@@ -0,0 +1,30 @@
+//
+// Copyright (c) 2026 Sedona Community.
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   17 Oct 26  Creation
+//
+
+package sedonac.test;
+
+import sedona.sox.*;
+
+/**
+ * SoxLoopbackTest runs the Sox client white-box tests against an
+ * in-memory device; SoxTest covers the same API against a real
+ * Sedona VM.
+ */
+public class SoxLoopbackTest
+  extends Test
+{
+
+  public void test()
+    throws Exception
+  {
+    System.out.println();
+    SoxTestHooks.runWhiteboxTests();
+    verify(true);
+  }
+
+}
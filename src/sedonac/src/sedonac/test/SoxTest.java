@@ -39,6 +39,9 @@ public class SoxTest
     verifySchema();
     verifyVersion();
     verifyLoad();              
+    verifyLoadTree();
+    verifySnapshot();
+    verifyCompactStorage(app);
     verifyWrite();       
     verifyInvoke();       
     verifyUpdate();
@@ -200,6 +203,133 @@ public class SoxTest
     verifyEq(ca.childrenIds().length, 2);
   }
 
+//////////////////////////////////////////////////////////////////////////
+// Load Tree
+//////////////////////////////////////////////////////////////////////////
+
+  private void verifyLoadTree()
+    throws Exception
+  {
+    // one level only loads the app's children
+    SoxComponent capp = client.loadTree(0, 1, 0);
+    verify(capp == client.cache(0));
+    for (int i=0; i<app.children().length; ++i)
+      verify(client.cache(app.children()[i].id()) != null);
+
+    // whole tree with config
+    verify(client.loadTree(0, -1, SoxComponent.CONFIG) == capp);
+    verifyLoadTree(app);
+  }
+
+  private void verifySnapshot()
+    throws Exception
+  {
+    // off by default
+    File f = new File(testDir(), "app.snapshot");
+    f.delete();
+    SoxComponent capp = client.loadAppCached(f);
+    verify(!f.exists());
+
+    // first load misses and writes the snapshot
+    SoxAppSnapshot.enabled = true;
+    verify(client.loadAppCached(f) == capp);
+    verify(f.exists());
+
+    // restores only for the same app identity
+    String appId = SoxAppSnapshot.appChecksum(client);
+    SoxClient fresh = new SoxClient(sock, InetAddress.getLoopbackAddress(), 1876, "admin", "pw");
+    fresh.connect();
+    try
+    {
+      verify(!SoxAppSnapshot.restore(fresh, f, "other"));
+      verify(fresh.cache(0) == null);
+
+      // a fresh session decodes the whole tree and config
+      verify(SoxAppSnapshot.restore(fresh, f, appId));
+      SoxComponent rapp = fresh.cache(0);
+      verify(rapp != capp && rapp.client() == fresh);
+      verifyLoadTree(fresh, app);
+      verifySnapshotConfig(fresh, app);
+    }
+    finally
+    {
+      fresh.close();
+    }
+
+    // cached components keep their identity
+    verify(client.loadAppCached(f) == capp);
+    verifyLoadTree(app);
+    SoxAppSnapshot.enabled = false;
+  }
+
+  private void verifySnapshotConfig(SoxClient fresh, OfflineComponent x)
+  {
+    SoxComponent a = client.cache(x.id());
+    SoxComponent b = fresh.cache(x.id());
+    Slot[] slots = a.type.slots;
+    for (int i=0; i<slots.length; ++i)
+      if (slots[i].isConfig())
+        verifyEq(b.get(slots[i]), a.get(slots[i]));
+    OfflineComponent[] kids = x.children();
+    for (int i=0; i<kids.length; ++i)
+      verifySnapshotConfig(fresh, kids[i]);
+  }
+
+  private void verifyCompactStorage(OfflineComponent x)
+    throws Exception
+  {
+    // a compact copy decodes every property straight into
+    // its slot and reads back the same values
+    SoxComponent c = client.cache(x.id());
+    SoxComponent copy = new SoxComponent(null, c.id(), c.type);
+    copy.compactStorage();
+    verify(copy.isCompactStorage() && !c.isCompactStorage());
+    Slot[] slots = c.type.slots;
+    for (int i=0; i<slots.length; ++i)
+    {
+      Slot slot = slots[i];
+      if (!slot.isProp()) continue;
+      Buf buf = new Buf();
+      c.get(slot).encodeBinary(buf);
+      buf.seek(0);
+      copy.decodeBinary(slot, buf);
+      verifyEq(copy.get(slot), c.get(slot));
+      switch (slot.type.id)
+      {
+        case Type.boolId:   verifyEq(copy.getBool(slot), c.getBool(slot)); break;
+        case Type.byteId:
+        case Type.shortId:
+        case Type.intId:    verifyEq(copy.getInt(slot), c.getInt(slot)); break;
+        case Type.longId:   verifyEq(copy.getLong(slot), c.getLong(slot)); break;
+        case Type.floatId:  verify(java.lang.Float.compare(copy.getFloat(slot), c.getFloat(slot)) == 0); break;
+        case Type.doubleId: verify(java.lang.Double.compare(copy.getDouble(slot), c.getDouble(slot)) == 0); break;
+      }
+    }
+
+    OfflineComponent[] kids = x.children();
+    for (int i=0; i<kids.length; ++i)
+      verifyCompactStorage(kids[i]);
+  }
+
+  private void verifyLoadTree(OfflineComponent x)
+  {
+    verifyLoadTree(client, x);
+  }
+
+  private void verifyLoadTree(SoxClient client, OfflineComponent x)
+  {
+    SoxComponent c = client.cache(x.id());
+    verify(c != null);
+    verifyEq(c.name(), x.name());
+    verifyEq(c.childrenIds().length, x.children().length);
+    OfflineComponent[] kids = x.children();
+    for (int i=0; i<kids.length; ++i)
+    {
+      verifyEq(c.childrenIds()[i], kids[i].id());
+      verifyLoadTree(client, kids[i]);
+    }
+  }
+
 //////////////////////////////////////////////////////////////////////////
 // Write
 //////////////////////////////////////////////////////////////////////////
@@ -43,6 +43,7 @@ public class Test extends Verifies
         "sedonac.test.DocParserTest",
         "sedonac.test.DaspTest",
         "sedonac.test.SoxTest",
+        "sedonac.test.SoxLoopbackTest",
         "sedonac.test.SecurityTest",        
         "sedonac.test.PrimitiveDecodeTest",
         "sedonac.test.PstoreTest",